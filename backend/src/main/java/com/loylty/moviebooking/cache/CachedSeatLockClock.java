@@ -0,0 +1,36 @@
+package com.loylty.moviebooking.cache;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coarse clock that serves a cached timestamp refreshed by a background thread.
+ * Reading it is a single volatile load. The value lags the wall clock by at
+ * most the resolution, which is far below the expiry tick of the lock engine.
+ */
+public final class CachedSeatLockClock implements SeatLockClock, AutoCloseable {
+    
+    private final ScheduledExecutorService ticker;
+    private volatile long now = System.currentTimeMillis();
+    
+    public CachedSeatLockClock(long resolutionMillis) {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "seat-lock-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> now = System.currentTimeMillis(),
+                resolutionMillis, resolutionMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public long millis() {
+        return now;
+    }
+    
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
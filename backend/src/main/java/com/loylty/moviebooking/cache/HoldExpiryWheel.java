@@ -0,0 +1,169 @@
+package com.loylty.moviebooking.cache;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel of seat hold deadlines.
+ *
+ * Level 0 has 64 slots of one tick each, and every higher level has 64 slots
+ * that each span a full revolution of the level below. A deadline is placed in
+ * O(1) into the lowest level that can hold it, and higher-level slots are
+ * cascaded down as the wheel turns. Advancing only touches entries that are
+ * due, so the cost follows the number of expiring holds, not the number held.
+ *
+ * Entries are not removed when a hold is released or extended; the owning
+ * ShowSeatState decides at fire time whether the seat really expired, and
+ * keeps at most one armed entry per seat. Only evicted shows are removed.
+ */
+final class HoldExpiryWheel {
+    
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    
+    private final long tickMillis;
+    private final Bucket[][] levels = new Bucket[LEVELS][SLOTS];
+    
+    // Next tick to be processed
+    private long currentTick;
+    
+    HoldExpiryWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+        for (Bucket[] level : levels) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Bucket();
+            }
+        }
+    }
+    
+    /**
+     * Schedule a check of the seat at the given deadline (epoch millis)
+     */
+    synchronized void schedule(ShowSeatState state, int ordinal, long deadline) {
+        // Round up so an entry never fires before its deadline
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick);
+        place(state, ordinal, tick);
+    }
+    
+    /**
+     * Turn the wheel up to the given time and move every due entry into the given bucket
+     */
+    synchronized void advance(long now, Bucket due) {
+        long target = now / tickMillis;
+        while (currentTick <= target) {
+            // Cascade higher levels first so their entries can still fall into this tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+            }
+            levels[0][(int) (currentTick & SLOT_MASK)].drainTo(due);
+            currentTick++;
+        }
+    }
+    
+    /**
+     * Drop every entry of the given show states, which must no longer take new holds
+     */
+    synchronized void remove(Set<ShowSeatState> states) {
+        for (Bucket[] level : levels) {
+            for (Bucket bucket : level) {
+                bucket.removeIf(states);
+            }
+        }
+    }
+    
+    private void cascade(int level, int slot) {
+        Bucket bucket = levels[level][slot];
+        int size = bucket.size;
+        bucket.size = 0;
+        for (int i = 0; i < size; i++) {
+            place(bucket.states[i], bucket.ordinals[i], bucket.ticks[i]);
+            bucket.states[i] = null;
+        }
+        bucket.trim();
+    }
+    
+    private void place(ShowSeatState state, int ordinal, long tick) {
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        long slotTick = tick;
+        if (delta >= (1L << (SLOT_BITS * LEVELS))) {
+            // Beyond the wheel horizon: park in the last reachable slot and re-cascade from there,
+            // keeping the real tick so the entry never fires early
+            slotTick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+        levels[level][(int) ((slotTick >>> (SLOT_BITS * level)) & SLOT_MASK)].add(state, ordinal, tick);
+    }
+    
+    /**
+     * Growable list of (show state, seat ordinal, tick) entries kept in parallel arrays
+     */
+    static final class Bucket {
+        
+        private static final int INITIAL_CAPACITY = 16;
+        private static final int TRIM_THRESHOLD = 4096;
+        
+        ShowSeatState[] states = new ShowSeatState[INITIAL_CAPACITY];
+        int[] ordinals = new int[INITIAL_CAPACITY];
+        long[] ticks = new long[INITIAL_CAPACITY];
+        int size;
+        
+        void add(ShowSeatState state, int ordinal, long tick) {
+            if (size == states.length) {
+                int newLength = size * 2;
+                states = Arrays.copyOf(states, newLength);
+                ordinals = Arrays.copyOf(ordinals, newLength);
+                ticks = Arrays.copyOf(ticks, newLength);
+            }
+            states[size] = state;
+            ordinals[size] = ordinal;
+            ticks[size] = tick;
+            size++;
+        }
+        
+        void drainTo(Bucket target) {
+            for (int i = 0; i < size; i++) {
+                target.add(states[i], ordinals[i], ticks[i]);
+                states[i] = null;
+            }
+            size = 0;
+            trim();
+        }
+        
+        void removeIf(Set<ShowSeatState> removed) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.contains(states[i])) {
+                    states[kept] = states[i];
+                    ordinals[kept] = ordinals[i];
+                    ticks[kept] = ticks[i];
+                    kept++;
+                }
+            }
+            Arrays.fill(states, kept, size, null);
+            size = kept;
+        }
+        
+        void clear() {
+            Arrays.fill(states, 0, size, null);
+            size = 0;
+            trim();
+        }
+        
+        // Give back the memory of a one-off burst instead of keeping it for good
+        private void trim() {
+            if (states.length > TRIM_THRESHOLD) {
+                states = new ShowSeatState[INITIAL_CAPACITY];
+                ordinals = new int[INITIAL_CAPACITY];
+                ticks = new long[INITIAL_CAPACITY];
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.loylty.moviebooking.cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index from lock holder to the shows it holds seats in.
+ *
+ * The seats themselves are found through the holder's seat list inside each
+ * ShowSeatState, so together they locate every hold of a holder in time
+ * proportional to the number of seats held. Entries are added and removed by
+ * ShowSeatState inside its monitor, when a holder takes its first seat in a
+ * show or gives up its last one.
+ */
+final class HolderIndex {
+    
+    private final Map<String, Set<Long>> showsByHolder = new ConcurrentHashMap<>();
+    
+    void add(String holder, long showId) {
+        // Add inside compute: a concurrent remove may drop the holder's set once it is empty
+        showsByHolder.compute(holder, (k, shows) -> {
+            Set<Long> updated = shows != null ? shows : ConcurrentHashMap.newKeySet();
+            updated.add(showId);
+            return updated;
+        });
+    }
+    
+    void remove(String holder, long showId) {
+        showsByHolder.computeIfPresent(holder, (k, shows) -> {
+            shows.remove(showId);
+            return shows.isEmpty() ? null : shows;
+        });
+    }
+    
+    /**
+     * @return the shows the holder currently holds seats in
+     */
+    Set<Long> showsOf(String holder) {
+        Set<Long> shows = showsByHolder.get(holder);
+        return shows != null ? shows : Collections.emptySet();
+    }
+}
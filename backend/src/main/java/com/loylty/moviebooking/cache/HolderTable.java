@@ -0,0 +1,125 @@
+package com.loylty.moviebooking.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps lock holder IDs to small int handles for a single show.
+ * Seats store only the handle, so a holder string is kept once per show
+ * no matter how many seats it holds. Handles are recycled when a holder
+ * releases its last seat. Each handle also records the first seat of the
+ * holder's seat list, whose links are kept by the owning ShowSeatState.
+ * Not thread-safe: guarded by the owning ShowSeatState.
+ */
+final class HolderTable {
+    
+    // Handle 0 is reserved for "no holder"
+    static final int NONE = 0;
+    
+    private final Map<String, Integer> index = new HashMap<>();
+    private String[] names = new String[8];
+    private int[] seatCounts = new int[8];
+    private long[] since = new long[8];
+    private int[] firstSeat = new int[8];
+    private int[] freeHandles = new int[8];
+    private int freeCount;
+    private int nextHandle = 1;
+    
+    /**
+     * @return the handle of the holder, or NONE if it holds nothing in this show
+     */
+    int find(String holder) {
+        Integer handle = index.get(holder);
+        return handle != null ? handle : NONE;
+    }
+    
+    /**
+     * Return the handle of the holder, registering it if needed
+     */
+    int acquire(String holder, long now) {
+        int handle = find(holder);
+        if (handle != NONE) {
+            return handle;
+        }
+        
+        handle = freeCount > 0 ? freeHandles[--freeCount] : nextHandle++;
+        if (handle >= names.length) {
+            int newLength = names.length * 2;
+            names = Arrays.copyOf(names, newLength);
+            seatCounts = Arrays.copyOf(seatCounts, newLength);
+            since = Arrays.copyOf(since, newLength);
+            firstSeat = Arrays.copyOf(firstSeat, newLength);
+        }
+        names[handle] = holder;
+        seatCounts[handle] = 0;
+        since[handle] = now;
+        firstSeat[handle] = -1;
+        index.put(holder, handle);
+        return handle;
+    }
+    
+    /**
+     * @return true if this is the first seat of the holder
+     */
+    boolean addSeat(int handle) {
+        return ++seatCounts[handle] == 1;
+    }
+    
+    /**
+     * Drop one seat from the holder and recycle the handle once it holds nothing
+     * @return true if the holder has no seats left
+     */
+    boolean removeSeat(int handle) {
+        if (--seatCounts[handle] > 0) {
+            return false;
+        }
+        recycle(handle);
+        return true;
+    }
+    
+    /**
+     * Recycle a handle that was acquired but never given a seat
+     */
+    void releaseIfUnused(int handle) {
+        if (seatCounts[handle] == 0) {
+            recycle(handle);
+        }
+    }
+    
+    private void recycle(int handle) {
+        index.remove(names[handle]);
+        names[handle] = null;
+        if (freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+        }
+        freeHandles[freeCount++] = handle;
+    }
+    
+    String name(int handle) {
+        return names[handle];
+    }
+    
+    long since(int handle) {
+        return since[handle];
+    }
+    
+    int seatCount(int handle) {
+        return seatCounts[handle];
+    }
+    
+    /**
+     * @return the ordinal at the head of the holder's seat list, or -1 if it is empty
+     */
+    int firstSeat(int handle) {
+        return firstSeat[handle];
+    }
+    
+    void setFirstSeat(int handle, int ordinal) {
+        firstSeat[handle] = ordinal;
+    }
+    
+    boolean isEmpty() {
+        return index.isEmpty();
+    }
+}
@@ -1,34 +1,111 @@
 package com.loylty.moviebooking.cache;
 
+import com.loylty.moviebooking.entity.ShowSeat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
 @Service
+@ConditionalOnProperty(name = "seat-lock.store", havingValue = "memory", matchIfMissing = true)
+@Slf4j
 public class InMemorySeatLockService implements SeatLockService {
     
-    // Key: showId, Value: seatId -> LockInfo
-    private final Map<Long, Map<Long, LockInfo>> seatLocks = new ConcurrentHashMap<>();
+    // How often hold deadlines are checked; expired seats are freed within one tick
+    private static final long EXPIRY_TICK_MILLIS = 500;
     
-    // Key: showId, Value: set of booked seat IDs
-    private final Map<Long, Set<Long>> bookedSeats = new ConcurrentHashMap<>();
+    private final SeatLockClock clock;
+    private final SeatLockMetrics metrics;
+    
+    // Versions of the show change histories are only meaningful within one run of the engine
+    private final long epoch;
+    
+    // Key: showId, Value: booked/locked seat bitsets of the show, until the show starts
+    private final Map<Long, ShowSeatState> shows = new ConcurrentHashMap<>();
+    
+    // Shows each holder has seats in, kept in step with the show states
+    private final HolderIndex holderIndex = new HolderIndex();
+    
+    // Expiry wheels, picked by show ID
+    private final HoldExpiryWheel[] expiryWheels;
+    
+    // Entries due in the current tick, only touched by the cleanup thread
+    private final HoldExpiryWheel.Bucket dueHolds = new HoldExpiryWheel.Bucket();
+    
+    @Value("${seat-lock.journal.enabled:false}")
+    private boolean journalEnabled;
+    
+    @Value("${seat-lock.journal.dir:data/seat-lock}")
+    private String journalDir;
+    
+    @Value("${seat-lock.journal.flush-interval-ms:10}")
+    private long journalFlushIntervalMillis;
+    
+    @Value("${seat-lock.journal.snapshot-interval-seconds:300}")
+    private long snapshotIntervalSeconds;
+    
+    @Value("${seat-lock.metrics.hot-shows:10}")
+    private int hotShowCount;
+    
+    @Value("${seat-lock.metrics.hot-show-interval-seconds:15}")
+    private long hotShowIntervalSeconds;
+    
+    // Null when journaling is disabled
+    private SeatLockJournal journal;
     
     private ScheduledExecutorService cleanupExecutor;
+    private ScheduledExecutorService journalExecutor;
+    
+    public InMemorySeatLockService() {
+        this(SeatLockClock.system());
+    }
+    
+    public InMemorySeatLockService(SeatLockClock clock) {
+        this(clock, SeatLockMetrics.noop());
+    }
+    
+    @Autowired
+    public InMemorySeatLockService(SeatLockClock clock, SeatLockMetrics metrics) {
+        this.clock = clock;
+        this.metrics = metrics;
+        this.epoch = System.currentTimeMillis();
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        long now = clock.millis();
+        expiryWheels = new HoldExpiryWheel[stripes];
+        for (int i = 0; i < stripes; i++) {
+            expiryWheels[i] = new HoldExpiryWheel(EXPIRY_TICK_MILLIS, now);
+        }
+    }
     
     @PostConstruct
     public void init() {
-        // Schedule cleanup of expired locks every minute
+        if (journalEnabled) {
+            openJournal();
+        }
+        
+        // Turn the expiry wheels every tick; only holds that are due get touched
         cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
-        cleanupExecutor.scheduleAtFixedRate(this::cleanupExpiredLocks, 1, 1, TimeUnit.MINUTES);
+        cleanupExecutor.scheduleAtFixedRate(this::cleanupExpiredLocks,
+                EXPIRY_TICK_MILLIS, EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        if (hotShowCount > 0) {
+            cleanupExecutor.scheduleWithFixedDelay(this::sampleHotShows,
+                    hotShowIntervalSeconds, hotShowIntervalSeconds, TimeUnit.SECONDS);
+        }
     }
     
     @PreDestroy
@@ -36,171 +113,371 @@ public class InMemorySeatLockService implements SeatLockService {
         if (cleanupExecutor != null) {
             cleanupExecutor.shutdown();
         }
+        if (journalExecutor != null) {
+            journalExecutor.shutdown();
+        }
+        if (journal != null) {
+            try {
+                // Leave a fresh snapshot behind so the next start has no journal to replay
+                journal.snapshot(this::writeSnapshot);
+                journal.close();
+            } catch (IOException e) {
+                log.error("Failed to close seat lock journal: {}", e.getMessage());
+            }
+        }
     }
     
-    @Override
-    public boolean lockSeats(Long showId, List<Long> seatIds, String userId, int lockDurationMinutes) {
-        Map<Long, LockInfo> showLocks = seatLocks.computeIfAbsent(showId, k -> new ConcurrentHashMap<>());
-        Set<Long> showBookedSeats = bookedSeats.computeIfAbsent(showId, k -> ConcurrentHashMap.newKeySet());
+    private void openJournal() {
+        try {
+            journal = new SeatLockJournal(Path.of(journalDir));
+            long start = System.nanoTime();
+            journal.recover(this::readSnapshot,
+                    (type, showId, time, expiresAt, holder, seatIds) -> {
+                        if (type == SeatLockJournal.EVICT) {
+                            evict(List.of(showId), 0L);
+                        } else {
+                            stateFor(showId).replay(type, time, expiresAt, holder, seatIds);
+                        }
+                    });
+            log.info("Rebuilt seat lock state for {} shows in {} ms", shows.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            
+            // Compact right away so the replayed segments can be dropped
+            journal.snapshot(this::writeSnapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover seat lock journal from " + journalDir, e);
+        }
         
-        // Check if any seats are already locked by different user or booked
-        for (Long seatId : seatIds) {
-            LockInfo existingLock = showLocks.get(seatId);
-            if (existingLock != null && !existingLock.isExpired() && !existingLock.userId.equals(userId)) {
-                return false; // Seat is locked by another user
-            }
-            if (showBookedSeats.contains(seatId)) {
-                return false; // Seat is already booked
-            }
+        journalExecutor = Executors.newScheduledThreadPool(2);
+        journalExecutor.scheduleWithFixedDelay(this::flushJournal,
+                journalFlushIntervalMillis, journalFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        journalExecutor.scheduleWithFixedDelay(this::snapshotJournal,
+                snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    private void flushJournal() {
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            log.error("Failed to flush seat lock journal: {}", e.getMessage());
+        }
+    }
+    
+    private void snapshotJournal() {
+        try {
+            journal.snapshot(this::writeSnapshot);
+        } catch (IOException e) {
+            log.error("Failed to write seat lock snapshot: {}", e.getMessage());
         }
+    }
+    
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        // A show evicted after this copy has its EVICT record in the new segment
+        List<Map.Entry<Long, ShowSeatState>> entries = new ArrayList<>(shows.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<Long, ShowSeatState> entry : entries) {
+            out.writeLong(entry.getKey());
+            entry.getValue().writeSnapshot(out);
+        }
+    }
+    
+    private void readSnapshot(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long showId = in.readLong();
+            shows.put(showId, ShowSeatState.readSnapshot(showId, in, expiryWheelFor(showId), journal, holderIndex,
+                    metrics));
+        }
+    }
+    
+    @Override
+    public boolean lockSeats(Long showId, List<Long> seatIds, String userId, int lockDurationSeconds) {
+        ShowSeatState state = stateFor(showId);
+        long now = clock.millis();
+        long expiresAt = now + TimeUnit.SECONDS.toMillis(lockDurationSeconds);
         
-        // Lock all seats
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime expiryTime = now.plusMinutes(lockDurationMinutes);
+        // Check and lock all seats atomically: either every seat is granted or none
+        return state.tryHold(seatIds, userId, expiresAt, now);
+    }
+    
+    @Override
+    public List<Long> lockBestAvailable(Long showId, SeatGrid grid, ShowSeat.SeatCategory category, int seatCount,
+                                        String userId, int lockDurationSeconds) {
+        ShowSeatState state = stateFor(showId);
+        long now = clock.millis();
+        long expiresAt = now + TimeUnit.SECONDS.toMillis(lockDurationSeconds);
         
-        for (Long seatId : seatIds) {
-            showLocks.put(seatId, new LockInfo(userId, now, expiryTime));
+        // Search and lock under the show monitor, so the chosen block cannot be lost to another request
+        return state.holdBestBlock(grid, category, seatCount, userId, expiresAt, now);
+    }
+    
+    @Override
+    public long renewHold(Long showId, String userId, int extensionSeconds, int maxLifetimeSeconds) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
+            return 0L;
         }
         
-        return true;
+        long now = clock.millis();
+        return state.renew(userId, now, now + TimeUnit.SECONDS.toMillis(extensionSeconds),
+                TimeUnit.SECONDS.toMillis(maxLifetimeSeconds));
     }
     
     @Override
     public boolean unlockSeats(Long showId, List<Long> seatIds, String userId) {
-        Map<Long, LockInfo> showLocks = seatLocks.get(showId);
-        if (showLocks == null) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
             return false;
         }
         
-        boolean allUnlocked = true;
-        for (Long seatId : seatIds) {
-            LockInfo lockInfo = showLocks.get(seatId);
-            if (lockInfo != null && lockInfo.userId.equals(userId)) {
-                showLocks.remove(seatId);
-            } else {
-                allUnlocked = false;
+        return state.release(seatIds, userId, clock.millis());
+    }
+    
+    @Override
+    public int releaseAllSeats(String userId) {
+        long now = clock.millis();
+        int released = 0;
+        for (Long showId : holderIndex.showsOf(userId)) {
+            ShowSeatState state = shows.get(showId);
+            if (state != null) {
+                released += state.releaseAll(userId, now).size();
             }
         }
-        
-        // Clean up empty show locks
-        if (showLocks.isEmpty()) {
-            seatLocks.remove(showId);
+        return released;
+    }
+    
+    @Override
+    public Map<Long, Set<Long>> getHeldSeats(String userId) {
+        long now = clock.millis();
+        Map<Long, Set<Long>> heldSeats = new HashMap<>();
+        for (Long showId : holderIndex.showsOf(userId)) {
+            ShowSeatState state = shows.get(showId);
+            if (state == null) {
+                continue;
+            }
+            Set<Long> seats = new HashSet<>();
+            state.collectHeld(userId, now, seats);
+            if (!seats.isEmpty()) {
+                heldSeats.put(showId, seats);
+            }
         }
-        
-        return allUnlocked;
+        return heldSeats;
     }
     
     @Override
     public Set<Long> getAvailableSeats(Long showId, List<Long> seatIds) {
-        Map<Long, LockInfo> showLocks = seatLocks.get(showId);
-        Set<Long> showBookedSeats = bookedSeats.get(showId);
-        
-        if (showLocks == null && showBookedSeats == null) {
-            return new HashSet<>(seatIds);
+        ShowSeatState state = shows.get(showId);
+        Set<Long> available = new HashSet<>();
+        if (state == null) {
+            for (Long seatId : seatIds) {
+                if (ShowSeatState.ordinal(seatId) >= 0) {
+                    available.add(seatId);
+                }
+            }
+            return available;
         }
         
-        return seatIds.stream()
-                .filter(seatId -> {
-                    // Check if seat is booked
-                    if (showBookedSeats != null && showBookedSeats.contains(seatId)) {
-                        return false;
-                    }
-                    // Check if seat is locked and not expired
-                    if (showLocks != null) {
-                        LockInfo lockInfo = showLocks.get(seatId);
-                        return lockInfo == null || lockInfo.isExpired();
-                    }
-                    return true;
-                })
-                .collect(Collectors.toSet());
+        state.collectAvailable(seatIds, clock.millis(), available);
+        return available;
+    }
+    
+    @Override
+    public boolean isSeatAvailable(Long showId, Long seatId) {
+        int ordinal = ShowSeatState.ordinal(seatId);
+        if (ordinal < 0) {
+            return false;
+        }
+        ShowSeatState state = shows.get(showId);
+        return state == null || state.isAvailable(ordinal, clock.millis());
     }
     
     @Override
     public Set<Long> getLockedSeats(Long showId) {
-        Map<Long, LockInfo> showLocks = seatLocks.get(showId);
-        if (showLocks == null) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
             return Collections.emptySet();
         }
         
-        LocalDateTime now = LocalDateTime.now();
-        return showLocks.entrySet().stream()
-                .filter(entry -> !entry.getValue().isExpired())
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+        Set<Long> lockedSeats = new HashSet<>();
+        state.collectLocked(clock.millis(), lockedSeats);
+        return lockedSeats;
     }
     
     @Override
-    public SeatLockInfo getSeatLockInfo(Long showId, Long seatId) {
-        Map<Long, LockInfo> showLocks = seatLocks.get(showId);
-        if (showLocks == null) {
-            return null;
+    public Set<Long> getBookedSeats(Long showId) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
+            return Collections.emptySet();
         }
         
-        LockInfo lockInfo = showLocks.get(seatId);
-        if (lockInfo == null || lockInfo.isExpired()) {
+        Set<Long> bookedSeats = new HashSet<>();
+        state.collectBooked(bookedSeats);
+        return bookedSeats;
+    }
+    
+    @Override
+    public ShowSeatSnapshot getShowSnapshot(Long showId) {
+        ShowSeatState state = shows.get(showId);
+        return state != null ? state.snapshot(epoch) : ShowSeatSnapshot.empty(epoch);
+    }
+    
+    @Override
+    public void markSeatsBooked(Long showId, List<Long> seatIds) {
+        stateFor(showId).markBooked(seatIds);
+    }
+    
+    @Override
+    public SeatLockInfo getSeatLockInfo(Long showId, Long seatId) {
+        ShowSeatState state = shows.get(showId);
+        int ordinal = ShowSeatState.ordinal(seatId);
+        if (state == null || ordinal < 0) {
             return null;
         }
         
-        return new SeatLockInfo(lockInfo.userId, lockInfo.lockTime, lockInfo.expiryTime);
+        synchronized (state) {
+            String holder = state.lockHolder(ordinal, clock.millis());
+            if (holder == null) {
+                return null;
+            }
+            return new SeatLockInfo(holder, state.lockedSince(ordinal), state.lockExpiry(ordinal));
+        }
     }
     
     @Override
-    public void cleanupExpiredLocks() {
-        LocalDateTime now = LocalDateTime.now();
-        
-        seatLocks.forEach((showId, showLocks) -> {
-            showLocks.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        });
+    public SeatChanges getSeatChanges(Long showId, long epoch, long sinceVersion, String userId) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
+            // Nothing has happened in the show yet; its first change will be version 1
+            return new SeatChanges(this.epoch, 0L, epoch != this.epoch || sinceVersion != 0L,
+                    Collections.emptyList());
+        }
         
-        // Remove empty show lock maps
-        seatLocks.entrySet().removeIf(entry -> entry.getValue().isEmpty());
+        long since = epoch == this.epoch ? sinceVersion : -1L;
+        return state.changesSince(this.epoch, since, userId, clock.millis());
     }
     
     @Override
-    public boolean confirmBooking(Long showId, List<Long> seatIds, String userId) {
-        Map<Long, LockInfo> showLocks = seatLocks.get(showId);
-        Set<Long> showBookedSeats = bookedSeats.computeIfAbsent(showId, k -> ConcurrentHashMap.newKeySet());
+    public SeatStatusVector getSeatStatusVector(Long showId, int seatCount, String userId) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
+            return new SeatStatusVector(epoch, 0L, seatCount, SeatStatusVector.allocate(seatCount));
+        }
+        return state.statusVector(epoch, seatCount, userId);
+    }
+    
+    @Override
+    public SeatStatusVersion getSeatStatusVersion(Long showId) {
+        ShowSeatState state = shows.get(showId);
+        return new SeatStatusVersion(epoch, state != null ? state.version() : 0L);
+    }
+    
+    @Override
+    public synchronized void cleanupExpiredLocks() {
+        long now = clock.millis();
         
-        // Verify all seats are locked by this user and not expired
-        if (showLocks != null) {
-            for (Long seatId : seatIds) {
-                LockInfo lockInfo = showLocks.get(seatId);
-                if (lockInfo == null || !lockInfo.userId.equals(userId) || lockInfo.isExpired()) {
-                    return false;
+        // Collect due entries first: show monitors are never taken while a wheel lock is held
+        for (HoldExpiryWheel wheel : expiryWheels) {
+            wheel.advance(now, dueHolds);
+            for (int i = 0; i < dueHolds.size; i++) {
+                ShowSeatState state = dueHolds.states[i];
+                long pending = state.expireIfDue(dueHolds.ordinals[i], now);
+                if (pending > 0) {
+                    wheel.schedule(state, dueHolds.ordinals[i], pending);
                 }
             }
+            dueHolds.clear();
         }
-        
-        // Mark seats as booked
-        showBookedSeats.addAll(seatIds);
-        
-        // Remove locks
-        if (showLocks != null) {
-            for (Long seatId : seatIds) {
-                showLocks.remove(seatId);
+    }
+    
+    /**
+     * Publish the shows with the most lock requests since the previous sample.
+     * Runs on the cleanup thread, which is the only caller of takeLockAttempts.
+     */
+    void sampleHotShows() {
+        // Min-heap of {attempts, showId}, so the quietest of the current top shows is evicted first
+        PriorityQueue<long[]> top = new PriorityQueue<>(hotShowCount + 1, Comparator.comparingLong(a -> a[0]));
+        for (Map.Entry<Long, ShowSeatState> entry : shows.entrySet()) {
+            long attempts = entry.getValue().takeLockAttempts();
+            if (attempts == 0L || (top.size() == hotShowCount && attempts <= top.peek()[0])) {
+                continue;
             }
-            if (showLocks.isEmpty()) {
-                seatLocks.remove(showId);
+            top.add(new long[] {attempts, entry.getKey()});
+            if (top.size() > hotShowCount) {
+                top.poll();
             }
         }
         
-        return true;
+        List<SeatLockMetrics.HotShow> hotShows = new ArrayList<>(top.size());
+        for (long[] show : top) {
+            ShowSeatState state = shows.get(show[1]);
+            hotShows.add(new SeatLockMetrics.HotShow(show[1], (double) show[0] / hotShowIntervalSeconds,
+                    state.heldSeats()));
+        }
+        metrics.publishHotShows(hotShows);
     }
     
-    // Internal class to store lock information
-    private static class LockInfo {
-        final String userId;
-        final LocalDateTime lockTime;
-        final LocalDateTime expiryTime;
+    @Override
+    public boolean confirmBooking(Long showId, List<Long> seatIds, String userId) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
+            return false;
+        }
         
-        LockInfo(String userId, LocalDateTime lockTime, LocalDateTime expiryTime) {
-            this.userId = userId;
-            this.lockTime = lockTime;
-            this.expiryTime = expiryTime;
+        // Verify all seats are locked by this user and mark them booked in one step
+        return state.book(seatIds, userId, clock.millis());
+    }
+    
+    @Override
+    public void revertBooking(Long showId, List<Long> seatIds, String userId, int holdSeconds) {
+        ShowSeatState state = shows.get(showId);
+        if (state == null) {
+            return;
         }
         
-        boolean isExpired() {
-            return LocalDateTime.now().isAfter(expiryTime);
+        long now = clock.millis();
+        state.unbook(seatIds, userId, now + TimeUnit.SECONDS.toMillis(holdSeconds), now);
+    }
+    
+    /**
+     * @return IDs of the shows seat state is kept for
+     */
+    public Set<Long> getTrackedShows() {
+        return new HashSet<>(shows.keySet());
+    }
+    
+    /**
+     * Drop the seat state of shows that have started, with their pending hold
+     * expiries, so they no longer take memory or go into snapshots. A later
+     * call for such a show starts from an empty state.
+     */
+    public void evictShows(Collection<Long> showIds) {
+        evict(showIds, clock.millis());
+    }
+    
+    /**
+     * @param now current time on the live path, 0 when replaying an EVICT record
+     */
+    private void evict(Collection<Long> showIds, long now) {
+        Map<HoldExpiryWheel, Set<ShowSeatState>> evicted = new HashMap<>();
+        for (Long showId : showIds) {
+            ShowSeatState state = shows.remove(showId);
+            if (state != null) {
+                state.evict(now);
+                evicted.computeIfAbsent(expiryWheelFor(showId), k -> new HashSet<>()).add(state);
+            }
         }
+        evicted.forEach(HoldExpiryWheel::remove);
+    }
+    
+    private ShowSeatState stateFor(Long showId) {
+        ShowSeatState state = shows.get(showId);
+        if (state != null) {
+            return state;
+        }
+        return shows.computeIfAbsent(showId, k -> new ShowSeatState(k, expiryWheelFor(k), journal, holderIndex, metrics));
+    }
+    
+    private HoldExpiryWheel expiryWheelFor(long showId) {
+        return expiryWheels[Long.hashCode(showId) & (expiryWheels.length - 1)];
     }
 }
@@ -0,0 +1,470 @@
+package com.loylty.moviebooking.cache;
+
+import com.loylty.moviebooking.entity.ShowSeat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Seat lock service backed by the show_seats table, so several backend
+ * instances can share one seat inventory. Seat IDs are numbered as in
+ * SeatGrid and matched as (row_number, seat_number) pairs; a multi-seat lock
+ * is one conditional UPDATE that rolls back unless every seat was taken.
+ *
+ * Selected with seat-lock.store=postgres.
+ */
+@Service
+@ConditionalOnProperty(name = "seat-lock.store", havingValue = "postgres")
+public class PostgresSeatLockService implements SeatLockService {
+    
+    private static final String SELECT_SEATS_PER_ROW =
+            "SELECT screen_seats_per_row(screen_id) FROM shows WHERE id = :showId";
+    
+    // Per-show seat ID of a show_seats row on the screen's seat map; only selected, never matched on
+    private static final String SEAT_ID = "((row_number - 1) * " +
+            "(SELECT screen_seats_per_row(sh.screen_id) FROM shows sh WHERE sh.id = :showId) + seat_number)";
+    
+    // Matches the rows of :seats, a list of (row_number, seat_number) pairs, on the positions' unique index
+    private static final String SEATS = "(row_number, seat_number) IN (:seats)";
+    
+    private static final String LOCK_SEATS =
+            "UPDATE show_seats SET status = 'LOCKED', lock_user_id = :userId, lock_expiry_time = :expiry, " +
+            "  lock_time = CASE WHEN status = 'LOCKED' AND lock_user_id = :userId AND lock_expiry_time > :now " +
+            "                   THEN lock_time ELSE :now END " +
+            "WHERE id IN (" +
+            "  SELECT id FROM show_seats " +
+            "  WHERE show_id = :showId AND " + SEATS + " " +
+            "  AND (status = 'AVAILABLE' " +
+            "       OR (status = 'LOCKED' AND (lock_expiry_time <= :now OR lock_user_id = :userId))) " +
+            "  ORDER BY id FOR UPDATE SKIP LOCKED)";
+    
+    private static final String SELECT_OCCUPIED =
+            "SELECT row_number, seat_number FROM show_seats " +
+            "WHERE show_id = :showId AND (status = 'BOOKED' OR (status = 'LOCKED' AND lock_expiry_time > :now))";
+    
+    // A best-available block lost to a concurrent lock is searched again this many times
+    private static final int BEST_AVAILABLE_ATTEMPTS = 3;
+    
+    // Extend the user's live locks, capped at the user's first lock time in the show plus the maximum lifetime
+    private static final String RENEW_HOLD =
+            "UPDATE show_seats SET lock_expiry_time = GREATEST(lock_expiry_time, LEAST(:extended, " +
+            "  (SELECT MIN(COALESCE(h.lock_time, :now)) FROM show_seats h " +
+            "   WHERE h.show_id = :showId AND h.lock_user_id = :userId " +
+            "   AND h.status = 'LOCKED' AND h.lock_expiry_time > :now) " +
+            "  + :maxLifetimeSeconds * INTERVAL '1 second')) " +
+            "WHERE show_id = :showId AND lock_user_id = :userId " +
+            "AND status = 'LOCKED' AND lock_expiry_time > :now " +
+            "RETURNING lock_expiry_time";
+    
+    private static final String UNLOCK_SEATS =
+            "UPDATE show_seats SET status = 'AVAILABLE', lock_user_id = NULL, lock_expiry_time = NULL, lock_time = NULL " +
+            "WHERE show_id = :showId AND " + SEATS + " " +
+            "AND status = 'LOCKED' AND lock_user_id = :userId";
+    
+    private static final String CONFIRM_SEATS =
+            "UPDATE show_seats SET status = 'BOOKED', lock_user_id = NULL, lock_expiry_time = NULL, lock_time = NULL " +
+            "WHERE show_id = :showId AND " + SEATS + " " +
+            "AND status = 'LOCKED' AND lock_user_id = :userId AND lock_expiry_time > :now";
+    
+    private static final String REVERT_BOOKING =
+            "UPDATE show_seats SET status = 'LOCKED', lock_user_id = :userId, lock_expiry_time = :expiry, lock_time = :now " +
+            "WHERE show_id = :showId AND " + SEATS + " AND status = 'BOOKED'";
+    
+    private static final String RELEASE_ALL =
+            "UPDATE show_seats SET status = 'AVAILABLE', lock_user_id = NULL, lock_expiry_time = NULL, lock_time = NULL " +
+            "WHERE lock_user_id = :userId AND status = 'LOCKED'";
+    
+    // Spans shows, so the width is joined per show instead of taken from :showId
+    private static final String SELECT_HELD =
+            "SELECT ss.show_id, (ss.row_number - 1) * screen_seats_per_row(sh.screen_id) + ss.seat_number AS seat_id " +
+            "FROM show_seats ss JOIN shows sh ON sh.id = ss.show_id " +
+            "WHERE ss.lock_user_id = :userId AND ss.status = 'LOCKED' AND ss.lock_expiry_time > :now";
+    
+    private static final String MARK_BOOKED =
+            "UPDATE show_seats SET status = 'BOOKED', lock_user_id = NULL, lock_expiry_time = NULL, lock_time = NULL " +
+            "WHERE show_id = :showId AND " + SEATS;
+    
+    private static final String SELECT_AVAILABLE =
+            "SELECT " + SEAT_ID + " FROM show_seats " +
+            "WHERE show_id = :showId AND " + SEATS + " " +
+            "AND (status = 'AVAILABLE' OR (status = 'LOCKED' AND lock_expiry_time <= :now))";
+    
+    private static final String SELECT_SEAT_AVAILABLE =
+            "SELECT COUNT(*) FROM show_seats " +
+            "WHERE show_id = :showId AND " + SEATS + " " +
+            "AND (status = 'AVAILABLE' OR (status = 'LOCKED' AND lock_expiry_time <= :now))";
+    
+    private static final String SELECT_LOCKED =
+            "SELECT " + SEAT_ID + " FROM show_seats " +
+            "WHERE show_id = :showId AND status = 'LOCKED' AND lock_expiry_time > :now";
+    
+    private static final String SELECT_BOOKED =
+            "SELECT " + SEAT_ID + " FROM show_seats WHERE show_id = :showId AND status = 'BOOKED'";
+    
+    private static final String SELECT_UNAVAILABLE =
+            "SELECT " + SEAT_ID + " AS seat_id, status, lock_user_id FROM show_seats " +
+            "WHERE show_id = :showId AND (status = 'BOOKED' OR (status = 'LOCKED' AND lock_expiry_time > :now)) " +
+            "ORDER BY seat_id";
+    
+    private static final String SELECT_LOCK_INFO =
+            "SELECT lock_user_id, COALESCE(lock_time, updated_at) AS lock_time, lock_expiry_time FROM show_seats " +
+            "WHERE show_id = :showId AND " + SEATS + " " +
+            "AND status = 'LOCKED' AND lock_expiry_time > :now";
+    
+    private static final String SELECT_SNAPSHOT =
+            "SELECT " + SEAT_ID + " AS seat_id, status, lock_user_id, COALESCE(lock_time, updated_at) AS lock_time, " +
+            "lock_expiry_time FROM show_seats " +
+            "WHERE show_id = :showId AND (status = 'BOOKED' OR (status = 'LOCKED' AND lock_expiry_time > :now)) " +
+            "ORDER BY seat_id";
+    
+    // Sum of the show's update stamps, and its locks that ran out without an update
+    private static final String SELECT_STATUS_VERSION =
+            "SELECT COALESCE(SUM(status_version), 0) AS stamps, " +
+            "COUNT(*) FILTER (WHERE status = 'LOCKED' AND lock_expiry_time <= :now) AS expired " +
+            "FROM show_seats WHERE show_id = :showId";
+    
+    private static final String RELEASE_EXPIRED =
+            "UPDATE show_seats SET status = 'AVAILABLE', lock_user_id = NULL, lock_expiry_time = NULL, lock_time = NULL " +
+            "WHERE status = 'LOCKED' AND lock_expiry_time <= :now";
+    
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate transaction;
+    private final SeatLockMetrics metrics;
+    // A screen's seat map never changes width, as that would renumber its seats
+    private final Map<Long, Integer> seatsPerRow = new ConcurrentHashMap<>();
+    
+    public PostgresSeatLockService(NamedParameterJdbcTemplate jdbc, PlatformTransactionManager transactionManager) {
+        this(jdbc, transactionManager, SeatLockMetrics.noop());
+    }
+    
+    @Autowired
+    public PostgresSeatLockService(NamedParameterJdbcTemplate jdbc, PlatformTransactionManager transactionManager,
+                                   SeatLockMetrics metrics) {
+        this.jdbc = jdbc;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public boolean lockSeats(Long showId, List<Long> seatIds, String userId, int lockDurationSeconds) {
+        if (seatIds.isEmpty()) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        MapSqlParameterSource params = seatParams(showId, seatIds)
+                .addValue("userId", userId)
+                .addValue("now", now)
+                .addValue("expiry", now.plusSeconds(lockDurationSeconds));
+        boolean locked = updateAll(LOCK_SEATS, params, distinctCount(seatIds));
+        if (locked) {
+            metrics.lockGranted();
+        } else {
+            metrics.lockRejected(SeatLockMetrics.Rejection.SEAT_UNAVAILABLE);
+        }
+        return locked;
+    }
+    
+    @Override
+    public List<Long> lockBestAvailable(Long showId, SeatGrid grid, ShowSeat.SeatCategory category, int seatCount,
+                                        String userId, int lockDurationSeconds) {
+        if (seatCount < 1 || seatCount > grid.getSeatsPerRow()) {
+            metrics.lockRejected(SeatLockMetrics.Rejection.NO_BLOCK);
+            return Collections.emptyList();
+        }
+        for (int attempt = 0; attempt < BEST_AVAILABLE_ATTEMPTS; attempt++) {
+            LocalDateTime now = LocalDateTime.now();
+            long[] occupied = new long[grid.getRows() + 1];
+            jdbc.query(SELECT_OCCUPIED, new MapSqlParameterSource("showId", showId).addValue("now", now), rs -> {
+                int row = rs.getInt("row_number");
+                int seat = rs.getInt("seat_number");
+                if (row >= 1 && row <= grid.getRows() && seat >= 1 && seat <= grid.getSeatsPerRow()) {
+                    occupied[row] |= 1L << (seat - 1);
+                }
+            });
+            
+            long first = grid.bestBlock(seatCount, category, row -> occupied[row]);
+            if (first == 0L) {
+                metrics.lockRejected(SeatLockMetrics.Rejection.NO_BLOCK);
+                return Collections.emptyList();
+            }
+            // A block lies within one row, so its seats have consecutive IDs on the grid
+            List<Long> seatIds = new ArrayList<>(seatCount);
+            for (int i = 0; i < seatCount; i++) {
+                seatIds.add(first + i);
+            }
+            
+            // The conditional lock fails as a whole if another request took a seat since the read
+            MapSqlParameterSource params = seatParams(showId, seatIds)
+                    .addValue("userId", userId)
+                    .addValue("now", now)
+                    .addValue("expiry", now.plusSeconds(lockDurationSeconds));
+            if (updateAll(LOCK_SEATS, params, seatCount)) {
+                metrics.lockGranted();
+                return seatIds;
+            }
+        }
+        metrics.lockRejected(SeatLockMetrics.Rejection.SEAT_UNAVAILABLE);
+        return Collections.emptyList();
+    }
+    
+    @Override
+    public long renewHold(Long showId, String userId, int extensionSeconds, int maxLifetimeSeconds) {
+        LocalDateTime now = LocalDateTime.now();
+        MapSqlParameterSource params = new MapSqlParameterSource("showId", showId)
+                .addValue("userId", userId)
+                .addValue("now", now)
+                .addValue("extended", now.plusSeconds(extensionSeconds))
+                .addValue("maxLifetimeSeconds", maxLifetimeSeconds);
+        long expiresAt = 0L;
+        for (Timestamp expiry : jdbc.queryForList(RENEW_HOLD, params, Timestamp.class)) {
+            expiresAt = Math.max(expiresAt, expiry.getTime());
+        }
+        return expiresAt;
+    }
+    
+    @Override
+    public boolean unlockSeats(Long showId, List<Long> seatIds, String userId) {
+        if (seatIds.isEmpty()) {
+            return true;
+        }
+        MapSqlParameterSource params = seatParams(showId, seatIds).addValue("userId", userId);
+        return jdbc.update(UNLOCK_SEATS, params) == distinctCount(seatIds);
+    }
+    
+    @Override
+    public int releaseAllSeats(String userId) {
+        return jdbc.update(RELEASE_ALL, new MapSqlParameterSource("userId", userId));
+    }
+    
+    @Override
+    public Map<Long, Set<Long>> getHeldSeats(String userId) {
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId)
+                .addValue("now", LocalDateTime.now());
+        Map<Long, Set<Long>> heldSeats = new HashMap<>();
+        jdbc.query(SELECT_HELD, params, rs -> {
+            heldSeats.computeIfAbsent(rs.getLong("show_id"), k -> new HashSet<>()).add(rs.getLong("seat_id"));
+        });
+        return heldSeats;
+    }
+    
+    @Override
+    public Set<Long> getAvailableSeats(Long showId, List<Long> seatIds) {
+        if (seatIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        MapSqlParameterSource params = seatParams(showId, seatIds).addValue("now", LocalDateTime.now());
+        return new HashSet<>(jdbc.queryForList(SELECT_AVAILABLE, params, Long.class));
+    }
+    
+    @Override
+    public boolean isSeatAvailable(Long showId, Long seatId) {
+        MapSqlParameterSource params = seatParams(showId, List.of(seatId))
+                .addValue("now", LocalDateTime.now());
+        Long count = jdbc.queryForObject(SELECT_SEAT_AVAILABLE, params, Long.class);
+        return count != null && count > 0;
+    }
+    
+    @Override
+    public Set<Long> getLockedSeats(Long showId) {
+        MapSqlParameterSource params = new MapSqlParameterSource("showId", showId)
+                .addValue("now", LocalDateTime.now());
+        return new HashSet<>(jdbc.queryForList(SELECT_LOCKED, params, Long.class));
+    }
+    
+    @Override
+    public Set<Long> getBookedSeats(Long showId) {
+        return new HashSet<>(jdbc.queryForList(SELECT_BOOKED, new MapSqlParameterSource("showId", showId), Long.class));
+    }
+    
+    @Override
+    public void markSeatsBooked(Long showId, List<Long> seatIds) {
+        if (seatIds.isEmpty()) {
+            return;
+        }
+        jdbc.update(MARK_BOOKED, seatParams(showId, seatIds));
+    }
+    
+    @Override
+    public SeatLockInfo getSeatLockInfo(Long showId, Long seatId) {
+        MapSqlParameterSource params = seatParams(showId, List.of(seatId))
+                .addValue("now", LocalDateTime.now());
+        List<SeatLockInfo> locks = jdbc.query(SELECT_LOCK_INFO, params, (rs, rowNum) -> new SeatLockInfo(
+                rs.getString("lock_user_id"),
+                rs.getTimestamp("lock_time").getTime(),
+                rs.getTimestamp("lock_expiry_time").getTime()));
+        return locks.isEmpty() ? null : locks.get(0);
+    }
+    
+    /**
+     * One statement, so the snapshot is consistent as of the statement's start
+     */
+    @Override
+    public ShowSeatSnapshot getShowSnapshot(Long showId) {
+        MapSqlParameterSource params = new MapSqlParameterSource("showId", showId)
+                .addValue("now", LocalDateTime.now());
+        long[] booked = new long[ShowSeatState.MAX_SEATS >>> 6];
+        long[] locked = new long[ShowSeatState.MAX_SEATS >>> 6];
+        List<String> holders = new ArrayList<>();
+        List<Long> lockTimes = new ArrayList<>();
+        List<Long> expiries = new ArrayList<>();
+        jdbc.query(SELECT_SNAPSHOT, params, rs -> {
+            int ordinal = ShowSeatState.ordinal(rs.getLong("seat_id"));
+            if (ordinal < 0) {
+                return;
+            }
+            if ("BOOKED".equals(rs.getString("status"))) {
+                booked[ordinal >>> 6] |= 1L << ordinal;
+            } else {
+                // Rows come in seat order, as the snapshot's lock arrays must be
+                locked[ordinal >>> 6] |= 1L << ordinal;
+                holders.add(rs.getString("lock_user_id"));
+                lockTimes.add(rs.getTimestamp("lock_time").getTime());
+                expiries.add(rs.getTimestamp("lock_expiry_time").getTime());
+            }
+        });
+        return new ShowSeatSnapshot(0L, -1L, booked, locked, holders.toArray(new String[0]),
+                lockTimes.stream().mapToLong(Long::longValue).toArray(),
+                expiries.stream().mapToLong(Long::longValue).toArray());
+    }
+    
+    @Override
+    public SeatChanges getSeatChanges(Long showId, long epoch, long sinceVersion, String userId) {
+        MapSqlParameterSource params = new MapSqlParameterSource("showId", showId)
+                .addValue("now", LocalDateTime.now());
+        List<SeatChange> seats = jdbc.query(SELECT_UNAVAILABLE, params, (rs, rowNum) -> {
+            ShowSeat.SeatStatus status = ShowSeat.SeatStatus.valueOf(rs.getString("status"));
+            return new SeatChange(rs.getLong("seat_id"), status,
+                    status == ShowSeat.SeatStatus.LOCKED && userId != null && userId.equals(rs.getString("lock_user_id")));
+        });
+        return new SeatChanges(0L, 0L, true, seats);
+    }
+    
+    @Override
+    public SeatStatusVector getSeatStatusVector(Long showId, int seatCount, String userId) {
+        // Read before the seats, so a change in between leaves the vector newer than its version, never older
+        SeatStatusVersion version = getSeatStatusVersion(showId);
+        byte[] statuses = SeatStatusVector.allocate(seatCount);
+        MapSqlParameterSource params = new MapSqlParameterSource("showId", showId)
+                .addValue("now", LocalDateTime.now());
+        jdbc.query(SELECT_UNAVAILABLE, params, rs -> {
+            long seatId = rs.getLong("seat_id");
+            if (seatId >= 1 && seatId <= seatCount) {
+                int status;
+                if ("BOOKED".equals(rs.getString("status"))) {
+                    status = SeatStatusVector.BOOKED;
+                } else if (userId != null && userId.equals(rs.getString("lock_user_id"))) {
+                    status = SeatStatusVector.HELD_BY_USER;
+                } else {
+                    status = SeatStatusVector.LOCKED;
+                }
+                SeatStatusVector.set(statuses, (int) (seatId - 1), status);
+            }
+        });
+        return new SeatStatusVector(version.epoch(), version.version(), seatCount, statuses);
+    }
+    
+    @Override
+    public SeatStatusVersion getSeatStatusVersion(Long showId) {
+        MapSqlParameterSource params = new MapSqlParameterSource("showId", showId)
+                .addValue("now", LocalDateTime.now());
+        // Committed updates raise the stamps; between updates, only expiring locks change what is available
+        return jdbc.queryForObject(SELECT_STATUS_VERSION, params, (rs, rowNum) -> new SeatStatusVersion(0L,
+                rs.getLong("stamps") * ShowSeatState.MAX_SEATS + rs.getLong("expired")));
+    }
+    
+    @Override
+    public void cleanupExpiredLocks() {
+        jdbc.update(RELEASE_EXPIRED, new MapSqlParameterSource("now", LocalDateTime.now()));
+    }
+    
+    @Override
+    public boolean confirmBooking(Long showId, List<Long> seatIds, String userId) {
+        if (seatIds.isEmpty()) {
+            return false;
+        }
+        MapSqlParameterSource params = seatParams(showId, seatIds)
+                .addValue("userId", userId)
+                .addValue("now", LocalDateTime.now());
+        return updateAll(CONFIRM_SEATS, params, distinctCount(seatIds));
+    }
+    
+    @Override
+    public void revertBooking(Long showId, List<Long> seatIds, String userId, int holdSeconds) {
+        if (seatIds.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        MapSqlParameterSource params = seatParams(showId, seatIds)
+                .addValue("userId", userId)
+                .addValue("now", now)
+                .addValue("expiry", now.plusSeconds(holdSeconds));
+        jdbc.update(REVERT_BOOKING, params);
+    }
+    
+    /**
+     * Run the update in its own transaction and keep it only if every seat was updated
+     */
+    private boolean updateAll(String sql, MapSqlParameterSource params, int expected) {
+        try {
+            Boolean updated = transaction.execute(status -> {
+                if (jdbc.update(sql, params) == expected) {
+                    return true;
+                }
+                status.setRollbackOnly();
+                return false;
+            });
+            return Boolean.TRUE.equals(updated);
+        } catch (DataAccessException e) {
+            // Serialization failures and deadlocks mean another request won the seats
+            return false;
+        }
+    }
+    
+    /**
+     * Parameters naming the seats by their positions on the show's seat map, as SEATS matches them
+     */
+    private MapSqlParameterSource seatParams(Long showId, List<Long> seatIds) {
+        // An unknown show has no rows to match, whatever the width
+        int width = Math.max(1, seatsPerRow(showId));
+        List<Object[]> seats = new ArrayList<>(seatIds.size());
+        for (Long seatId : seatIds) {
+            seats.add(new Object[] {Math.floorDiv(seatId - 1, width) + 1, Math.floorMod(seatId - 1, width) + 1});
+        }
+        return new MapSqlParameterSource("showId", showId).addValue("seats", seats);
+    }
+    
+    private int seatsPerRow(Long showId) {
+        Integer width = seatsPerRow.get(showId);
+        if (width == null) {
+            List<Integer> widths = jdbc.queryForList(SELECT_SEATS_PER_ROW,
+                    new MapSqlParameterSource("showId", showId), Integer.class);
+            if (widths.isEmpty() || widths.get(0) == null) {
+                return 0;
+            }
+            width = widths.get(0);
+            seatsPerRow.put(showId, width);
+        }
+        return width;
+    }
+    
+    private static int distinctCount(List<Long> seatIds) {
+        return new LinkedHashSet<>(seatIds).size();
+    }
+}
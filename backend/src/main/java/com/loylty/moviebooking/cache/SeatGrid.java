@@ -0,0 +1,217 @@
+package com.loylty.moviebooking.cache;
+
+import com.loylty.moviebooking.entity.ShowSeat;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Seat geometry of a screen: rows numbered from the front, seats numbered
+ * from 1 within a row, and seat ID (row - 1) * seatsPerRow + seat. The seats
+ * of a row therefore have consecutive IDs, which is what lets a row be read
+ * out of the lock engine's bitsets as a single 64-bit mask.
+ *
+ * Not every position of the grid has to hold a seat: aisles and gaps are
+ * positions without one, so rows can have any shape. Each seat has its own
+ * category. The rectangular grid follows ShowSeatService: every position is
+ * a seat, the last PREMIUM_ROWS rows are premium and the rest regular.
+ *
+ * Each row keeps a bitmask of its seats per category. The rows that have
+ * seats of a category are kept in order of preference, starting at the row
+ * two thirds of the way back and moving outwards, so a block search can stop
+ * at the first row that fits.
+ *
+ * Instances are immutable and can be shared by every show on the screen.
+ */
+public final class SeatGrid {
+    
+    // Rows at the back of the screen sold as premium, as seeded by ShowSeatService
+    public static final int PREMIUM_ROWS = 3;
+    
+    private static final ShowSeat.SeatCategory[] CATEGORIES = ShowSeat.SeatCategory.values();
+    
+    private final int rows;
+    private final int seatsPerRow;
+    private final int seatCount;
+    // Category of each seat ID - 1, null for a position without a seat
+    private final ShowSeat.SeatCategory[] categories;
+    // Seats of each row - 1, bit 0 being seat 1, in total and per category ordinal
+    private final long[] rowSeats;
+    private final long[][] categoryRowSeats;
+    private final int[] allRows;
+    private final int[][] categoryRows;
+    
+    /**
+     * Rectangular grid with a seat at every position and the back rows premium
+     */
+    public SeatGrid(int rows, int seatsPerRow) {
+        this(rows, seatsPerRow, standardCategories(rows, seatsPerRow));
+    }
+    
+    /**
+     * @param categories category of each seat ID - 1, null where the position has no seat
+     */
+    public SeatGrid(int rows, int seatsPerRow, ShowSeat.SeatCategory[] categories) {
+        if (rows < 1 || seatsPerRow < 1 || seatsPerRow > 64) {
+            throw new IllegalArgumentException("Unsupported screen geometry: " + rows + " x " + seatsPerRow);
+        }
+        if ((long) rows * seatsPerRow > ShowSeatState.MAX_SEATS) {
+            throw new IllegalArgumentException("Screen has more than " + ShowSeatState.MAX_SEATS + " seats");
+        }
+        if (categories.length != rows * seatsPerRow) {
+            throw new IllegalArgumentException("Expected " + rows * seatsPerRow + " seat categories");
+        }
+        this.rows = rows;
+        this.seatsPerRow = seatsPerRow;
+        this.categories = categories.clone();
+        this.rowSeats = new long[rows];
+        this.categoryRowSeats = new long[CATEGORIES.length][rows];
+        int count = 0;
+        for (int i = 0; i < this.categories.length; i++) {
+            ShowSeat.SeatCategory category = this.categories[i];
+            if (category != null) {
+                long bit = 1L << (i % seatsPerRow);
+                rowSeats[i / seatsPerRow] |= bit;
+                categoryRowSeats[category.ordinal()][i / seatsPerRow] |= bit;
+                count++;
+            }
+        }
+        this.seatCount = count;
+        this.allRows = rowsByPreference(rowSeats);
+        this.categoryRows = new int[CATEGORIES.length][];
+        for (ShowSeat.SeatCategory category : CATEGORIES) {
+            categoryRows[category.ordinal()] = rowsByPreference(categoryRowSeats[category.ordinal()]);
+        }
+    }
+    
+    public int getRows() {
+        return rows;
+    }
+    
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+    
+    /**
+     * @return number of seats, not counting positions without one
+     */
+    public int getSeatCount() {
+        return seatCount;
+    }
+    
+    /**
+     * @return highest seat ID of the grid; IDs up to it include positions without a seat
+     */
+    public int getMaxSeatId() {
+        return categories.length;
+    }
+    
+    public long seatId(int row, int seat) {
+        return (long) (row - 1) * seatsPerRow + seat;
+    }
+    
+    public int rowOf(long seatId) {
+        return (int) ((seatId - 1) / seatsPerRow) + 1;
+    }
+    
+    public int seatNumberOf(long seatId) {
+        return (int) ((seatId - 1) % seatsPerRow) + 1;
+    }
+    
+    /**
+     * @return true if the ID is on the grid and its position holds a seat
+     */
+    public boolean isSeat(long seatId) {
+        return seatId >= 1 && seatId <= categories.length && categories[(int) (seatId - 1)] != null;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the seat is not on the grid or its position has no seat
+     */
+    public ShowSeat.SeatCategory categoryOf(long seatId) {
+        if (!isSeat(seatId)) {
+            throw new IllegalArgumentException("Seat " + seatId + " is not on the seat map");
+        }
+        return categories[(int) (seatId - 1)];
+    }
+    
+    /**
+     * Find the best block of adjacent free seats within one row: the most
+     * preferred row that has one, and in that row the block nearest the centre.
+     * @param count number of adjacent seats
+     * @param category category the block must lie in, or null for any row
+     * @param occupiedRow bitmask of the taken seats of a row, bit 0 being seat 1
+     * @return ID of the first seat of the block, or 0 if no row has room
+     */
+    public long bestBlock(int count, ShowSeat.SeatCategory category, IntToLongFunction occupiedRow) {
+        if (count < 1 || count > seatsPerRow) {
+            return 0L;
+        }
+        
+        long[] seatsOf = category == null ? rowSeats : categoryRowSeats[category.ordinal()];
+        // Start offset of a block centred in the row, rounded down
+        int centre = (seatsPerRow - count) >>> 1;
+        for (int row : rowsOf(category)) {
+            // Aisles and seats of other categories never count as free
+            long free = ~occupiedRow.applyAsLong(row) & seatsOf[row - 1];
+            // Bit i stays set if seats i .. i + count - 1 are all free
+            long starts = free;
+            for (int k = 1; k < count && starts != 0; k++) {
+                starts &= free >>> k;
+            }
+            if (starts == 0) {
+                continue;
+            }
+            
+            // Nearest start at or left of the centre, and at or right of it
+            long left = starts & (centre == 63 ? -1L : (2L << centre) - 1);
+            long right = starts & (-1L << centre);
+            int start;
+            if (left == 0) {
+                start = Long.numberOfTrailingZeros(right);
+            } else if (right == 0) {
+                start = 63 - Long.numberOfLeadingZeros(left);
+            } else {
+                int before = 63 - Long.numberOfLeadingZeros(left);
+                int after = Long.numberOfTrailingZeros(right);
+                start = centre - before <= after - centre ? before : after;
+            }
+            return seatId(row, start + 1);
+        }
+        return 0L;
+    }
+    
+    private int[] rowsOf(ShowSeat.SeatCategory category) {
+        return category == null ? allRows : categoryRows[category.ordinal()];
+    }
+    
+    /**
+     * Rows that have a seat in the mask, ordered by distance from the row two thirds of the way back
+     */
+    private int[] rowsByPreference(long[] seatsByRow) {
+        int ideal = (rows * 2 + 2) / 3;
+        int[] order = new int[rows];
+        int n = 0;
+        for (int d = 0; d < rows; d++) {
+            // Behind the ideal row first: a row further back beats one closer to the screen
+            int behind = ideal + d;
+            if (behind <= rows && seatsByRow[behind - 1] != 0) {
+                order[n++] = behind;
+            }
+            int before = ideal - d;
+            if (d > 0 && before >= 1 && seatsByRow[before - 1] != 0) {
+                order[n++] = before;
+            }
+        }
+        return Arrays.copyOf(order, n);
+    }
+    
+    private static ShowSeat.SeatCategory[] standardCategories(int rows, int seatsPerRow) {
+        ShowSeat.SeatCategory[] categories = new ShowSeat.SeatCategory[Math.max(0, rows) * Math.max(0, seatsPerRow)];
+        for (int i = 0; i < categories.length; i++) {
+            int row = i / seatsPerRow + 1;
+            categories[i] = row > rows - PREMIUM_ROWS ? ShowSeat.SeatCategory.PREMIUM : ShowSeat.SeatCategory.REGULAR;
+        }
+        return categories;
+    }
+}
@@ -0,0 +1,22 @@
+package com.loylty.moviebooking.cache;
+
+/**
+ * Time source of the seat lock engine, in epoch milliseconds.
+ * Lock deadlines are plain longs from this clock, so checking a lock never
+ * allocates, and a fixed or manually advanced clock makes expiry deterministic.
+ */
+@FunctionalInterface
+public interface SeatLockClock {
+    
+    /**
+     * @return the current time in epoch milliseconds
+     */
+    long millis();
+    
+    /**
+     * Clock that reads System.currentTimeMillis() on every call
+     */
+    static SeatLockClock system() {
+        return System::currentTimeMillis;
+    }
+}
@@ -0,0 +1,365 @@
+package com.loylty.moviebooking.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of seat lock operations, in numbered segments with
+ * periodic snapshots, written and fsynced in batches by a flusher. All
+ * records of a show go to one stripe, which keeps them in order; replay
+ * must be idempotent, as a snapshot may already contain part of its segment.
+ * Record layout: length (int), CRC32C of the payload (int), payload.
+ */
+@Slf4j
+final class SeatLockJournal implements Closeable {
+    
+    static final byte LOCK = 1;
+    static final byte UNLOCK = 2;
+    static final byte CONFIRM = 3;
+    static final byte EXPIRE = 4;
+    static final byte RENEW = 5;
+    static final byte REVERT = 6;
+    static final byte EVICT = 7;
+    
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final int SNAPSHOT_MAGIC = 0x534c534e; // "SLSN"
+    private static final int INITIAL_BUFFER_SIZE = 1 << 20;
+    private static final int MIN_STRIPE_BUFFER_SIZE = 1 << 16;
+    
+    /**
+     * Receives replayed records during recovery
+     */
+    interface RecordVisitor {
+        void apply(byte type, long showId, long time, long expiresAt, String holder, long[] seatIds);
+    }
+    
+    @FunctionalInterface
+    interface SnapshotWriter {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+    
+    @FunctionalInterface
+    interface SnapshotReader {
+        void readFrom(DataInputStream in) throws IOException;
+    }
+    
+    private final Path dir;
+    
+    // Record buffers, picked by show ID
+    private final Stripe[] stripes;
+    
+    // Guards the channel; always taken before a stripe's monitor
+    private final Object flushLock = new Object();
+    private FileChannel channel;
+    private long segment;
+    
+    SeatLockJournal(Path dir) throws IOException {
+        this(dir, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1));
+    }
+    
+    /**
+     * @param stripeCount number of record buffers, a power of two
+     */
+    SeatLockJournal(Path dir, int stripeCount) throws IOException {
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two: " + stripeCount);
+        }
+        this.dir = Files.createDirectories(dir);
+        this.stripes = new Stripe[stripeCount];
+        int bufferSize = Math.max(MIN_STRIPE_BUFFER_SIZE, INITIAL_BUFFER_SIZE / stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(bufferSize);
+        }
+    }
+    
+    /**
+     * Rebuild state from the latest snapshot and the journal segments after it,
+     * then open a fresh segment for new records
+     */
+    void recover(SnapshotReader snapshotReader, RecordVisitor visitor) throws IOException {
+        long snapshot = latest(SNAPSHOT_PREFIX);
+        if (snapshot >= 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file(SNAPSHOT_PREFIX, snapshot)), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a seat lock snapshot: " + file(SNAPSHOT_PREFIX, snapshot));
+                }
+                snapshotReader.readFrom(in);
+            }
+        }
+        
+        long records = 0;
+        long last = Math.max(snapshot, 0);
+        for (long seg : list(SEGMENT_PREFIX)) {
+            if (seg >= snapshot) {
+                records += replay(file(SEGMENT_PREFIX, seg), visitor);
+            }
+            last = Math.max(last, seg);
+        }
+        log.info("Recovered seat lock state from snapshot {} and {} journal records", snapshot, records);
+        
+        synchronized (flushLock) {
+            openSegment(last + 1);
+        }
+    }
+    
+    /**
+     * Append one lock, unlock, confirm, renew or revert record
+     */
+    void append(byte type, long showId, long time, long expiresAt, String holder, List<Long> seatIds) {
+        stripeOf(showId).append(type, showId, time, expiresAt, holder, seatIds);
+    }
+    
+    /**
+     * Append an expiry record for a single seat
+     */
+    void appendExpire(long showId, long time, long seatId) {
+        stripeOf(showId).appendExpire(showId, time, seatId);
+    }
+    
+    /**
+     * Write buffered records of every stripe to the current segment and fsync them as one batch
+     */
+    void flush() throws IOException {
+        synchronized (flushLock) {
+            List<ByteBuffer> batches = new ArrayList<>(stripes.length);
+            for (Stripe stripe : stripes) {
+                ByteBuffer batch = stripe.swap();
+                if (batch != null) {
+                    batch.flip();
+                    batches.add(batch);
+                }
+            }
+            if (batches.isEmpty()) {
+                return;
+            }
+            
+            ByteBuffer[] gather = batches.toArray(new ByteBuffer[0]);
+            ByteBuffer last = gather[gather.length - 1];
+            while (last.hasRemaining()) {
+                channel.write(gather);
+            }
+            channel.force(false);
+            // A stripe only gets its swapped-out buffer back at the next flush, under flushLock
+            for (ByteBuffer batch : gather) {
+                batch.clear();
+            }
+        }
+    }
+    
+    /**
+     * Start a new segment, write a snapshot that covers everything before it and
+     * drop the segments and snapshots it replaces
+     */
+    void snapshot(SnapshotWriter writer) throws IOException {
+        long covered;
+        synchronized (flushLock) {
+            flush();
+            covered = segment + 1;
+            openSegment(covered);
+        }
+        
+        Path target = file(SNAPSHOT_PREFIX, covered);
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+            data.writeInt(SNAPSHOT_MAGIC);
+            writer.writeTo(data);
+            data.flush();
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        for (long seg : list(SEGMENT_PREFIX)) {
+            if (seg < covered) {
+                Files.deleteIfExists(file(SEGMENT_PREFIX, seg));
+            }
+        }
+        for (long snap : list(SNAPSHOT_PREFIX)) {
+            if (snap < covered) {
+                Files.deleteIfExists(file(SNAPSHOT_PREFIX, snap));
+            }
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            if (channel != null) {
+                flush();
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+    
+    private long replay(Path segmentFile, RecordVisitor visitor) throws IOException {
+        long records = 0;
+        CRC32C check = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentFile), 1 << 16))) {
+            while (true) {
+                int length;
+                int expectedCrc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length <= 0 || length > (1 << 20)) {
+                        log.warn("Corrupt record length {} in {}, ignoring the rest of the segment", length, segmentFile);
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                check.reset();
+                check.update(payload, 0, length);
+                if ((int) check.getValue() != expectedCrc) {
+                    log.warn("Checksum mismatch in {}, ignoring the rest of the segment", segmentFile);
+                    break;
+                }
+                
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                byte type = record.get();
+                long showId = record.getLong();
+                long time = record.getLong();
+                long expiresAt = record.getLong();
+                char[] holder = new char[record.getShort()];
+                for (int i = 0; i < holder.length; i++) {
+                    holder[i] = record.getChar();
+                }
+                long[] seatIds = new long[record.getShort()];
+                for (int i = 0; i < seatIds.length; i++) {
+                    seatIds[i] = record.getInt();
+                }
+                visitor.apply(type, showId, time, expiresAt, new String(holder), seatIds);
+                records++;
+            }
+        }
+        return records;
+    }
+    
+    private void openSegment(long next) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(file(SEGMENT_PREFIX, next), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segment = next;
+    }
+    
+    private long latest(String prefix) throws IOException {
+        List<Long> numbers = list(prefix);
+        return numbers.isEmpty() ? -1 : numbers.get(numbers.size() - 1);
+    }
+    
+    private List<Long> list(String prefix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && !name.endsWith(".tmp"))
+                    .forEach(name -> numbers.add(Long.parseLong(name.substring(prefix.length(), name.indexOf('.')))));
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+    
+    private Stripe stripeOf(long showId) {
+        return stripes[Long.hashCode(showId * 0x9E3779B97F4A7C15L) & (stripes.length - 1)];
+    }
+    
+    private Path file(String prefix, long number) {
+        return dir.resolve(String.format("%s%016d.%s", prefix, number, prefix.equals(SEGMENT_PREFIX) ? "log" : "bin"));
+    }
+    
+    /**
+     * Record buffers of the shows mapped to one stripe: appended to under the
+     * stripe's monitor, swapped out by the flusher
+     */
+    private static final class Stripe {
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer active;
+        private ByteBuffer flushing;
+        
+        Stripe(int bufferSize) {
+            active = ByteBuffer.allocate(bufferSize);
+            flushing = ByteBuffer.allocate(bufferSize);
+        }
+        
+        synchronized void append(byte type, long showId, long time, long expiresAt, String holder, List<Long> seatIds) {
+            int length = 1 + 8 + 8 + 8 + 2 + holder.length() * 2 + 2 + seatIds.size() * 4;
+            int start = begin(length);
+            active.put(type).putLong(showId).putLong(time).putLong(expiresAt);
+            active.putShort((short) holder.length());
+            for (int i = 0; i < holder.length(); i++) {
+                active.putChar(holder.charAt(i));
+            }
+            active.putShort((short) seatIds.size());
+            for (Long seatId : seatIds) {
+                active.putInt(seatId.intValue());
+            }
+            end(start, length);
+        }
+        
+        synchronized void appendExpire(long showId, long time, long seatId) {
+            int length = 1 + 8 + 8 + 8 + 2 + 2 + 4;
+            int start = begin(length);
+            active.put(EXPIRE).putLong(showId).putLong(time).putLong(0L);
+            active.putShort((short) 0).putShort((short) 1).putInt((int) seatId);
+            end(start, length);
+        }
+        
+        /**
+         * @return the buffered records, or null if there are none
+         */
+        synchronized ByteBuffer swap() {
+            if (active.position() == 0) {
+                return null;
+            }
+            ByteBuffer batch = active;
+            active = flushing;
+            flushing = batch;
+            return batch;
+        }
+        
+        private int begin(int length) {
+            if (active.remaining() < length + 8) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(active.capacity() * 2, active.position() + length + 8));
+                active.flip();
+                grown.put(active);
+                active = grown;
+            }
+            int start = active.position();
+            active.position(start + 8);
+            return start;
+        }
+        
+        private void end(int start, int length) {
+            crc.reset();
+            crc.update(active.array(), start + 8, length);
+            active.putInt(start, length);
+            active.putInt(start + 4, (int) crc.getValue());
+        }
+    }
+}
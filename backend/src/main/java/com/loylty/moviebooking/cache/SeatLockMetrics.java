@@ -0,0 +1,194 @@
+package com.loylty.moviebooking.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Meters of the seat lock engine and the booking paths built on it.
+ *
+ * Every meter is registered once up front and kept in a field or an array
+ * indexed by enum ordinal, so recording never looks anything up in the
+ * registry. Counters and timers are backed by adders and atomic bucket arrays,
+ * which keeps recording lock-free; the engine calls in here from inside a show
+ * monitor without widening it by more than a few adder increments.
+ *
+ * Per-show gauges would give one time series per show, so only the hottest
+ * shows of the last sampling interval are published, as rows of a MultiGauge
+ * that the engine replaces on each sample.
+ */
+public final class SeatLockMetrics {
+    
+    /**
+     * Why a lock request was turned down
+     */
+    public enum Rejection {
+        // A requested seat is booked
+        SEAT_BOOKED,
+        // A requested seat carries a live lock of another user
+        SEAT_HELD,
+        // A requested seat ID is outside the lock engine's range
+        INVALID_SEAT,
+        // The database store cannot tell booked from held seats
+        SEAT_UNAVAILABLE,
+        // No row has a block of adjacent free seats of the requested size
+        NO_BLOCK,
+        // The user has not been admitted by the show's waiting room
+        NOT_ADMITTED
+    }
+    
+    /**
+     * How a hold ended
+     */
+    public enum HoldOutcome {
+        RELEASED,
+        EXPIRED,
+        CONFIRMED
+    }
+    
+    /**
+     * Lock activity of one show over the last sampling interval
+     */
+    public record HotShow(long showId, double lockAttemptsPerSecond, int heldSeats) {
+    }
+    
+    private final Counter granted;
+    private final Counter[] rejected;
+    private final Timer[] holdDurations;
+    private final Counter expiredSeats;
+    private final Timer confirmed;
+    private final Timer confirmFailed;
+    private final Timer seatLayout;
+    private final LongAdder heldSeats = new LongAdder();
+    private final MultiGauge hotShowLockRate;
+    private final MultiGauge hotShowHeldSeats;
+    
+    public SeatLockMetrics(MeterRegistry registry) {
+        granted = Counter.builder("seat_lock.attempts")
+                .description("Seat lock requests by result")
+                .tag("result", "granted")
+                .register(registry);
+        
+        Rejection[] reasons = Rejection.values();
+        rejected = new Counter[reasons.length];
+        for (Rejection reason : reasons) {
+            rejected[reason.ordinal()] = Counter.builder("seat_lock.attempts")
+                    .description("Seat lock requests by result")
+                    .tag("result", tagValue(reason))
+                    .register(registry);
+        }
+        
+        HoldOutcome[] outcomes = HoldOutcome.values();
+        holdDurations = new Timer[outcomes.length];
+        for (HoldOutcome outcome : outcomes) {
+            holdDurations[outcome.ordinal()] = Timer.builder("seat_lock.hold.duration")
+                    .description("Time from a holder's first lock in a show until its last seat there is freed")
+                    .tag("outcome", tagValue(outcome))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofSeconds(1))
+                    .maximumExpectedValue(Duration.ofMinutes(30))
+                    .register(registry);
+        }
+        
+        expiredSeats = Counter.builder("seat_lock.expired.seats")
+                .description("Seats freed because their hold ran out")
+                .register(registry);
+        confirmed = confirmTimer(registry, "confirmed");
+        confirmFailed = confirmTimer(registry, "rejected");
+        seatLayout = Timer.builder("seat_layout.build")
+                .description("Time to build the seat map of a show")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(registry);
+        
+        Gauge.builder("seat_lock.held.seats", heldSeats, LongAdder::sum)
+                .description("Seats currently locked, including expired holds not yet swept")
+                .register(registry);
+        hotShowLockRate = MultiGauge.builder("seat_lock.hot_show.attempt_rate")
+                .description("Lock requests per second of the busiest shows over the last sampling interval")
+                .register(registry);
+        hotShowHeldSeats = MultiGauge.builder("seat_lock.hot_show.held.seats")
+                .description("Seats currently locked in the busiest shows")
+                .register(registry);
+    }
+    
+    /**
+     * Metrics that record into meters no registry publishes, for engines built outside Spring
+     */
+    public static SeatLockMetrics noop() {
+        return new SeatLockMetrics(new CompositeMeterRegistry());
+    }
+    
+    public void lockGranted() {
+        granted.increment();
+    }
+    
+    public void lockRejected(Rejection reason) {
+        rejected[reason.ordinal()].increment();
+    }
+    
+    void seatHeld() {
+        heldSeats.increment();
+    }
+    
+    void seatFreed() {
+        heldSeats.decrement();
+    }
+    
+    void seatExpired() {
+        expiredSeats.increment();
+    }
+    
+    void holdEnded(HoldOutcome outcome, long durationMillis) {
+        holdDurations[outcome.ordinal()].record(Math.max(0L, durationMillis), TimeUnit.MILLISECONDS);
+    }
+    
+    public void recordConfirm(long nanos, boolean success) {
+        (success ? confirmed : confirmFailed).record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    public void recordSeatLayout(long nanos) {
+        seatLayout.record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Replace the published hot-show rows; shows that dropped out of the list lose their series
+     */
+    void publishHotShows(List<HotShow> hotShows) {
+        List<MultiGauge.Row<?>> rates = new ArrayList<>(hotShows.size());
+        List<MultiGauge.Row<?>> held = new ArrayList<>(hotShows.size());
+        for (HotShow show : hotShows) {
+            Tags tags = Tags.of("show", Long.toString(show.showId()));
+            rates.add(MultiGauge.Row.of(tags, show.lockAttemptsPerSecond()));
+            held.add(MultiGauge.Row.of(tags, show.heldSeats()));
+        }
+        hotShowLockRate.register(rates, true);
+        hotShowHeldSeats.register(held, true);
+    }
+    
+    private static Timer confirmTimer(MeterRegistry registry, String result) {
+        return Timer.builder("booking.confirm")
+                .description("Time to confirm a booking, from the lock check to the saved rows")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+    
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,7 +1,12 @@
 package com.loylty.moviebooking.cache;
 
+import com.loylty.moviebooking.entity.ShowSeat;
+
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface SeatLockService {
@@ -11,10 +16,35 @@ public interface SeatLockService {
      * @param showId the show ID
      * @param seatIds list of seat IDs to lock
      * @param userId the user identifier (can be session ID or user ID)
-     * @param lockDurationMinutes duration in minutes for the lock
+     * @param lockDurationSeconds duration in seconds for the lock
      * @return true if seats were successfully locked, false if any seat is already locked
      */
-    boolean lockSeats(Long showId, List<Long> seatIds, String userId, int lockDurationMinutes);
+    boolean lockSeats(Long showId, List<Long> seatIds, String userId, int lockDurationSeconds);
+    
+    /**
+     * Find the best block of adjacent free seats in one row and lock it for the user, in one step
+     * @param showId the show ID
+     * @param grid seat geometry of the show's screen
+     * @param category seat category the block must be in, or null for any
+     * @param seatCount number of adjacent seats
+     * @param userId the user identifier (can be session ID or user ID)
+     * @param lockDurationSeconds duration in seconds for the lock
+     * @return IDs of the locked seats, or an empty list if no row has a large enough block
+     */
+    List<Long> lockBestAvailable(Long showId, SeatGrid grid, ShowSeat.SeatCategory category, int seatCount,
+                                 String userId, int lockDurationSeconds);
+    
+    /**
+     * Extend every live lock the user holds in a show, as a checkout heartbeat.
+     * Locks are extended to now + extension, but never past the time the user
+     * first locked seats in the show plus the maximum lifetime.
+     * @param showId the show ID
+     * @param userId the user identifier
+     * @param extensionSeconds how long the locks should last from now
+     * @param maxLifetimeSeconds longest a user may keep seats of the show locked
+     * @return the new expiry time in epoch millis, or 0 if the user holds no live lock in the show
+     */
+    long renewHold(Long showId, String userId, int extensionSeconds, int maxLifetimeSeconds);
     
     /**
      * Unlock seats for a specific show
@@ -25,6 +55,21 @@ public interface SeatLockService {
      */
     boolean unlockSeats(Long showId, List<Long> seatIds, String userId);
     
+    /**
+     * Release every seat the user holds, across all shows.
+     * Used when checkout is abandoned, so seats do not wait out their hold.
+     * @param userId the user identifier
+     * @return number of seats released
+     */
+    int releaseAllSeats(String userId);
+    
+    /**
+     * Get every seat the user currently holds, across all shows
+     * @param userId the user identifier
+     * @return seat IDs held by the user, keyed by show ID
+     */
+    Map<Long, Set<Long>> getHeldSeats(String userId);
+    
     /**
      * Check if seats are available (not locked or booked)
      * @param showId the show ID
@@ -40,6 +85,30 @@ public interface SeatLockService {
      */
     Set<Long> getLockedSeats(Long showId);
     
+    /**
+     * Get booked seats for a show
+     * @param showId the show ID
+     * @return set of booked seat IDs
+     */
+    Set<Long> getBookedSeats(Long showId);
+    
+    /**
+     * Get the booked seats and all locks of a show, with their holders and
+     * expiries, as one consistent point-in-time copy. Layouts read every seat
+     * from it instead of asking for seats one by one.
+     * @param showId the show ID
+     * @return an immutable snapshot; readers decide from their own clock which locks are live
+     */
+    ShowSeatSnapshot getShowSnapshot(Long showId);
+    
+    /**
+     * Mark seats as booked without requiring a lock.
+     * Used to load bookings that already exist in the database at startup.
+     * @param showId the show ID
+     * @param seatIds list of booked seat IDs
+     */
+    void markSeatsBooked(Long showId, List<Long> seatIds);
+    
     /**
      * Get lock information for specific seats
      * @param showId the show ID
@@ -48,6 +117,47 @@ public interface SeatLockService {
      */
     SeatLockInfo getSeatLockInfo(Long showId, Long seatId);
     
+    /**
+     * Check a single seat without building any collection
+     * @param showId the show ID
+     * @param seatId the seat ID
+     * @return true if the seat is neither locked nor booked
+     */
+    boolean isSeatAvailable(Long showId, Long seatId);
+    
+    /**
+     * Get the seats of a show whose state changed since the client's version.
+     * The change history is kept in memory, so it only answers for the epoch
+     * it was kept in; a client from another epoch, or one that fell further
+     * behind than the history reaches, gets a snapshot of all seats that are
+     * not available instead.
+     * @param showId the show ID
+     * @param epoch epoch of the client's version, as returned by an earlier call
+     * @param sinceVersion version the client has seen, or a negative value for a snapshot
+     * @param userId the user identifier, whose own locks are flagged; may be null
+     * @return the changed seats with their current state, and the version they bring the client to
+     */
+    SeatChanges getSeatChanges(Long showId, long epoch, long sinceVersion, String userId);
+    
+    /**
+     * Get the status of every seat of a show packed two bits per seat, taken
+     * together with the epoch and version of the show's state
+     * @param showId the show ID
+     * @param seatCount number of seat IDs to pack, from 1
+     * @param userId requester, whose own locks are packed as HELD_BY_USER; may be null
+     * @return the packed statuses, with version -1 if the store keeps no versions
+     */
+    SeatStatusVector getSeatStatusVector(Long showId, int seatCount, String userId);
+    
+    /**
+     * Get the epoch and version a getSeatStatusVector call would be taken at,
+     * without packing anything. Two vectors of the same show, seat count and
+     * requester at the same epoch and version are identical.
+     * @param showId the show ID
+     * @return the current epoch and version, or null if the store keeps no versions
+     */
+    SeatStatusVersion getSeatStatusVersion(Long showId);
+    
     /**
      * Clean up expired locks
      * This method should be called periodically to remove expired locks
@@ -64,33 +174,107 @@ public interface SeatLockService {
     boolean confirmBooking(Long showId, List<Long> seatIds, String userId);
     
     /**
-     * Inner class to hold lock information
+     * Undo a confirmBooking whose booking could not be saved. The seats stop
+     * being booked and go back to the user as a fresh hold, so the checkout can
+     * retry the confirm, or the hold runs out and the seats are sold again.
+     * @param showId the show ID
+     * @param seatIds seat IDs passed to confirmBooking
+     * @param userId the user the seats were confirmed for
+     * @param holdSeconds how long the restored hold lasts
+     */
+    void revertBooking(Long showId, List<Long> seatIds, String userId, int holdSeconds);
+    
+    /**
+     * Current state of one seat in a SeatChanges
+     * @param heldByUser true if the seat is locked by the user the changes were asked for
+     */
+    record SeatChange(long seatId, ShowSeat.SeatStatus status, boolean heldByUser) {
+    }
+    
+    /**
+     * Seats of a show that changed since a client's version
+     * @param epoch identifies the change history the version belongs to
+     * @param version version of the show the client is brought to
+     * @param snapshot true if seats lists every seat that is not available, rather than the changes
+     */
+    record SeatChanges(long epoch, long version, boolean snapshot, List<SeatChange> seats) {
+    }
+    
+    /**
+     * Epoch and version of a show's state, as counted by getSeatChanges
+     */
+    record SeatStatusVersion(long epoch, long version) {
+    }
+    
+    /**
+     * Status of seat IDs 1 .. seatCount, two bits per seat: seat ID i is in
+     * bits 2 * ((i - 1) % 4) and up of byte (i - 1) / 4. Positions without a
+     * seat are packed as AVAILABLE.
+     */
+    record SeatStatusVector(long epoch, long version, int seatCount, byte[] statuses) {
+        public static final int AVAILABLE = 0;
+        public static final int LOCKED = 1;
+        public static final int BOOKED = 2;
+        public static final int HELD_BY_USER = 3;
+        
+        public static byte[] allocate(int seatCount) {
+            return new byte[(seatCount + 3) >>> 2];
+        }
+        
+        /**
+         * Pack the status of a seat into an array from allocate; each seat is set at most once
+         */
+        public static void set(byte[] statuses, int ordinal, int status) {
+            statuses[ordinal >>> 2] |= (byte) (status << ((ordinal & 3) << 1));
+        }
+        
+        public int statusOf(long seatId) {
+            int ordinal = (int) (seatId - 1);
+            return (statuses[ordinal >>> 2] >>> ((ordinal & 3) << 1)) & 3;
+        }
+    }
+    
+    /**
+     * Lock information of a seat. Times are kept as epoch millis and only
+     * turned into LocalDateTime when a response DTO asks for them.
      */
     class SeatLockInfo {
         private final String userId;
-        private final LocalDateTime lockTime;
-        private final LocalDateTime expiryTime;
+        private final long lockTimeMillis;
+        private final long expiryTimeMillis;
         
-        public SeatLockInfo(String userId, LocalDateTime lockTime, LocalDateTime expiryTime) {
+        public SeatLockInfo(String userId, long lockTimeMillis, long expiryTimeMillis) {
             this.userId = userId;
-            this.lockTime = lockTime;
-            this.expiryTime = expiryTime;
+            this.lockTimeMillis = lockTimeMillis;
+            this.expiryTimeMillis = expiryTimeMillis;
         }
         
         public String getUserId() {
             return userId;
         }
         
+        public long getLockTimeMillis() {
+            return lockTimeMillis;
+        }
+        
+        public long getExpiryTimeMillis() {
+            return expiryTimeMillis;
+        }
+        
         public LocalDateTime getLockTime() {
-            return lockTime;
+            return toDateTime(lockTimeMillis);
         }
         
         public LocalDateTime getExpiryTime() {
-            return expiryTime;
+            return toDateTime(expiryTimeMillis);
+        }
+        
+        public boolean isExpired(long nowMillis) {
+            return nowMillis >= expiryTimeMillis;
         }
         
-        public boolean isExpired() {
-            return LocalDateTime.now().isAfter(expiryTime);
+        private static LocalDateTime toDateTime(long epochMillis) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
         }
     }
 }
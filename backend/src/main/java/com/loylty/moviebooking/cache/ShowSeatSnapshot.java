@@ -0,0 +1,130 @@
+package com.loylty.moviebooking.cache;
+
+import com.loylty.moviebooking.entity.ShowSeat;
+
+/**
+ * Point-in-time copy of a show's seat state: the booked seats, and every lock
+ * with its holder, first lock time and expiry, all taken in one critical
+ * section of the show.
+ *
+ * Booked and locked seats are bitsets like in ShowSeatState. The locks are
+ * stored in seat order in parallel arrays, and a seat's lock is found by
+ * counting the locked seats before it, so a snapshot holds no per-seat
+ * objects. Whether a lock is live is decided by the reader's clock, since a
+ * snapshot can be read long after it was taken.
+ *
+ * Instances are immutable, and may be shared between any number of readers.
+ */
+public final class ShowSeatSnapshot {
+    
+    private final long epoch;
+    private final long version;
+    private final long[] booked;
+    private final long[] locked;
+    // Number of locks in the words before each word, their index in the arrays below
+    private final int[] lockRank;
+    private final String[] holders;
+    private final long[] lockTimes;
+    private final long[] expiries;
+    
+    /**
+     * @param holders holder, first lock time and expiry of each locked seat, in seat order
+     */
+    ShowSeatSnapshot(long epoch, long version, long[] booked, long[] locked,
+                     String[] holders, long[] lockTimes, long[] expiries) {
+        this.epoch = epoch;
+        this.version = version;
+        this.booked = booked;
+        this.locked = locked;
+        this.holders = holders;
+        this.lockTimes = lockTimes;
+        this.expiries = expiries;
+        lockRank = new int[locked.length];
+        int rank = 0;
+        for (int w = 0; w < locked.length; w++) {
+            lockRank[w] = rank;
+            rank += Long.bitCount(locked[w]);
+        }
+        if (rank != holders.length) {
+            throw new IllegalArgumentException("Expected " + rank + " locks, got " + holders.length);
+        }
+    }
+    
+    static ShowSeatSnapshot empty(long epoch) {
+        return new ShowSeatSnapshot(epoch, 0L, new long[0], new long[0], new String[0], new long[0], new long[0]);
+    }
+    
+    /**
+     * @return epoch of the version, as in SeatLockService.SeatChanges
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+    
+    /**
+     * @return version of the show's state the snapshot was taken at, -1 if the store keeps no versions
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    public ShowSeat.SeatStatus statusOf(long seatId, long nowMillis) {
+        int ordinal = ordinal(seatId);
+        if (ordinal < 0) {
+            return ShowSeat.SeatStatus.AVAILABLE;
+        }
+        if (isSet(booked, ordinal)) {
+            return ShowSeat.SeatStatus.BOOKED;
+        }
+        int lock = lockIndex(ordinal);
+        return lock >= 0 && expiries[lock] > nowMillis ? ShowSeat.SeatStatus.LOCKED : ShowSeat.SeatStatus.AVAILABLE;
+    }
+    
+    /**
+     * @return number of seats that are booked or held by a live lock
+     */
+    public int countUnavailable(long nowMillis) {
+        int count = 0;
+        for (long word : booked) {
+            count += Long.bitCount(word);
+        }
+        for (long expiry : expiries) {
+            if (expiry > nowMillis) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * @return the live lock on the seat, or null if it is not locked
+     */
+    public SeatLockService.SeatLockInfo lockInfo(long seatId, long nowMillis) {
+        int ordinal = ordinal(seatId);
+        int lock = ordinal >= 0 ? lockIndex(ordinal) : -1;
+        if (lock < 0 || expiries[lock] <= nowMillis) {
+            return null;
+        }
+        return new SeatLockService.SeatLockInfo(holders[lock], lockTimes[lock], expiries[lock]);
+    }
+    
+    /**
+     * @return index of the seat's lock in the lock arrays, or -1 if the seat is not locked
+     */
+    private int lockIndex(int ordinal) {
+        int w = ordinal >>> 6;
+        if (w >= locked.length || (locked[w] & (1L << ordinal)) == 0) {
+            return -1;
+        }
+        return lockRank[w] + Long.bitCount(locked[w] & ((1L << ordinal) - 1));
+    }
+    
+    private static int ordinal(long seatId) {
+        return seatId >= 1 && seatId <= ShowSeatState.MAX_SEATS ? (int) (seatId - 1) : -1;
+    }
+    
+    private static boolean isSet(long[] bits, int ordinal) {
+        int w = ordinal >>> 6;
+        return w < bits.length && (bits[w] & (1L << ordinal)) != 0;
+    }
+}
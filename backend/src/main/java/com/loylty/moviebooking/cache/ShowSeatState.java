@@ -0,0 +1,874 @@
+package com.loylty.moviebooking.cache;
+
+import com.loylty.moviebooking.entity.ShowSeat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Seat state of a single show. The instance monitor guards all of it, so each
+ * multi-seat operation checks and applies every seat atomically.
+ *
+ * Seat ordinal (seatId - 1) indexes everything: a seat is booked or locked by
+ * its bit in those bitsets, and a locked seat has an expiry (epoch millis) and
+ * a holder handle in parallel arrays. A lock past its expiry counts as free
+ * until the HoldExpiryWheel sweeps it.
+ */
+final class ShowSeatState {
+    
+    static final int MAX_SEATS = 4096;
+    private static final int DEFAULT_CAPACITY = 128;
+    // Power of two, so a version maps to its ring slot with a mask
+    private static final int CHANGE_HISTORY = 512;
+    
+    private long[] booked;
+    private long[] locked;
+    private long[] expiry;
+    // Deadline of the wheel entry pending for each seat, 0 if none
+    private long[] armed;
+    private int[] holder;
+    // Doubly linked list of each holder's seats, -1 at either end
+    private int[] nextHeld;
+    private int[] prevHeld;
+    private final HolderTable holders = new HolderTable();
+    private final long showId;
+    private final HoldExpiryWheel expiryWheel;
+    private final SeatLockJournal journal;
+    private final HolderIndex holderIndex;
+    private final SeatLockMetrics metrics;
+    // Seats with the lock bit set, and lock requests since the last sample
+    private int heldCount;
+    private long lockAttempts;
+    // Set once the show has started and its state was dropped from the engine
+    private boolean evicted;
+    // Seat ordinal of each recent change, allocated on the first one
+    private int[] changes;
+    private long version;
+    // Versions before this one cannot be answered from the ring
+    private long oldestVersion;
+    // Copy of the current state, null once anything has changed since it was taken
+    private volatile ShowSeatSnapshot snapshot;
+    
+    ShowSeatState(long showId, HoldExpiryWheel expiryWheel, SeatLockJournal journal, HolderIndex holderIndex,
+                  SeatLockMetrics metrics) {
+        this(showId, expiryWheel, journal, holderIndex, metrics, DEFAULT_CAPACITY);
+    }
+    
+    ShowSeatState(long showId, HoldExpiryWheel expiryWheel, SeatLockJournal journal, HolderIndex holderIndex,
+                  SeatLockMetrics metrics, int capacity) {
+        this.showId = showId;
+        this.expiryWheel = expiryWheel;
+        this.journal = journal;
+        this.holderIndex = holderIndex;
+        this.metrics = metrics;
+        int words = wordCount(capacity);
+        booked = new long[words];
+        locked = new long[words];
+        expiry = new long[words << 6];
+        armed = new long[words << 6];
+        holder = new int[words << 6];
+        nextHeld = new int[words << 6];
+        prevHeld = new int[words << 6];
+    }
+    
+    /**
+     * @return the ordinal of the seat, or -1 if the ID cannot be stored
+     */
+    static int ordinal(long seatId) {
+        if (seatId < 1 || seatId > MAX_SEATS) {
+            return -1;
+        }
+        return (int) (seatId - 1);
+    }
+    
+    /**
+     * Lock all given seats for the user, or none of them.
+     * Seats already held by the same user have their expiry extended.
+     * @return true if every seat was free or held by the user
+     */
+    synchronized boolean tryHold(List<Long> seatIds, String userId, long expiresAt, long now) {
+        if (evicted) {
+            return false;
+        }
+        if (seatIds.isEmpty()) {
+            return true;
+        }
+        
+        lockAttempts++;
+        int handle = holders.find(userId);
+        for (Long seatId : seatIds) {
+            int ordinal = ordinal(seatId);
+            if (ordinal < 0) {
+                metrics.lockRejected(SeatLockMetrics.Rejection.INVALID_SEAT);
+                return false;
+            }
+            if (!canHold(ordinal, handle, now)) {
+                metrics.lockRejected(isSet(booked, ordinal)
+                        ? SeatLockMetrics.Rejection.SEAT_BOOKED : SeatLockMetrics.Rejection.SEAT_HELD);
+                return false;
+            }
+        }
+        
+        handle = holders.acquire(userId, now);
+        for (Long seatId : seatIds) {
+            hold(ordinal(seatId), handle, expiresAt, now);
+        }
+        if (journal != null) {
+            journal.append(SeatLockJournal.LOCK, showId, now, expiresAt, userId, seatIds);
+        }
+        metrics.lockGranted();
+        return true;
+    }
+    
+    /**
+     * Find the best block of adjacent free seats on the grid and lock it for
+     * the user, in the same critical section, so the block cannot be taken
+     * between the search and the lock. Seats the user already holds count as taken.
+     * @return the IDs of the locked seats, or an empty list if no row has room
+     */
+    synchronized List<Long> holdBestBlock(SeatGrid grid, ShowSeat.SeatCategory category, int count,
+                                          String userId, long expiresAt, long now) {
+        if (evicted) {
+            return Collections.emptyList();
+        }
+        lockAttempts++;
+        int width = grid.getSeatsPerRow();
+        long first = grid.bestBlock(count, category, row -> occupiedRow((row - 1) * width, width, now));
+        if (first == 0L) {
+            metrics.lockRejected(SeatLockMetrics.Rejection.NO_BLOCK);
+            return Collections.emptyList();
+        }
+        
+        List<Long> seatIds = new ArrayList<>(count);
+        int handle = holders.acquire(userId, now);
+        for (int i = 0; i < count; i++) {
+            seatIds.add(first + i);
+            hold(ordinal(first + i), handle, expiresAt, now);
+        }
+        if (journal != null) {
+            journal.append(SeatLockJournal.LOCK, showId, now, expiresAt, userId, seatIds);
+        }
+        metrics.lockGranted();
+        return seatIds;
+    }
+    
+    /**
+     * Release the user's locks on the given seats
+     * @return true if every seat was locked by the user
+     */
+    synchronized boolean release(List<Long> seatIds, String userId, long now) {
+        int handle = holders.find(userId);
+        boolean allReleased = true;
+        for (Long seatId : seatIds) {
+            int ordinal = ordinal(seatId);
+            if (ordinal >= 0 && isHeldBy(ordinal, handle)) {
+                clearLock(ordinal, SeatLockMetrics.HoldOutcome.RELEASED, now);
+            } else {
+                allReleased = false;
+            }
+        }
+        if (journal != null && handle != HolderTable.NONE) {
+            journal.append(SeatLockJournal.UNLOCK, showId, 0L, 0L, userId, seatIds);
+        }
+        return allReleased;
+    }
+    
+    /**
+     * Extend the user's live locks in this show to the given time, capped at the
+     * holder's first lock time plus the maximum lifetime. Expired locks are not
+     * revived. Walks only the user's own seats; the pending wheel entries pick
+     * up the later deadline when they fire.
+     * @return the expiry of the user's locks after renewal, or 0 if the user holds no live lock
+     */
+    synchronized long renew(String userId, long now, long extendTo, long maxLifetime) {
+        int handle = holders.find(userId);
+        if (handle == HolderTable.NONE) {
+            return 0L;
+        }
+        
+        long target = Math.min(extendTo, holders.since(handle) + maxLifetime);
+        long expiresAt = 0L;
+        for (int ordinal = holders.firstSeat(handle); ordinal >= 0; ordinal = nextHeld[ordinal]) {
+            if (expiry[ordinal] > now) {
+                if (target > expiry[ordinal]) {
+                    expiry[ordinal] = target;
+                    snapshot = null;
+                }
+                expiresAt = Math.max(expiresAt, expiry[ordinal]);
+            }
+        }
+        if (expiresAt > 0L && journal != null) {
+            journal.append(SeatLockJournal.RENEW, showId, now, target, userId, Collections.emptyList());
+        }
+        return expiresAt;
+    }
+    
+    /**
+     * Release every seat the user holds in this show, walking only the user's own seats
+     * @return the IDs of the released seats
+     */
+    synchronized List<Long> releaseAll(String userId, long now) {
+        int handle = holders.find(userId);
+        if (handle == HolderTable.NONE) {
+            return Collections.emptyList();
+        }
+        
+        List<Long> released = new ArrayList<>(holders.seatCount(handle));
+        // Clearing the head seat moves the next one up; the list ends empty when the handle is recycled
+        int ordinal;
+        while ((ordinal = holders.firstSeat(handle)) >= 0) {
+            released.add(ordinal + 1L);
+            clearLock(ordinal, SeatLockMetrics.HoldOutcome.RELEASED, now);
+        }
+        if (journal != null) {
+            journal.append(SeatLockJournal.UNLOCK, showId, 0L, 0L, userId, released);
+        }
+        return released;
+    }
+    
+    /**
+     * Add the IDs of the seats the user holds with a live lock to the given set
+     */
+    synchronized void collectHeld(String userId, long now, Set<Long> out) {
+        int handle = holders.find(userId);
+        if (handle == HolderTable.NONE) {
+            return;
+        }
+        for (int ordinal = holders.firstSeat(handle); ordinal >= 0; ordinal = nextHeld[ordinal]) {
+            if (expiry[ordinal] > now) {
+                out.add(ordinal + 1L);
+            }
+        }
+    }
+    
+    /**
+     * Book all given seats if every one of them carries a live lock of the user.
+     * Nothing changes if any seat fails the check.
+     */
+    synchronized boolean book(List<Long> seatIds, String userId, long now) {
+        int handle = holders.find(userId);
+        for (Long seatId : seatIds) {
+            int ordinal = ordinal(seatId);
+            if (ordinal < 0 || !isHeldBy(ordinal, handle) || expiry[ordinal] <= now) {
+                return false;
+            }
+        }
+        
+        for (Long seatId : seatIds) {
+            setBooked(ordinal(seatId), SeatLockMetrics.HoldOutcome.CONFIRMED, now);
+        }
+        if (journal != null) {
+            journal.append(SeatLockJournal.CONFIRM, showId, now, 0L, userId, seatIds);
+        }
+        return true;
+    }
+    
+    /**
+     * Turn seats booked by the user back into a hold of the user, after the
+     * booking could not be saved. Seats that are not booked are left alone.
+     */
+    synchronized void unbook(List<Long> seatIds, String userId, long expiresAt, long now) {
+        if (evicted) {
+            return;
+        }
+        int handle = holders.acquire(userId, now);
+        for (Long seatId : seatIds) {
+            int ordinal = ordinal(seatId);
+            if (ordinal >= 0 && ordinal < capacity() && isSet(booked, ordinal)) {
+                booked[ordinal >>> 6] &= ~(1L << ordinal);
+                hold(ordinal, handle, expiresAt, now);
+            }
+        }
+        holders.releaseIfUnused(handle);
+        if (journal != null) {
+            journal.append(SeatLockJournal.REVERT, showId, now, expiresAt, userId, seatIds);
+        }
+    }
+    
+    /**
+     * Mark seats as booked without a lock check. Used to load bookings that
+     * already exist in the database, so nothing is journaled.
+     */
+    synchronized void markBooked(List<Long> seatIds) {
+        for (Long seatId : seatIds) {
+            int ordinal = ordinal(seatId);
+            if (ordinal >= 0) {
+                setBooked(ordinal, null, 0L);
+            }
+        }
+    }
+    
+    /**
+     * Add the IDs of all booked seats to the given set
+     */
+    synchronized void collectBooked(Set<Long> out) {
+        for (int w = 0; w < booked.length; w++) {
+            long word = booked[w];
+            while (word != 0) {
+                out.add(seatId(w, Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+    }
+    
+    /**
+     * Add the IDs of all seats with a live lock to the given set
+     */
+    synchronized void collectLocked(long now, Set<Long> out) {
+        for (int w = 0; w < locked.length; w++) {
+            long word = liveLockedWord(w, now);
+            while (word != 0) {
+                out.add(seatId(w, Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+    }
+    
+    /**
+     * Pack the status of seat IDs 1 .. seatCount two bits per seat. A lock
+     * counts until the expiry wheel sweeps it rather than until its deadline,
+     * so the packed statuses only ever change together with the version.
+     * @param userId requester, whose own locks are packed as HELD_BY_USER; may be null
+     */
+    synchronized SeatLockService.SeatStatusVector statusVector(long epoch, int seatCount, String userId) {
+        int handle = userId != null ? holders.find(userId) : HolderTable.NONE;
+        byte[] statuses = SeatLockService.SeatStatusVector.allocate(seatCount);
+        int words = Math.min(locked.length, wordCount(seatCount));
+        for (int w = 0; w < words; w++) {
+            long word = booked[w] | locked[w];
+            while (word != 0) {
+                int ordinal = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (ordinal >= seatCount) {
+                    break;
+                }
+                int status;
+                if (isSet(booked, ordinal)) {
+                    status = SeatLockService.SeatStatusVector.BOOKED;
+                } else if (handle != HolderTable.NONE && holder[ordinal] == handle) {
+                    status = SeatLockService.SeatStatusVector.HELD_BY_USER;
+                } else {
+                    status = SeatLockService.SeatStatusVector.LOCKED;
+                }
+                SeatLockService.SeatStatusVector.set(statuses, ordinal, status);
+                word &= word - 1;
+            }
+        }
+        return new SeatLockService.SeatStatusVector(epoch, version, seatCount, statuses);
+    }
+    
+    synchronized long version() {
+        return version;
+    }
+    
+    /**
+     * Immutable copy of the show's state, shared until the state next changes
+     */
+    ShowSeatSnapshot snapshot(long epoch) {
+        ShowSeatSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = takeSnapshot(epoch);
+            }
+            return snapshot;
+        }
+    }
+    
+    private ShowSeatSnapshot takeSnapshot(long epoch) {
+        int words = locked.length;
+        while (words > 0 && booked[words - 1] == 0L && locked[words - 1] == 0L) {
+            words--;
+        }
+        String[] names = new String[heldCount];
+        long[] lockTimes = new long[heldCount];
+        long[] expiries = new long[heldCount];
+        int lock = 0;
+        for (int w = 0; w < words; w++) {
+            long word = locked[w];
+            while (word != 0) {
+                int ordinal = (w << 6) + Long.numberOfTrailingZeros(word);
+                names[lock] = holders.name(holder[ordinal]);
+                lockTimes[lock] = holders.since(holder[ordinal]);
+                expiries[lock] = expiry[ordinal];
+                lock++;
+                word &= word - 1;
+            }
+        }
+        return new ShowSeatSnapshot(epoch, version, Arrays.copyOf(booked, words), Arrays.copyOf(locked, words),
+                names, lockTimes, expiries);
+    }
+    
+    /**
+     * Add the given seat IDs that are neither booked nor locked to the given set
+     */
+    synchronized void collectAvailable(List<Long> seatIds, long now, Set<Long> out) {
+        for (Long seatId : seatIds) {
+            int ordinal = ordinal(seatId);
+            if (ordinal < 0) {
+                continue;
+            }
+            if (ordinal >= capacity() || (!isSet(booked, ordinal) && !isLive(ordinal, now))) {
+                out.add(seatId);
+            }
+        }
+    }
+    
+    /**
+     * @return true if the seat is neither booked nor held by a live lock
+     */
+    synchronized boolean isAvailable(int ordinal, long now) {
+        return ordinal >= capacity() || (!isSet(booked, ordinal) && !isLive(ordinal, now));
+    }
+    
+    /**
+     * @return the holder of a live lock on the seat, or null if it is not locked
+     */
+    synchronized String lockHolder(int ordinal, long now) {
+        if (ordinal >= capacity() || !isLive(ordinal, now)) {
+            return null;
+        }
+        return holders.name(holder[ordinal]);
+    }
+    
+    /**
+     * @return the time the holder of the seat took its first current lock
+     */
+    synchronized long lockedSince(int ordinal) {
+        return holders.since(holder[ordinal]);
+    }
+    
+    synchronized long lockExpiry(int ordinal) {
+        return expiry[ordinal];
+    }
+    
+    /**
+     * @return the lock requests made on the show since the previous call
+     */
+    synchronized long takeLockAttempts() {
+        long attempts = lockAttempts;
+        lockAttempts = 0L;
+        return attempts;
+    }
+    
+    /**
+     * @return the number of locked seats, including expired locks not yet swept
+     */
+    synchronized int heldSeats() {
+        return heldCount;
+    }
+    
+    /**
+     * Current state of the seats that changed after the given version, or of
+     * every seat that is not available when the ring no longer reaches back
+     * that far. A seat that changed several times is listed once.
+     * @param userId requester, whose own live locks are flagged; may be null
+     */
+    synchronized SeatLockService.SeatChanges changesSince(long epoch, long sinceVersion, String userId, long now) {
+        int handle = userId != null ? holders.find(userId) : HolderTable.NONE;
+        List<SeatLockService.SeatChange> seats = new ArrayList<>();
+        boolean snapshot = sinceVersion < oldestVersion || sinceVersion > version
+                || version - sinceVersion > CHANGE_HISTORY;
+        if (snapshot) {
+            for (int w = 0; w < locked.length; w++) {
+                long word = booked[w] | liveLockedWord(w, now);
+                while (word != 0) {
+                    seats.add(seatChange((w << 6) + Long.numberOfTrailingZeros(word), handle, now));
+                    word &= word - 1;
+                }
+            }
+        } else {
+            long[] seen = new long[locked.length];
+            for (long v = sinceVersion + 1; v <= version; v++) {
+                int ordinal = changes[(int) v & (CHANGE_HISTORY - 1)];
+                if (!isSet(seen, ordinal)) {
+                    seen[ordinal >>> 6] |= 1L << ordinal;
+                    seats.add(seatChange(ordinal, handle, now));
+                }
+            }
+        }
+        return new SeatLockService.SeatChanges(epoch, version, snapshot, seats);
+    }
+    
+    /**
+     * Expire the lock on the seat if its deadline has passed.
+     * Called by the expiry wheel when an entry for the seat fires.
+     * @return the later deadline the seat must be checked again at, or 0 if nothing is pending
+     */
+    synchronized long expireIfDue(int ordinal, long now) {
+        if (armed[ordinal] == 0L || armed[ordinal] > now) {
+            // Superseded by an earlier entry that has already fired or is still pending
+            return 0L;
+        }
+        armed[ordinal] = 0L;
+        if (!isSet(locked, ordinal)) {
+            return 0L;
+        }
+        if (expiry[ordinal] > now) {
+            armed[ordinal] = expiry[ordinal];
+            return expiry[ordinal];
+        }
+        clearLock(ordinal, SeatLockMetrics.HoldOutcome.EXPIRED, now);
+        if (journal != null) {
+            journal.appendExpire(showId, now, ordinal + 1L);
+        }
+        return 0L;
+    }
+    
+    /**
+     * Free every lock and take no new ones, as the show has started and its
+     * state is dropped. Wheel entries still pending find nothing armed.
+     * @param now current time on the live path, 0 when recovering, where nothing is journaled
+     */
+    synchronized void evict(long now) {
+        for (int w = 0; w < locked.length; w++) {
+            long word = locked[w];
+            while (word != 0L) {
+                clearLock((w << 6) + Long.numberOfTrailingZeros(word), null, now);
+                word &= word - 1;
+            }
+        }
+        Arrays.fill(armed, 0L);
+        evicted = true;
+        if (journal != null && now > 0L) {
+            journal.append(SeatLockJournal.EVICT, showId, now, 0L, "", Collections.emptyList());
+        }
+    }
+    
+    /**
+     * Apply a journal record during recovery. Records are applied blindly,
+     * without the checks of the live path, so replaying a record whose effect
+     * is already part of the snapshot leaves the state unchanged.
+     */
+    synchronized void replay(byte type, long time, long expiresAt, String userId, long[] seatIds) {
+        switch (type) {
+            case SeatLockJournal.LOCK -> {
+                int handle = holders.acquire(userId, time);
+                for (long seatId : seatIds) {
+                    int ordinal = ordinal(seatId);
+                    if (ordinal >= 0 && (ordinal >= capacity() || !isSet(booked, ordinal))) {
+                        hold(ordinal, handle, expiresAt, 0L);
+                    }
+                }
+                holders.releaseIfUnused(handle);
+            }
+            case SeatLockJournal.UNLOCK -> {
+                int handle = holders.find(userId);
+                for (long seatId : seatIds) {
+                    int ordinal = ordinal(seatId);
+                    if (ordinal >= 0 && isHeldBy(ordinal, handle)) {
+                        clearLock(ordinal, null, 0L);
+                    }
+                }
+            }
+            case SeatLockJournal.RENEW -> {
+                int handle = holders.find(userId);
+                if (handle != HolderTable.NONE) {
+                    for (int ordinal = holders.firstSeat(handle); ordinal >= 0; ordinal = nextHeld[ordinal]) {
+                        if (expiry[ordinal] > time && expiresAt > expiry[ordinal]) {
+                            expiry[ordinal] = expiresAt;
+                            snapshot = null;
+                        }
+                    }
+                }
+            }
+            case SeatLockJournal.CONFIRM -> {
+                for (long seatId : seatIds) {
+                    int ordinal = ordinal(seatId);
+                    if (ordinal >= 0) {
+                        setBooked(ordinal, null, 0L);
+                    }
+                }
+            }
+            case SeatLockJournal.REVERT -> {
+                int handle = holders.acquire(userId, time);
+                for (long seatId : seatIds) {
+                    int ordinal = ordinal(seatId);
+                    if (ordinal >= 0 && ordinal < capacity() && isSet(booked, ordinal)) {
+                        booked[ordinal >>> 6] &= ~(1L << ordinal);
+                        hold(ordinal, handle, expiresAt, 0L);
+                    }
+                }
+                holders.releaseIfUnused(handle);
+            }
+            case SeatLockJournal.EXPIRE -> {
+                int ordinal = ordinal(seatIds[0]);
+                if (ordinal >= 0 && ordinal < capacity() && isSet(locked, ordinal) && expiry[ordinal] <= time) {
+                    clearLock(ordinal, null, 0L);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown journal record type: " + type);
+        }
+    }
+    
+    /**
+     * Write the booked seats and all locks of the show
+     */
+    synchronized void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(booked.length);
+        for (long word : booked) {
+            out.writeLong(word);
+        }
+        
+        int lockCount = 0;
+        for (long word : locked) {
+            lockCount += Long.bitCount(word);
+        }
+        out.writeInt(lockCount);
+        for (int w = 0; w < locked.length; w++) {
+            long word = locked[w];
+            while (word != 0) {
+                int ordinal = (w << 6) + Long.numberOfTrailingZeros(word);
+                out.writeShort(ordinal);
+                out.writeLong(expiry[ordinal]);
+                out.writeLong(holders.since(holder[ordinal]));
+                out.writeUTF(holders.name(holder[ordinal]));
+                word &= word - 1;
+            }
+        }
+    }
+    
+    /**
+     * Read a show written by writeSnapshot, registering its locks with the expiry wheel
+     */
+    static ShowSeatState readSnapshot(long showId, DataInputStream in, HoldExpiryWheel expiryWheel,
+                                      SeatLockJournal journal, HolderIndex holderIndex,
+                                      SeatLockMetrics metrics) throws IOException {
+        int words = in.readInt();
+        ShowSeatState state = new ShowSeatState(showId, expiryWheel, journal, holderIndex, metrics, words << 6);
+        for (int w = 0; w < words; w++) {
+            state.booked[w] = in.readLong();
+        }
+        
+        int lockCount = in.readInt();
+        for (int i = 0; i < lockCount; i++) {
+            int ordinal = in.readUnsignedShort();
+            long expiresAt = in.readLong();
+            long since = in.readLong();
+            state.hold(ordinal, state.holders.acquire(in.readUTF(), since), expiresAt, 0L);
+        }
+        return state;
+    }
+    
+    private SeatLockService.SeatChange seatChange(int ordinal, int handle, long now) {
+        if (isSet(booked, ordinal)) {
+            return new SeatLockService.SeatChange(ordinal + 1L, ShowSeat.SeatStatus.BOOKED, false);
+        }
+        if (isLive(ordinal, now)) {
+            return new SeatLockService.SeatChange(ordinal + 1L, ShowSeat.SeatStatus.LOCKED,
+                    handle != HolderTable.NONE && holder[ordinal] == handle);
+        }
+        return new SeatLockService.SeatChange(ordinal + 1L, ShowSeat.SeatStatus.AVAILABLE, false);
+    }
+    
+    /**
+     * Count a seat change against the show's version
+     * @param now current time on the live path, 0 when recovering, where the ring is skipped
+     */
+    private void changed(int ordinal, long now) {
+        version++;
+        snapshot = null;
+        if (now == 0L) {
+            oldestVersion = version;
+            return;
+        }
+        if (changes == null) {
+            changes = new int[CHANGE_HISTORY];
+        }
+        changes[(int) version & (CHANGE_HISTORY - 1)] = ordinal;
+    }
+    
+    private boolean canHold(int ordinal, int handle, long now) {
+        if (ordinal >= capacity()) {
+            return true;
+        }
+        if (isSet(booked, ordinal)) {
+            return false;
+        }
+        return !isLive(ordinal, now) || holder[ordinal] == handle;
+    }
+    
+    /**
+     * @param now current time on the live path, 0 when recovering, where nothing is measured
+     */
+    private void hold(int ordinal, int handle, long expiresAt, long now) {
+        ensureCapacity(ordinal + 1);
+        if (isSet(locked, ordinal)) {
+            if (holder[ordinal] == handle) {
+                // A lock that had run out but was not yet swept comes back into view
+                boolean revived = expiry[ordinal] <= now;
+                expiry[ordinal] = expiresAt;
+                arm(ordinal, expiresAt);
+                if (revived) {
+                    changed(ordinal, now);
+                } else {
+                    snapshot = null;
+                }
+                return;
+            }
+            // Only an expired lock is ever taken over
+            clearLock(ordinal, now > 0L ? SeatLockMetrics.HoldOutcome.EXPIRED : null, now);
+        }
+        locked[ordinal >>> 6] |= 1L << ordinal;
+        expiry[ordinal] = expiresAt;
+        holder[ordinal] = handle;
+        link(ordinal, handle);
+        if (holders.addSeat(handle)) {
+            holderIndex.add(holders.name(handle), showId);
+        }
+        heldCount++;
+        metrics.seatHeld();
+        arm(ordinal, expiresAt);
+        changed(ordinal, now);
+    }
+    
+    /**
+     * Make sure a wheel entry fires no later than the deadline. A later deadline
+     * is picked up when the pending entry fires and finds the seat still held.
+     */
+    private void arm(int ordinal, long deadline) {
+        if (armed[ordinal] == 0L || deadline < armed[ordinal]) {
+            armed[ordinal] = deadline;
+            expiryWheel.schedule(this, ordinal, deadline);
+        }
+    }
+    
+    private long liveLockedWord(int w, long now) {
+        long word = locked[w];
+        long live = word;
+        while (word != 0) {
+            int bit = Long.numberOfTrailingZeros(word);
+            if (expiry[(w << 6) + bit] <= now) {
+                live &= ~(1L << bit);
+            }
+            word &= word - 1;
+        }
+        return live;
+    }
+    
+    /**
+     * @return bitmask of the booked or live-locked seats among the width ordinals from base
+     */
+    private long occupiedRow(int base, int width, long now) {
+        int w = base >>> 6;
+        int bit = base & 63;
+        long occupied = occupiedWord(w, now) >>> bit;
+        if (bit + width > 64) {
+            occupied |= occupiedWord(w + 1, now) << (64 - bit);
+        }
+        return width == 64 ? occupied : occupied & ((1L << width) - 1);
+    }
+    
+    private long occupiedWord(int w, long now) {
+        return w < locked.length ? booked[w] | liveLockedWord(w, now) : 0L;
+    }
+    
+    private boolean isLive(int ordinal, long now) {
+        return isSet(locked, ordinal) && expiry[ordinal] > now;
+    }
+    
+    private boolean isHeldBy(int ordinal, int handle) {
+        return handle != HolderTable.NONE
+                && ordinal < capacity()
+                && isSet(locked, ordinal)
+                && holder[ordinal] == handle;
+    }
+    
+    private void setBooked(int ordinal, SeatLockMetrics.HoldOutcome outcome, long now) {
+        ensureCapacity(ordinal + 1);
+        if (isSet(locked, ordinal)) {
+            clearLock(ordinal, outcome, now);
+        }
+        booked[ordinal >>> 6] |= 1L << ordinal;
+        changed(ordinal, now);
+    }
+    
+    /**
+     * Free a locked seat. When it was the holder's last seat in the show, the
+     * hold as a whole has ended and its duration is recorded under the outcome.
+     * @param outcome how the hold ended, or null when nothing is measured
+     */
+    private void clearLock(int ordinal, SeatLockMetrics.HoldOutcome outcome, long now) {
+        int handle = holder[ordinal];
+        String name = holders.name(handle);
+        long since = holders.since(handle);
+        locked[ordinal >>> 6] &= ~(1L << ordinal);
+        unlink(ordinal, handle);
+        if (holders.removeSeat(handle)) {
+            holderIndex.remove(name, showId);
+            if (outcome != null) {
+                // An expired hold ended at its deadline, however late the sweep got to it
+                long end = outcome == SeatLockMetrics.HoldOutcome.EXPIRED ? Math.min(now, expiry[ordinal]) : now;
+                metrics.holdEnded(outcome, end - since);
+            }
+        }
+        holder[ordinal] = HolderTable.NONE;
+        expiry[ordinal] = 0L;
+        heldCount--;
+        metrics.seatFreed();
+        if (outcome == SeatLockMetrics.HoldOutcome.EXPIRED) {
+            metrics.seatExpired();
+        }
+        changed(ordinal, now);
+    }
+    
+    private void link(int ordinal, int handle) {
+        int first = holders.firstSeat(handle);
+        nextHeld[ordinal] = first;
+        prevHeld[ordinal] = -1;
+        if (first >= 0) {
+            prevHeld[first] = ordinal;
+        }
+        holders.setFirstSeat(handle, ordinal);
+    }
+    
+    private void unlink(int ordinal, int handle) {
+        int next = nextHeld[ordinal];
+        int prev = prevHeld[ordinal];
+        if (prev >= 0) {
+            nextHeld[prev] = next;
+        } else {
+            holders.setFirstSeat(handle, next);
+        }
+        if (next >= 0) {
+            prevHeld[next] = prev;
+        }
+    }
+    
+    private void ensureCapacity(int seats) {
+        if (seats <= capacity()) {
+            return;
+        }
+        int words = Math.max(wordCount(seats), locked.length * 2);
+        booked = Arrays.copyOf(booked, words);
+        locked = Arrays.copyOf(locked, words);
+        expiry = Arrays.copyOf(expiry, words << 6);
+        armed = Arrays.copyOf(armed, words << 6);
+        holder = Arrays.copyOf(holder, words << 6);
+        nextHeld = Arrays.copyOf(nextHeld, words << 6);
+        prevHeld = Arrays.copyOf(prevHeld, words << 6);
+    }
+    
+    private int capacity() {
+        return locked.length << 6;
+    }
+    
+    private static boolean isSet(long[] bits, int ordinal) {
+        return (bits[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+    
+    private static long seatId(int word, int bit) {
+        return (word << 6) + bit + 1L;
+    }
+    
+    private static int wordCount(int seats) {
+        return (seats + 63) >>> 6;
+    }
+}
@@ -0,0 +1,29 @@
+package com.loylty.moviebooking.config;
+
+import com.loylty.moviebooking.cache.CachedSeatLockClock;
+import com.loylty.moviebooking.cache.SeatLockClock;
+import com.loylty.moviebooking.cache.SeatLockMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SeatLockConfig {
+
+    /**
+     * Coarse cached clock for the lock engine, so hot-path time reads are a single volatile load
+     */
+    @Bean(destroyMethod = "close")
+    public SeatLockClock seatLockClock(@Value("${seat-lock.clock.resolution-ms:5}") long resolutionMillis) {
+        return new CachedSeatLockClock(resolutionMillis);
+    }
+
+    /**
+     * Seat lock and booking meters, shared by whichever lock store is active
+     */
+    @Bean
+    public SeatLockMetrics seatLockMetrics(MeterRegistry meterRegistry) {
+        return new SeatLockMetrics(meterRegistry);
+    }
+}
@@ -0,0 +1,60 @@
+package com.loylty.moviebooking.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+/**
+ * STOMP over WebSocket at /ws, with the in-memory broker serving /topic.
+ * Seat map changes are pushed to /topic/shows/{showId}/seats by
+ * SeatChangePublisher.
+ *
+ * Each connection sends through its own buffer: a subscriber that reads
+ * slower than messages arrive fills only its own buffer, and once the buffer
+ * or the time a send may take exceeds its limit the connection is closed.
+ * The client then reconnects and starts again from a snapshot, while the
+ * outbound threads keep serving everyone else.
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    @Value("${seat-push.send-buffer-size-kb:256}")
+    private int sendBufferSizeKb;
+
+    @Value("${seat-push.send-time-limit-ms:10000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${seat-push.outbound-threads:8}")
+    private int outboundThreads;
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint("/ws")
+                .setAllowedOriginPatterns("https://loylty-booking-ui.vercel.app", "https://*.vercel.app", "http://localhost:5173");
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        registry.enableSimpleBroker("/topic");
+        registry.setApplicationDestinationPrefixes("/app");
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(sendBufferSizeKb * 1024)
+                .setSendTimeLimit(sendTimeLimitMillis)
+                // Clients only subscribe, so inbound frames stay small
+                .setMessageSizeLimit(16 * 1024);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(outboundThreads).maxPoolSize(outboundThreads);
+    }
+}
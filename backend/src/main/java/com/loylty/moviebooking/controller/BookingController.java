@@ -4,8 +4,15 @@ import com.loylty.moviebooking.dto.SeatLockRequest;
 import com.loylty.moviebooking.dto.SeatLockResponse;
 import com.loylty.moviebooking.dto.BookingRequest;
 import com.loylty.moviebooking.dto.BookingResponse;
+import com.loylty.moviebooking.dto.HoldRenewalRequest;
+import com.loylty.moviebooking.dto.BestAvailableRequest;
+import com.loylty.moviebooking.dto.BookingStatusResponse;
 import com.loylty.moviebooking.service.BookingService;
+import com.loylty.moviebooking.service.IdempotencyService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -20,10 +27,27 @@ import java.util.Map;
 public class BookingController {
     
     private final BookingService bookingService;
+    private final IdempotencyService idempotencyService;
+    
+    // Lock, confirm and create take an optional Idempotency-Key header; a retry with the same key
+    // by the same caller gets the first response
     
     @PostMapping("/lock-seats")
-    public ResponseEntity<SeatLockResponse> lockSeats(@Valid @RequestBody SeatLockRequest request) {
-        return ResponseEntity.ok(bookingService.lockSeats(request));
+    public ResponseEntity<SeatLockResponse> lockSeats(
+            @Valid @RequestBody SeatLockRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest servletRequest) {
+        return idempotencyService.execute("lock-seats", caller(request.getUserId(), servletRequest), idempotencyKey,
+                request, () -> ResponseEntity.ok(bookingService.lockSeats(request)));
+    }
+    
+    @PostMapping("/lock-best-available")
+    public ResponseEntity<SeatLockResponse> lockBestAvailable(
+            @Valid @RequestBody BestAvailableRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest servletRequest) {
+        return idempotencyService.execute("lock-best-available", caller(request.getUserId(), servletRequest),
+                idempotencyKey, request, () -> ResponseEntity.ok(bookingService.lockBestAvailable(request)));
     }
     
     @PostMapping("/unlock-seats")
@@ -31,18 +55,121 @@ public class BookingController {
         return ResponseEntity.ok(bookingService.unlockSeats(request));
     }
     
-    @PostMapping("/confirm")
-    public ResponseEntity<Map<String, Object>> confirmBooking(@Valid @RequestBody BookingRequest request) {
-        boolean confirmed = bookingService.confirmBooking(request.getShowId(), request.getSeatIds(), request.getUserId());
+    @PostMapping("/renew-hold")
+    public ResponseEntity<SeatLockResponse> renewHold(@Valid @RequestBody HoldRenewalRequest request) {
+        return ResponseEntity.ok(bookingService.renewHold(request));
+    }
+    
+    @GetMapping("/holds/{userId}")
+    public ResponseEntity<Map<String, Object>> getHeldSeats(@PathVariable String userId) {
+        return ResponseEntity.ok(Map.of(
+                "userId", userId,
+                "heldSeats", bookingService.getHeldSeats(userId)
+        ));
+    }
+    
+    @PostMapping("/holds/{userId}/release")
+    public ResponseEntity<Map<String, Object>> releaseAllSeats(@PathVariable String userId) {
+        int released = bookingService.releaseAllSeats(userId);
         
         return ResponseEntity.ok(Map.of(
-                "success", confirmed,
-                "message", confirmed ? "Booking confirmed successfully" : "Failed to confirm booking"
+                "success", true,
+                "releasedSeats", released,
+                "message", released > 0 ? "Released " + released + " held seats" : "No seats were held"
         ));
     }
     
+    @PostMapping("/confirm")
+    public ResponseEntity<Map<String, Object>> confirmBooking(
+            @Valid @RequestBody BookingRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest servletRequest) {
+        String caller = caller(request.getUserId(), servletRequest);
+        // Only a key that is in use reaches the database, scoped to the caller
+        String key = idempotencyService.storedKey(caller, idempotencyKey);
+        return idempotencyService.execute("confirm", caller, idempotencyKey, request, () -> {
+            if (bookingService.isWriteBehindEnabled()) {
+                return submitBooking(request, key);
+            }
+            
+            boolean confirmed;
+            try {
+                confirmed = bookingService.confirmBooking(request.getShowId(), request.getSeatIds(),
+                        request.getUserId(), key);
+            } catch (RuntimeException e) {
+                // A 5xx is not kept under the idempotency key, so a retry with the same key confirms again
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                        "success", false,
+                        "message", "Failed to confirm booking, please retry"
+                ));
+            }
+            
+            return ResponseEntity.ok(Map.of(
+                    "success", confirmed,
+                    "message", confirmed ? "Booking confirmed successfully" : "Failed to confirm booking"
+            ));
+        });
+    }
+    
+    /**
+     * Write-behind confirm: 202 with a reference to poll once the booking is journaled,
+     * 503 if the write queue is full
+     */
+    private ResponseEntity<Map<String, Object>> submitBooking(BookingRequest request, String idempotencyKey) {
+        BookingStatusResponse submitted = bookingService.submitBooking(request, idempotencyKey);
+        
+        switch (submitted.getStatus()) {
+            case "PERSISTED":
+                return ResponseEntity.ok(Map.of(
+                        "success", true,
+                        "bookingId", submitted.getBookingId(),
+                        "status", submitted.getStatus(),
+                        "message", submitted.getMessage()
+                ));
+            case "PENDING":
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                        "success", true,
+                        "reference", submitted.getReference(),
+                        "status", submitted.getStatus(),
+                        "message", submitted.getMessage()
+                ));
+            case "REJECTED":
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(Map.of(
+                                "success", false,
+                                "message", submitted.getMessage()
+                        ));
+            default:
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", submitted.getMessage()
+                ));
+        }
+    }
+    
+    @GetMapping("/status/{reference}")
+    public ResponseEntity<BookingStatusResponse> getBookingStatus(@PathVariable String reference) {
+        BookingStatusResponse status = bookingService.getBookingStatus(reference);
+        return status != null ? ResponseEntity.ok(status) : ResponseEntity.notFound().build();
+    }
+    
     @PostMapping("/create")
-    public ResponseEntity<BookingResponse> createBooking(@Valid @RequestBody BookingRequest request) {
-        return ResponseEntity.ok(bookingService.createBooking(request));
+    public ResponseEntity<BookingResponse> createBooking(
+            @Valid @RequestBody BookingRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest servletRequest) {
+        String caller = caller(request.getUserId(), servletRequest);
+        String key = idempotencyService.storedKey(caller, idempotencyKey);
+        return idempotencyService.execute("create", caller, idempotencyKey, request,
+                () -> ResponseEntity.ok(bookingService.createBooking(request, key)));
+    }
+    
+    /**
+     * Whom an idempotency key belongs to: the request's user or session ID,
+     * or the client address for a lock request sent without one
+     */
+    private static String caller(String userId, HttpServletRequest servletRequest) {
+        return userId != null ? "user:" + userId : "addr:" + servletRequest.getRemoteAddr();
     }
 }
@@ -1,12 +1,20 @@
 package com.loylty.moviebooking.controller;
 
+import com.loylty.moviebooking.dto.SeatChangesResponse;
 import com.loylty.moviebooking.dto.SeatDto;
+import com.loylty.moviebooking.dto.SeatMapTemplateDto;
+import com.loylty.moviebooking.cache.SeatLockService;
 import com.loylty.moviebooking.service.SeatService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/seats")
@@ -16,8 +24,80 @@ public class SeatController {
     
     private final SeatService seatService;
     
+    /**
+     * Lock holder and expiry are only filled in on the requester's own locks
+     */
     @GetMapping("/show/{showId}/layout")
-    public ResponseEntity<List<SeatDto>> getSeatLayout(@PathVariable("showId") Long showId) {
-        return ResponseEntity.ok(seatService.getSeatLayout(showId));
+    public ResponseEntity<List<SeatDto>> getSeatLayout(@PathVariable("showId") Long showId,
+                                                       @RequestParam(value = "userId", required = false) String userId) {
+        return ResponseEntity.ok(seatService.getSeatLayout(showId, userId));
+    }
+    
+    /**
+     * Static part of the seat map, to be kept by the client and revalidated with If-None-Match
+     */
+    @GetMapping("/show/{showId}/template")
+    public ResponseEntity<SeatMapTemplateDto> getSeatMapTemplate(@PathVariable("showId") Long showId,
+                                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String tag = seatService.getLayoutTemplate(showId).getTag();
+        CacheControl cacheControl = CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic();
+        if (matches(ifNoneMatch, tag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok().eTag(tag).cacheControl(cacheControl).body(seatService.getSeatMapTemplate(showId));
+    }
+    
+    /**
+     * Status of every seat of the template, two bits per seat (see SeatService.encode).
+     * The ETag follows the version of the show's seat state, so a client
+     * polling with If-None-Match gets 304 Not Modified until a seat changes.
+     */
+    @GetMapping(value = "/show/{showId}/statuses", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getSeatStatuses(@PathVariable("showId") Long showId,
+                                                  @RequestParam(value = "userId", required = false) String userId,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        String tag = ifNoneMatch != null ? seatService.getSeatStatusTag(showId) : null;
+        if (tag != null && matches(ifNoneMatch, tag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).cacheControl(cacheControl).build();
+        }
+        
+        SeatLockService.SeatStatusVector vector = seatService.getSeatStatusVector(showId, userId);
+        tag = SeatService.statusTag(vector);
+        if (matches(ifNoneMatch, tag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok().eTag(tag).cacheControl(cacheControl).body(SeatService.encode(vector));
+    }
+    
+    /**
+     * Seats changed since the given version; without one, or when the client
+     * is too far behind, a snapshot of all seats that are not available
+     */
+    @GetMapping("/show/{showId}/changes")
+    public ResponseEntity<SeatChangesResponse> getSeatChanges(@PathVariable("showId") Long showId,
+                                                              @RequestParam(value = "epoch", defaultValue = "0") long epoch,
+                                                              @RequestParam(value = "since", defaultValue = "-1") long since,
+                                                              @RequestParam(value = "userId", required = false) String userId) {
+        return ResponseEntity.ok(seatService.getSeatChanges(showId, epoch, since, userId));
+    }
+    
+    /**
+     * @return true if the If-None-Match header lists the tag; a weak form of the tag matches too
+     */
+    private static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -3,13 +3,18 @@ package com.loylty.moviebooking.controller;
 import com.loylty.moviebooking.dto.CinemaDto;
 import com.loylty.moviebooking.dto.SeatDto;
 import com.loylty.moviebooking.dto.ShowDto;
+import com.loylty.moviebooking.dto.ShowtimesResponse;
 import com.loylty.moviebooking.service.ShowService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/shows")
@@ -19,6 +24,9 @@ public class ShowController {
     
     private final ShowService showService;
     
+    @Value("${showtimes.cache-max-age-seconds:15}")
+    private long showtimesMaxAgeSeconds;
+    
     @GetMapping
     public ResponseEntity<List<ShowDto>> getAllShows() {
         return ResponseEntity.ok(showService.getAllShows());
@@ -36,11 +44,19 @@ public class ShowController {
         return ResponseEntity.ok(showService.getShowsByMovieAndCity(movieId, cityId));
     }
     
-    @GetMapping("/movie/{movieId}/city/{cityId}/grouped")
-    public ResponseEntity<Map<String, List<ShowDto>>> getShowsByMovieAndCityGroupedByCinema(
+    /**
+     * Showtimes of one day grouped by cinema. Each (movie, city, day) is its
+     * own URL, and responses may be cached for a short while; seat counts in
+     * them are only a guide, the seat map has the live state.
+     */
+    @GetMapping("/movie/{movieId}/city/{cityId}/showtimes")
+    public ResponseEntity<ShowtimesResponse> getShowtimes(
             @PathVariable("movieId") Long movieId,
-            @PathVariable("cityId") Long cityId) {
-        return ResponseEntity.ok(showService.getShowsByMovieAndCityGroupedByCinema(movieId, cityId));
+            @PathVariable("cityId") Long cityId,
+            @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(showtimesMaxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .body(showService.getShowtimes(movieId, cityId, date));
     }
     
     @GetMapping("/{id}")
@@ -2,7 +2,10 @@ package com.loylty.moviebooking.controller;
 
 import com.loylty.moviebooking.entity.Show;
 import com.loylty.moviebooking.entity.ShowSeat;
+import com.loylty.moviebooking.service.SeatService;
+import com.loylty.moviebooking.service.ShowCatalog;
 import com.loylty.moviebooking.service.ShowManagementService;
+import com.loylty.moviebooking.service.ShowPricingService;
 import com.loylty.moviebooking.service.ShowSeatService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -11,6 +14,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Internal API for show management
@@ -23,6 +27,9 @@ public class ShowManagementController {
     
     private final ShowManagementService showManagementService;
     private final ShowSeatService showSeatService;
+    private final ShowPricingService showPricingService;
+    private final SeatService seatService;
+    private final ShowCatalog showCatalog;
     
     /**
      * Create a new show with automatic seating plan generation
@@ -125,4 +132,47 @@ public class ShowManagementController {
             return ResponseEntity.internalServerError().build();
         }
     }
+    
+    /**
+     * Reload a show's seat prices after they were changed outside the application
+     */
+    @PostMapping("/{showId}/pricing/reload")
+    public ResponseEntity<Map<String, Object>> reloadPricing(@PathVariable Long showId) {
+        showPricingService.invalidate(showId);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Prices of show " + showId + " will be reloaded on next use");
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Reload the seat map of a show's screen after its seats were changed in the database.
+     * Prices of the shows on the screen are reloaded with it, since seat categories may have moved.
+     */
+    @PostMapping("/{showId}/layout/reload")
+    public ResponseEntity<Map<String, Object>> reloadLayout(@PathVariable Long showId) {
+        Set<Long> shows = seatService.reloadLayout(showId);
+        shows.forEach(showPricingService::invalidate);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Seat map of show " + showId + " will be reloaded on next use");
+        response.put("showsAffected", shows.size());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Reload the show catalog after movies, cinemas or shows were changed outside the application
+     */
+    @PostMapping("/catalog/reload")
+    public ResponseEntity<Map<String, Object>> reloadCatalog() {
+        int shows = showCatalog.reload();
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Show catalog reloaded");
+        response.put("showsLoaded", shows);
+        return ResponseEntity.ok(response);
+    }
 }
@@ -0,0 +1,27 @@
+package com.loylty.moviebooking.controller;
+
+import com.loylty.moviebooking.dto.QueueStatusResponse;
+import com.loylty.moviebooking.service.WaitingRoomService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/waiting-room")
+@RequiredArgsConstructor
+@CrossOrigin(origins = {"https://loylty-booking-ui.vercel.app", "https://*.vercel.app", "http://localhost:5173"})
+public class WaitingRoomController {
+    
+    private final WaitingRoomService waitingRoomService;
+    
+    @PostMapping("/show/{showId}/join")
+    public ResponseEntity<QueueStatusResponse> join(@PathVariable("showId") Long showId) {
+        return ResponseEntity.ok(waitingRoomService.join(showId));
+    }
+    
+    @GetMapping("/show/{showId}/status")
+    public ResponseEntity<QueueStatusResponse> getStatus(@PathVariable("showId") Long showId,
+                                                         @RequestParam("token") String token) {
+        return ResponseEntity.ok(waitingRoomService.getStatus(showId, token));
+    }
+}
@@ -0,0 +1,29 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BestAvailableRequest {
+    
+    @NotNull(message = "Show ID is required")
+    private Long showId;
+    
+    @NotNull(message = "Seat count is required")
+    @Min(value = 1, message = "At least one seat is required")
+    @Max(value = 10, message = "At most 10 seats can be booked together")
+    private Integer seatCount;
+    
+    private String category; // REGULAR or PREMIUM, any row if not given
+    
+    private String userId; // Can be session ID or user ID
+    
+    private String queueToken; // Waiting room token, required when the waiting room is enabled
+}
@@ -0,0 +1,15 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingStatusResponse {
+    private String reference; // Returned by /bookings/confirm when bookings are written behind
+    private String status; // PENDING, PERSISTED or FAILED; REJECTED if the booking was never accepted
+    private Long bookingId; // Set once persisted
+    private String message;
+}
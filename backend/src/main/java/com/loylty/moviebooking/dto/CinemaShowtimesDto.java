@@ -0,0 +1,15 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CinemaShowtimesDto {
+    private CinemaDto cinema;
+    private List<ShowtimeDto> showtimes; // Sorted by show time
+}
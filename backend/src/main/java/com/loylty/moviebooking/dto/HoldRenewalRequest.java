@@ -0,0 +1,20 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HoldRenewalRequest {
+    
+    @NotNull(message = "Show ID is required")
+    private Long showId;
+    
+    @NotBlank(message = "User ID is required")
+    private String userId; // The user ID returned when the seats were locked
+}
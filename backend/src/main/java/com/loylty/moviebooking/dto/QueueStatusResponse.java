@@ -0,0 +1,16 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueueStatusResponse {
+    private Long showId;
+    private String token; // Pass as queueToken when locking seats
+    private boolean admitted;
+    private long position; // Users ahead in the queue, 0 once admitted
+    private long estimatedWaitSeconds;
+}
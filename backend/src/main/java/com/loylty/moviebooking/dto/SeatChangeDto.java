@@ -0,0 +1,14 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeatChangeDto {
+    private Long id;
+    private String status; // AVAILABLE, LOCKED, BOOKED
+    private Boolean heldByUser; // true if locked by the userId the changes were requested for
+}
@@ -0,0 +1,19 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeatChangesResponse {
+    private Long showId;
+    private Long epoch; // Send back with the version on the next request
+    private Long since; // Version the changes start after, null for a snapshot
+    private Long version;
+    private Boolean snapshot; // true: seats lists every seat that is not available, all others are AVAILABLE
+    private List<SeatChangeDto> seats; // Seats changed since the requested version, with their current state
+}
@@ -15,4 +15,5 @@ public class SeatDto {
     private String status; // AVAILABLE, LOCKED, BOOKED
     private String lockUserId; // null if not locked
     private java.time.LocalDateTime lockExpiryTime; // null if not locked
+    private Integer positionOffset; // Shift of the seat in half-seat widths, for staggered rows
 }
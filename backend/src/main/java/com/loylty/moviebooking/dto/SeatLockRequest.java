@@ -20,4 +20,6 @@ public class SeatLockRequest {
     private List<Long> seatIds;
     
     private String userId; // Can be session ID or user ID
+    
+    private String queueToken; // Waiting room token, required when the waiting room is enabled
 }
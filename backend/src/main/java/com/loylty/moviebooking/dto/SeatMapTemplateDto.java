@@ -0,0 +1,19 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeatMapTemplateDto {
+    private Integer rows;
+    private Integer seatsPerRow;
+    private List<String> categories; // Category names, indexed by the digits of layout
+    private String layout; // One character per seat ID from 1: '.' for no seat, else the index of its category
+    private Map<Long, Integer> offsets; // Shift in half-seat widths of the seats of staggered rows, by seat ID
+}
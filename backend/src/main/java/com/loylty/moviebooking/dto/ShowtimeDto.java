@@ -0,0 +1,22 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShowtimeDto {
+    private Long showId;
+    private LocalDateTime showTime;
+    private LocalDateTime endTime;
+    private String screenName;
+    private BigDecimal basePrice;
+    private BigDecimal premiumPrice;
+    private Integer availableSeats; // Seats neither booked nor held, at the time of the request
+    private Integer totalSeats;
+}
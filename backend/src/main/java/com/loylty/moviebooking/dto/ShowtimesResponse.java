@@ -0,0 +1,19 @@
+package com.loylty.moviebooking.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShowtimesResponse {
+    private Long movieId;
+    private Long cityId;
+    private LocalDate date; // Day of the showtimes, null if the movie has no upcoming show in the city
+    private List<LocalDate> dates; // Every day with an upcoming show, for picking another day
+    private List<CinemaShowtimesDto> cinemas; // Sorted by cinema name
+}
@@ -2,8 +2,10 @@ package com.loylty.moviebooking.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -18,11 +20,18 @@ import java.time.LocalDateTime;
 public class BookingSeat {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Same pooled allocation as Booking, so a booking's seats go out as one insert batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "booking_seats_id_seq")
+    @SequenceGenerator(name = "booking_seats_id_seq", sequenceName = "booking_seats_id_seq", allocationSize = 50)
     private Long id;
     
+    // Left out of equals/hashCode/toString: Hibernate hashes the seats when it
+    // dirty-checks a booking's seat list, which would otherwise walk into the
+    // booking's lazy show and movie, and toString would recurse through the booking
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "booking_id", nullable = false)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private Booking booking;
     
     @Column(name = "seat_id", nullable = false)
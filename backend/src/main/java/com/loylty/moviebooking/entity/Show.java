@@ -1,5 +1,7 @@
 package com.loylty.moviebooking.entity;
 
+import com.loylty.moviebooking.service.ShowCatalogUpdater;
+import com.loylty.moviebooking.service.ShowPriceInvalidator;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +13,7 @@ import java.util.List;
 
 @Entity
 @Table(name = "shows")
+@EntityListeners({ShowPriceInvalidator.class, ShowCatalogUpdater.class})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
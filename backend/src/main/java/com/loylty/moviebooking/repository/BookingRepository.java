@@ -26,4 +26,12 @@ public interface BookingRepository extends JpaRepository<Booking, Long> {
     
     @Query("SELECT b FROM Booking b WHERE b.bookingTime >= :since ORDER BY b.bookingTime DESC")
     List<Booking> findRecentBookings(@Param("since") LocalDateTime since);
+    
+    // idempotency_key (V14) is not mapped on Booking; it is written by BookingPersistenceService
+    @Query(value = "SELECT id FROM bookings WHERE idempotency_key = :key", nativeQuery = true)
+    List<Long> findIdsByIdempotencyKey(@Param("key") String idempotencyKey);
+    
+    // write_behind_reference (V17) is not mapped on Booking either
+    @Query(value = "SELECT id FROM bookings WHERE write_behind_reference = :reference", nativeQuery = true)
+    List<Long> findIdsByWriteBehindReference(@Param("reference") String reference);
 }
@@ -1,13 +1,18 @@
 package com.loylty.moviebooking.repository;
 
 import com.loylty.moviebooking.entity.BookingSeat;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
 public interface BookingSeatRepository extends JpaRepository<BookingSeat, Long> {
@@ -22,4 +27,19 @@ public interface BookingSeatRepository extends JpaRepository<BookingSeat, Long>
     
     @Query("SELECT bs.seatId FROM BookingSeat bs WHERE bs.booking.id = :bookingId")
     Set<Long> findSeatIdsByBookingId(@Param("bookingId") Long bookingId);
+    
+    /**
+     * Stream (showId, seatId) pairs of every booked seat in a city for shows starting after the given time.
+     * Rows are fetched through a cursor, so this must be consumed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT s.id, bs.seatId FROM BookingSeat bs " +
+           "JOIN bs.booking b " +
+           "JOIN b.show s " +
+           "JOIN s.screen sc " +
+           "JOIN sc.cinema c " +
+           "WHERE c.city.id = :cityId " +
+           "AND s.showTime > :after " +
+           "ORDER BY s.id")
+    Stream<Object[]> streamBookedSeatsByCity(@Param("cityId") Long cityId, @Param("after") LocalDateTime after);
 }
@@ -24,4 +24,9 @@ public interface SeatRepository extends JpaRepository<Seat, Long> {
     
     @Query("SELECT s FROM Seat s WHERE s.screen.id = :screenId AND s.rowNumber = :rowNumber AND s.seatNumber = :seatNumber")
     Seat findByScreenIdAndPosition(@Param("screenId") Long screenId, @Param("rowNumber") Integer rowNumber, @Param("seatNumber") Integer seatNumber);
+    
+    // position_offset (V15) is not mapped on Seat; read with the rest of the screen's layout by SeatService
+    @Query(value = "SELECT row_number, seat_number, category, position_offset FROM seats WHERE screen_id = :screenId",
+           nativeQuery = true)
+    List<Object[]> findLayoutByScreenId(@Param("screenId") Long screenId);
 }
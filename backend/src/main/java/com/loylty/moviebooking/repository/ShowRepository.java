@@ -7,7 +7,9 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ShowRepository extends JpaRepository<Show, Long> {
@@ -42,12 +44,36 @@ public interface ShowRepository extends JpaRepository<Show, Long> {
            "AND c.city.id = :cityId " +
            "AND s.showTime > :startTime " +
            "ORDER BY s.showTime")
-    List<Show> findShowsByMovieAndCityAfter(@Param("movieId") Long movieId, 
-                                           @Param("cityId") Long cityId, 
+    List<Show> findShowsByMovieAndCityAfter(@Param("movieId") Long movieId,
+                                           @Param("cityId") Long cityId,
                                            @Param("startTime") LocalDateTime startTime);
     
+    @Query("SELECT s FROM Show s " +
+           "JOIN FETCH s.movie m " +
+           "JOIN FETCH s.screen sc " +
+           "JOIN FETCH sc.cinema c " +
+           "JOIN FETCH c.theaterChain " +
+           "JOIN FETCH c.city " +
+           "WHERE s.showTime > :startTime")
+    List<Show> findCatalogShowsAfter(@Param("startTime") LocalDateTime startTime);
+    
+    @Query("SELECT s FROM Show s " +
+           "JOIN FETCH s.movie m " +
+           "JOIN FETCH s.screen sc " +
+           "JOIN FETCH sc.cinema c " +
+           "JOIN FETCH c.theaterChain " +
+           "JOIN FETCH c.city " +
+           "WHERE s.id = :showId")
+    Optional<Show> findCatalogShowById(@Param("showId") Long showId);
+    
+    @Query("SELECT s FROM Show s JOIN FETCH s.screen WHERE s.id = :showId")
+    Optional<Show> findWithScreenById(@Param("showId") Long showId);
+    
     List<Show> findByScreenId(Long screenId);
     
+    @Query("SELECT s.id FROM Show s WHERE s.id IN :showIds AND s.showTime > :now")
+    List<Long> findUpcomingIds(@Param("showIds") Collection<Long> showIds, @Param("now") LocalDateTime now);
+    
     @Query("SELECT s FROM Show s WHERE s.showTime < :thresholdTime")
     List<Show> findPastShows(@Param("thresholdTime") LocalDateTime thresholdTime);
 }
@@ -0,0 +1,156 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.cache.SeatLockService;
+import com.loylty.moviebooking.config.TimezoneConfig;
+import com.loylty.moviebooking.entity.City;
+import com.loylty.moviebooking.repository.BookingSeatRepository;
+import com.loylty.moviebooking.repository.CityRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Loads the seats of every existing booking for upcoming shows into the
+ * seat lock service at startup, so seat layouts can be served from memory.
+ *
+ * Each city is streamed with a single cursor-based query, and cities are
+ * loaded in parallel. This runs as a lifecycle phase before the embedded web
+ * server starts, so the application does not accept traffic until every
+ * booked seat is known.
+ *
+ * Not needed with seat-lock.store=postgres, which reads show_seats directly.
+ */
+@Service
+@ConditionalOnProperty(name = "seat-lock.store", havingValue = "memory", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class BookedSeatHydrationService implements SmartLifecycle {
+    
+    // The embedded web server starts in phase DEFAULT_PHASE - 2048
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+    
+    private final CityRepository cityRepository;
+    private final BookingSeatRepository bookingSeatRepository;
+    private final SeatLockService seatLockService;
+    private final PlatformTransactionManager transactionManager;
+    
+    @Value("${seat-lock.hydration.parallelism:4}")
+    private int parallelism;
+    
+    private volatile boolean running;
+    
+    @Override
+    public void start() {
+        hydrate();
+        running = true;
+    }
+    
+    @Override
+    public void stop() {
+        running = false;
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+    
+    /**
+     * Load the booked seats of all upcoming shows, one parallel task per city
+     */
+    public void hydrate() {
+        long start = System.nanoTime();
+        LocalDateTime now = TimezoneConfig.getCurrentIstTime();
+        List<City> cities = cityRepository.findAll();
+        
+        AtomicInteger citiesDone = new AtomicInteger();
+        AtomicLong totalShows = new AtomicLong();
+        AtomicLong totalSeats = new AtomicLong();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, cities.size())));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (City city : cities) {
+                tasks.add(executor.submit(() -> {
+                    long[] counts = hydrateCity(city.getId(), now);
+                    totalShows.addAndGet(counts[0]);
+                    totalSeats.addAndGet(counts[1]);
+                    log.info("Loaded booked seats for {} ({}/{} cities): {} shows, {} seats",
+                            city.getName(), citiesDone.incrementAndGet(), cities.size(), counts[0], counts[1]);
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading booked seats", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load booked seats: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        log.info("Loaded {} booked seats for {} upcoming shows in {} cities in {} ms",
+                totalSeats.get(), totalShows.get(), cities.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    /**
+     * Stream the booked seats of one city and hand them to the lock service show by show
+     * @return number of shows and seats loaded
+     */
+    private long[] hydrateCity(Long cityId, LocalDateTime now) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        
+        return transaction.execute(status -> {
+            long[] counts = new long[2];
+            List<Long> seatIds = new ArrayList<>();
+            Long currentShowId = null;
+            
+            try (Stream<Object[]> rows = bookingSeatRepository.streamBookedSeatsByCity(cityId, now)) {
+                for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                    Long showId = (Long) row[0];
+                    if (!showId.equals(currentShowId)) {
+                        if (currentShowId != null) {
+                            seatLockService.markSeatsBooked(currentShowId, seatIds);
+                            counts[0]++;
+                            seatIds = new ArrayList<>();
+                        }
+                        currentShowId = showId;
+                    }
+                    seatIds.add((Long) row[1]);
+                    counts[1]++;
+                }
+            }
+            if (currentShowId != null) {
+                seatLockService.markSeatsBooked(currentShowId, seatIds);
+                counts[0]++;
+            }
+            return counts;
+        });
+    }
+}
@@ -0,0 +1,300 @@
+package com.loylty.moviebooking.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Local journal of the bookings accepted by the write-behind pipeline. An
+ * ACCEPTED record is fsynced before the booking is acknowledged, with group
+ * commit under the flush lock; DONE records are not synced.
+ * Record layout: length (int), CRC32C of the payload (int), payload.
+ */
+final class BookingJournal implements Closeable {
+    
+    private static final byte ACCEPTED = 1;
+    private static final byte DONE = 2;
+    private static final String FILE_NAME = "bookings.journal";
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+    // Smaller files are left to grow, as rewriting them saves little
+    private static final long COMPACT_MIN_BYTES = 1 << 20;
+    
+    private final Path file;
+    private final CRC32C crc = new CRC32C();
+    
+    // Appended to under this instance's monitor, swapped out by whoever flushes
+    private ByteBuffer active = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer flushing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long appended;
+    // Framed ACCEPTED record of every booking not yet marked done, in append order
+    private final Map<String, ByteBuffer> outstanding = new LinkedHashMap<>();
+    
+    // Guards the channel; always taken before the instance monitor
+    private final Object flushLock = new Object();
+    private FileChannel channel;
+    private volatile long durable;
+    
+    BookingJournal(Path dir) throws IOException {
+        this.file = Files.createDirectories(dir).resolve(FILE_NAME);
+    }
+    
+    /**
+     * Read back the bookings that were accepted but never marked done, rewrite
+     * the file with only those, in their original order, and open it for appends.
+     * Must be called before anything is appended.
+     */
+    List<BookingWriteBehindService.PendingBooking> recover() throws IOException {
+        Map<String, BookingWriteBehindService.PendingBooking> pending = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            readAll(pending);
+        }
+        
+        List<BookingWriteBehindService.PendingBooking> bookings = new ArrayList<>(pending.values());
+        List<ByteBuffer> records = new ArrayList<>(bookings.size());
+        synchronized (this) {
+            for (BookingWriteBehindService.PendingBooking booking : bookings) {
+                ByteBuffer record = frame(accepted(booking));
+                outstanding.put(booking.reference(), record);
+                records.add(record.duplicate());
+            }
+        }
+        synchronized (flushLock) {
+            rewrite(records);
+        }
+        return bookings;
+    }
+    
+    /**
+     * Buffer an accepted booking
+     * @return the position to pass to sync to make the record durable
+     */
+    synchronized long append(BookingWriteBehindService.PendingBooking booking) {
+        ByteBuffer record = frame(accepted(booking));
+        put(record.duplicate());
+        outstanding.put(booking.reference(), record);
+        return ++appended;
+    }
+    
+    /**
+     * Buffer done records for saved or abandoned bookings, without waiting for disk
+     */
+    synchronized void markDone(Collection<String> references) {
+        for (String reference : references) {
+            put(frame(done(reference)));
+            outstanding.remove(reference);
+        }
+        appended++;
+    }
+    
+    /**
+     * Block until every record up to the position is on disk, flushing the
+     * buffer if no other thread is doing so already
+     */
+    void sync(long position) throws IOException {
+        if (durable >= position) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (durable >= position) {
+                return;
+            }
+            ByteBuffer batch;
+            long upTo;
+            synchronized (this) {
+                batch = active;
+                active = flushing;
+                flushing = batch;
+                upTo = appended;
+            }
+            batch.flip();
+            writeFully(channel, batch);
+            channel.force(false);
+            batch.clear();
+            durable = upTo;
+        }
+    }
+    
+    /**
+     * Rewrite the file with only the bookings still outstanding, or cut it back
+     * to empty if there are none. Records buffered but not yet written are
+     * covered by the rewrite, so waiting syncs are released by it.
+     */
+    void compact() throws IOException {
+        synchronized (flushLock) {
+            List<ByteBuffer> records;
+            long upTo;
+            synchronized (this) {
+                if (outstanding.isEmpty() ? channel.size() == 0 : channel.size() < COMPACT_MIN_BYTES) {
+                    return;
+                }
+                records = new ArrayList<>(outstanding.size());
+                for (ByteBuffer record : outstanding.values()) {
+                    records.add(record.duplicate());
+                }
+                active.clear();
+                upTo = appended;
+            }
+            rewrite(records);
+            durable = upTo;
+        }
+    }
+    
+    /**
+     * Replace the file with the records and open it for appends; called under the flush lock
+     */
+    private void rewrite(List<ByteBuffer> records) throws IOException {
+        Path compacted = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (ByteBuffer record : records) {
+                writeFully(out, record);
+            }
+            out.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+    
+    @Override
+    public void close() throws IOException {
+        sync(appended);
+        channel.close();
+    }
+    
+    private void readAll(Map<String, BookingWriteBehindService.PendingBooking> pending) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = record.readByte();
+                String reference = record.readUTF();
+                if (type == ACCEPTED) {
+                    pending.put(reference, readBooking(reference, record));
+                } else {
+                    pending.remove(reference);
+                }
+            }
+        }
+    }
+    
+    private static ByteBuffer accepted(BookingWriteBehindService.PendingBooking booking) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + booking.seatIds().size() * 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ACCEPTED);
+            out.writeUTF(booking.reference());
+            out.writeLong(booking.showId());
+            out.writeUTF(booking.userId());
+            out.writeUTF(booking.guestName());
+            out.writeUTF(booking.guestEmail());
+            out.writeUTF(booking.bookingTime().toString());
+            out.writeUTF(booking.idempotencyKey() != null ? booking.idempotencyKey() : "");
+            out.writeShort(booking.seatIds().size());
+            for (int i = 0; i < booking.seatIds().size(); i++) {
+                out.writeLong(booking.seatIds().get(i));
+                out.writeUTF(booking.seatPrices().get(i).toPlainString());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+    
+    private static ByteBuffer done(String reference) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(DONE);
+            out.writeUTF(reference);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+    
+    private static BookingWriteBehindService.PendingBooking readBooking(String reference, DataInputStream in)
+            throws IOException {
+        long showId = in.readLong();
+        String userId = in.readUTF();
+        String guestName = in.readUTF();
+        String guestEmail = in.readUTF();
+        LocalDateTime bookingTime = LocalDateTime.parse(in.readUTF());
+        String idempotencyKey = in.readUTF();
+        int seats = in.readUnsignedShort();
+        List<Long> seatIds = new ArrayList<>(seats);
+        List<BigDecimal> seatPrices = new ArrayList<>(seats);
+        for (int i = 0; i < seats; i++) {
+            seatIds.add(in.readLong());
+            seatPrices.add(new BigDecimal(in.readUTF()));
+        }
+        return new BookingWriteBehindService.PendingBooking(reference, showId, seatIds, userId, guestName,
+                guestEmail, seatPrices, bookingTime, idempotencyKey.isEmpty() ? null : idempotencyKey);
+    }
+    
+    private ByteBuffer frame(ByteBuffer payload) {
+        ByteBuffer framed = ByteBuffer.allocate(8 + payload.remaining());
+        framed.putInt(payload.remaining());
+        synchronized (crc) {
+            crc.reset();
+            crc.update(payload.duplicate());
+            framed.putInt((int) crc.getValue());
+        }
+        framed.put(payload).flip();
+        return framed;
+    }
+    
+    private void put(ByteBuffer record) {
+        if (active.remaining() < record.remaining()) {
+            int size = Math.max(active.capacity() * 2, active.position() + record.remaining());
+            ByteBuffer grown = ByteBuffer.allocate(size);
+            active.flip();
+            grown.put(active);
+            active = grown;
+        }
+        active.put(record);
+    }
+    
+    private byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || length > (1 << 20)) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
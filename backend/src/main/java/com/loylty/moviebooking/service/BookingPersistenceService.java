@@ -0,0 +1,151 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.entity.Booking;
+import com.loylty.moviebooking.entity.BookingSeat;
+import com.loylty.moviebooking.entity.Show;
+import com.loylty.moviebooking.repository.BookingRepository;
+import com.loylty.moviebooking.repository.ShowRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes confirmed bookings. A booking and all its seats are inserted in one
+ * transaction: the seats cascade from the booking, IDs come from pooled
+ * sequences and Hibernate batches the inserts, so a booking costs one insert
+ * round trip per table.
+ */
+@Service
+@RequiredArgsConstructor
+public class BookingPersistenceService {
+    
+    private final BookingRepository bookingRepository;
+    private final ShowRepository showRepository;
+    private final NamedParameterJdbcTemplate jdbc;
+    
+    private static final String SET_IDEMPOTENCY_KEY =
+            "UPDATE bookings SET idempotency_key = :key WHERE id = :id";
+    
+    private static final String SET_WRITE_BEHIND_KEYS =
+            "UPDATE bookings SET write_behind_reference = :reference, idempotency_key = :key WHERE id = :id";
+    
+    /**
+     * Build an unsaved booking of the given seats; the total is the sum of the seat prices
+     * @param seatPrices price of each seat, in the order of seatIds
+     */
+    public Booking newBooking(Show show, List<Long> seatIds, List<BigDecimal> seatPrices,
+                              String guestName, String guestEmail) {
+        Booking booking = new Booking();
+        booking.setShow(show);
+        booking.setGuestName(guestName);
+        booking.setGuestEmail(guestEmail);
+        booking.setBookingTime(LocalDateTime.now());
+        booking.setStatus("CONFIRMED");
+        
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        List<BookingSeat> bookingSeats = new ArrayList<>(seatIds.size());
+        for (int i = 0; i < seatIds.size(); i++) {
+            BookingSeat bookingSeat = new BookingSeat();
+            bookingSeat.setBooking(booking);
+            bookingSeat.setSeatId(seatIds.get(i));
+            bookingSeat.setPrice(seatPrices.get(i));
+            bookingSeats.add(bookingSeat);
+            totalAmount = totalAmount.add(seatPrices.get(i));
+        }
+        booking.setBookingSeats(bookingSeats);
+        booking.setTotalAmount(totalAmount);
+        return booking;
+    }
+    
+    /**
+     * Insert the booking with its seats. The booking's ID is assigned before
+     * any row is written, so it is set on the entity even if the save fails.
+     * @param idempotencyKey key of the confirm request, or null; a key that is
+     *                       already taken fails the save with a DataIntegrityViolationException
+     */
+    @Transactional
+    public Booking save(Booking booking, String idempotencyKey) {
+        Booking saved = bookingRepository.save(booking);
+        if (idempotencyKey != null) {
+            // The key column is unknown to Hibernate, so the row must be written before it is set
+            bookingRepository.flush();
+            jdbc.update(SET_IDEMPOTENCY_KEY, new MapSqlParameterSource()
+                    .addValue("key", idempotencyKey)
+                    .addValue("id", saved.getId()));
+        }
+        return saved;
+    }
+    
+    /**
+     * Insert a batch of write-behind bookings with their seats in one transaction
+     * @return the saved bookings, in the order of the batch
+     */
+    @Transactional
+    public List<Booking> saveAll(List<BookingWriteBehindService.PendingBooking> pending) {
+        List<Booking> bookings = new ArrayList<>(pending.size());
+        for (BookingWriteBehindService.PendingBooking booking : pending) {
+            // A reference is enough for the foreign key; the show is not loaded
+            Booking entity = newBooking(showRepository.getReferenceById(booking.showId()), booking.seatIds(),
+                    booking.seatPrices(), booking.guestName(), booking.guestEmail());
+            entity.setBookingTime(booking.bookingTime());
+            bookings.add(entity);
+        }
+        List<Booking> saved = bookingRepository.saveAll(bookings);
+        
+        // The reference is unique, so a booking that was saved before fails the batch instead of being saved twice
+        SqlParameterSource[] keys = new SqlParameterSource[pending.size()];
+        for (int i = 0; i < pending.size(); i++) {
+            keys[i] = new MapSqlParameterSource()
+                    .addValue("reference", pending.get(i).reference())
+                    .addValue("key", pending.get(i).idempotencyKey(), Types.VARCHAR)
+                    .addValue("id", saved.get(i).getId());
+        }
+        bookingRepository.flush();
+        jdbc.batchUpdate(SET_WRITE_BEHIND_KEYS, keys);
+        return saved;
+    }
+    
+    /**
+     * @return the booking, whose show and seats load lazily, or null if there is none
+     */
+    @Transactional(readOnly = true)
+    public Booking findBooking(Long bookingId) {
+        return bookingRepository.findById(bookingId).orElse(null);
+    }
+    
+    /**
+     * @return the ID of the booking saved by the confirm request with the key, or null if there is none
+     */
+    @Transactional(readOnly = true)
+    public Long findIdByIdempotencyKey(String idempotencyKey) {
+        List<Long> ids = bookingRepository.findIdsByIdempotencyKey(idempotencyKey);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+    
+    /**
+     * Find a booking saved by the write-behind pipeline by its reference
+     * @return the booking ID, or null if no such booking was saved
+     */
+    @Transactional(readOnly = true)
+    public Long findSavedId(String reference) {
+        List<Long> ids = bookingRepository.findIdsByWriteBehindReference(reference);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+    
+    /**
+     * @return true if a booking with the ID exists, i.e. its save was committed
+     */
+    @Transactional(readOnly = true)
+    public boolean isSaved(Long bookingId) {
+        return bookingId != null && bookingRepository.existsById(bookingId);
+    }
+}
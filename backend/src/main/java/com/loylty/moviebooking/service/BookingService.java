@@ -3,41 +3,87 @@ package com.loylty.moviebooking.service;
 import com.loylty.moviebooking.dto.*;
 import com.loylty.moviebooking.entity.*;
 import com.loylty.moviebooking.repository.*;
+import com.loylty.moviebooking.cache.SeatGrid;
+import com.loylty.moviebooking.cache.SeatLockMetrics;
 import com.loylty.moviebooking.cache.SeatLockService;
 import com.loylty.moviebooking.config.TimezoneConfig;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class BookingService {
     
-    private final ShowSeatService showSeatService;
+    private final ShowPricingService showPricingService;
     private final ShowRepository showRepository;
-    private final BookingRepository bookingRepository;
-    private final BookingSeatRepository bookingSeatRepository;
+    private final SeatService seatService;
+    private final BookingPersistenceService bookingPersistenceService;
     private final SeatLockService seatLockService;
+    private final WaitingRoomService waitingRoomService;
+    private final SeatLockMetrics seatLockMetrics;
+    private final BookingWriteBehindService bookingWriteBehindService;
+    
+    // Holds start short and are kept alive by checkout heartbeats, up to the maximum lifetime
+    @Value("${seat-lock.hold.initial-seconds:120}")
+    private int holdInitialSeconds;
+    
+    @Value("${seat-lock.hold.extension-seconds:60}")
+    private int holdExtensionSeconds;
+    
+    @Value("${seat-lock.hold.max-lifetime-seconds:900}")
+    private int holdMaxLifetimeSeconds;
     
     public SeatLockResponse lockSeats(SeatLockRequest request) {
         // Generate a user ID if not provided
         String userId = request.getUserId() != null ? request.getUserId() : UUID.randomUUID().toString();
         
-        // Validate show exists
-        showRepository.findById(request.getShowId())
-                .orElseThrow(() -> new RuntimeException("Show not found with id: " + request.getShowId()));
+        // Checked before any database access, so queued users add no load
+        if (!waitingRoomService.isAdmitted(request.getShowId(), request.getQueueToken())) {
+            seatLockMetrics.lockRejected(SeatLockMetrics.Rejection.NOT_ADMITTED);
+            return new SeatLockResponse(
+                    false,
+                    "Not admitted from the waiting room yet",
+                    null,
+                    null,
+                    null
+            );
+        }
+        
+        // Validate show exists and every seat is on its seat map; both come from the cached layout
+        SeatGrid grid = seatService.getSeatGrid(request.getShowId());
+        for (Long seatId : request.getSeatIds()) {
+            if (seatId == null || !grid.isSeat(seatId)) {
+                return new SeatLockResponse(
+                        false,
+                        "Seat " + seatId + " is not on the seat map",
+                        null,
+                        null,
+                        null
+                );
+            }
+        }
         
         // Use pure in-memory seat locking
-        boolean locked = seatLockService.lockSeats(request.getShowId(), request.getSeatIds(), userId, 5);
+        boolean locked = seatLockService.lockSeats(request.getShowId(), request.getSeatIds(), userId, holdInitialSeconds);
         
         if (locked) {
-            LocalDateTime expiryTime = LocalDateTime.now().plusMinutes(5);
+            LocalDateTime expiryTime = LocalDateTime.now().plusSeconds(holdInitialSeconds);
             return new SeatLockResponse(
                     true,
                     "Seats locked successfully",
@@ -56,6 +102,79 @@ public class BookingService {
         }
     }
     
+    /**
+     * Pick and lock the best block of adjacent seats for the group in one call,
+     * instead of the client guessing seat IDs and retrying
+     */
+    public SeatLockResponse lockBestAvailable(BestAvailableRequest request) {
+        String userId = request.getUserId() != null ? request.getUserId() : UUID.randomUUID().toString();
+        
+        if (!waitingRoomService.isAdmitted(request.getShowId(), request.getQueueToken())) {
+            seatLockMetrics.lockRejected(SeatLockMetrics.Rejection.NOT_ADMITTED);
+            return new SeatLockResponse(
+                    false,
+                    "Not admitted from the waiting room yet",
+                    null,
+                    null,
+                    null
+            );
+        }
+        
+        ShowSeat.SeatCategory category = null;
+        if (request.getCategory() != null && !request.getCategory().isBlank()) {
+            try {
+                category = ShowSeat.SeatCategory.valueOf(request.getCategory().trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unknown seat category: " + request.getCategory());
+            }
+        }
+        
+        List<Long> seatIds = seatLockService.lockBestAvailable(request.getShowId(), seatService.getSeatGrid(request.getShowId()),
+                category, request.getSeatCount(), userId, holdInitialSeconds);
+        
+        if (seatIds.isEmpty()) {
+            return new SeatLockResponse(
+                    false,
+                    "No block of " + request.getSeatCount() + " adjacent seats is available",
+                    null,
+                    null,
+                    null
+            );
+        }
+        return new SeatLockResponse(
+                true,
+                "Seats locked successfully",
+                seatIds,
+                LocalDateTime.now().plusSeconds(holdInitialSeconds),
+                userId
+        );
+    }
+    
+    /**
+     * Heartbeat of an active checkout: extend the user's holds in the show
+     */
+    public SeatLockResponse renewHold(HoldRenewalRequest request) {
+        long expiresAt = seatLockService.renewHold(request.getShowId(), request.getUserId(),
+                holdExtensionSeconds, holdMaxLifetimeSeconds);
+        
+        if (expiresAt == 0L) {
+            return new SeatLockResponse(
+                    false,
+                    "No active seat hold to renew",
+                    null,
+                    null,
+                    null
+            );
+        }
+        return new SeatLockResponse(
+                true,
+                "Seat hold renewed",
+                null,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAt), ZoneId.systemDefault()),
+                request.getUserId()
+        );
+    }
+    
     public SeatLockResponse unlockSeats(SeatLockRequest request) {
         if (request.getUserId() == null) {
             return new SeatLockResponse(
@@ -79,116 +198,211 @@ public class BookingService {
         );
     }
     
-    public boolean confirmBooking(Long showId, java.util.List<Long> seatIds, String userId) {
+    /**
+     * Release every seat the user holds, e.g. when payment fails or the checkout tab is closed
+     */
+    public int releaseAllSeats(String userId) {
+        return seatLockService.releaseAllSeats(userId);
+    }
+    
+    public Map<Long, Set<Long>> getHeldSeats(String userId) {
+        return seatLockService.getHeldSeats(userId);
+    }
+    
+    /**
+     * @return false if the show is over or the seats are not locked by the user
+     * @throws RuntimeException if the booking could not be saved; unless the database
+     * cannot tell whether it was, its seats are held for the user again (see savedDespiteFailure)
+     */
+    public boolean confirmBooking(Long showId, java.util.List<Long> seatIds, String userId, String idempotencyKey) {
+        try {
+            return confirmAndSave(showId, seatIds, userId, "Guest", "guest@example.com", idempotencyKey) != null;
+        } catch (RuntimeException e) {
+            log.error("Failed to confirm booking for show {} seats {}", showId, seatIds, e);
+            throw e;
+        }
+    }
+    
+    public BookingResponse createBooking(BookingRequest request, String idempotencyKey) {
+        // Confirm booking (this will validate seat locks) and save it with the guest's details
+        Booking booking = confirmAndSave(request.getShowId(), request.getSeatIds(), request.getUserId(),
+                request.getGuestName(), request.getGuestEmail(), idempotencyKey);
+        if (booking == null) {
+            throw new RuntimeException("Failed to confirm booking. Seats may no longer be locked.");
+        }
+        
+        return convertToResponse(booking, request.getSeatIds());
+    }
+    
+    public boolean isWriteBehindEnabled() {
+        return bookingWriteBehindService.isEnabled();
+    }
+    
+    /**
+     * Book the user's locked seats in the lock service and hand the booking to
+     * the write-behind pipeline instead of saving it. A queue slot is reserved
+     * before the seats are claimed, so a full queue turns the request away with
+     * the seats still held rather than booking seats that cannot be queued.
+     * @param idempotencyKey key of the request, or null; saved with the booking
+     * @return PENDING with the reference to poll, REJECTED if the queue is full,
+     * FAILED if the show is over or the seats are not locked by the user,
+     * PERSISTED if a booking with the idempotency key was saved before
+     */
+    public BookingStatusResponse submitBooking(BookingRequest request, String idempotencyKey) {
+        Long existingId = idempotencyKey != null
+                ? bookingPersistenceService.findIdByIdempotencyKey(idempotencyKey)
+                : null;
+        if (existingId != null) {
+            return new BookingStatusResponse(null, "PERSISTED", existingId, "Booking confirmed successfully");
+        }
+        if (!bookingWriteBehindService.reserve()) {
+            return new BookingStatusResponse(null, "REJECTED", null, "Too many bookings in progress, please retry");
+        }
+        
+        long start = System.nanoTime();
+        boolean queued = false;
         try {
-            System.out.println("=== DEBUG: confirmBooking called ===");
-            System.out.println("showId: " + showId);
-            System.out.println("seatIds: " + seatIds);
-            System.out.println("userId: " + userId);
+            Show show = showRepository.findById(request.getShowId())
+                    .orElseThrow(() -> new RuntimeException("Show not found with id: " + request.getShowId()));
+            if (!TimezoneConfig.isShowTimeInFuture(show.getShowTime())) {
+                log.warn("Show {} started at {}; booking refused", show.getId(), show.getShowTime());
+                return new BookingStatusResponse(null, "FAILED", null, "Failed to confirm booking");
+            }
+            
+            List<Long> distinctSeatIds = List.copyOf(new LinkedHashSet<>(request.getSeatIds()));
+            List<BigDecimal> seatPrices = showPricingService.getPriceTable(request.getShowId())
+                    .seatPrices(distinctSeatIds);
+            if (!seatLockService.confirmBooking(request.getShowId(), distinctSeatIds, request.getUserId())) {
+                return new BookingStatusResponse(null, "FAILED", null, "Failed to confirm booking");
+            }
+            
+            // The reference is saved with the booking, so the writer can find it after a failed commit
+            BookingWriteBehindService.PendingBooking booking = new BookingWriteBehindService.PendingBooking(
+                    UUID.randomUUID().toString(), request.getShowId(), distinctSeatIds, request.getUserId(),
+                    request.getGuestName(), request.getGuestEmail(), seatPrices,
+                    LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS), idempotencyKey);
+            try {
+                bookingWriteBehindService.submit(booking);
+            } catch (IOException e) {
+                seatLockService.revertBooking(request.getShowId(), distinctSeatIds, request.getUserId(),
+                        holdInitialSeconds);
+                throw new RuntimeException("Failed to journal booking: " + e.getMessage(), e);
+            }
+            queued = true;
+            return new BookingStatusResponse(booking.reference(), "PENDING", null, "Booking accepted");
+        } finally {
+            if (!queued) {
+                bookingWriteBehindService.cancelReservation();
+            }
+            seatLockMetrics.recordConfirm(System.nanoTime() - start, queued);
+        }
+    }
+    
+    /**
+     * @return the progress of a booking accepted by submitBooking, or null if the reference is unknown
+     */
+    public BookingStatusResponse getBookingStatus(String reference) {
+        BookingWriteBehindService.Status status = bookingWriteBehindService.getStatus(reference);
+        if (status == null) {
+            return null;
+        }
+        String message = switch (status.state()) {
+            case PENDING -> "Booking is being saved";
+            case PERSISTED -> "Booking confirmed successfully";
+            case FAILED -> "Booking could not be saved; the seats are held for you again";
+        };
+        return new BookingStatusResponse(reference, status.state().name(), status.bookingId(), message);
+    }
+    
+    /**
+     * Book the user's locked seats in the lock service, then save the booking
+     * and its seats in one transaction
+     * @param idempotencyKey key of the request, or null; a booking saved before with the key is returned as is
+     * @return the saved booking, or null if the show is over or the seats are not locked by the user
+     */
+    private Booking confirmAndSave(Long showId, List<Long> seatIds, String userId,
+                                   String guestName, String guestEmail, String idempotencyKey) {
+        long start = System.nanoTime();
+        Booking saved = null;
+        try {
+            // A retry whose first attempt went through; its seats are booked, so confirming again would fail
+            if (idempotencyKey != null) {
+                Long existingId = bookingPersistenceService.findIdByIdempotencyKey(idempotencyKey);
+                if (existingId != null) {
+                    saved = bookingPersistenceService.findBooking(existingId);
+                    return saved;
+                }
+            }
             
             // Validate show exists and is in future
             Show show = showRepository.findById(showId)
-                    .orElseThrow(() -> new RuntimeException("Show not found: " + showId));
+                    .orElseThrow(() -> new RuntimeException("Show not found with id: " + showId));
             
             // Check if show time is in the future (IST time)
             if (!TimezoneConfig.isShowTimeInFuture(show.getShowTime())) {
-                System.out.println("Show time is in the past: " + show.getShowTime());
-                return false;
+                log.warn("Show {} started at {}; booking refused", show.getId(), show.getShowTime());
+                return null;
             }
             
-            System.out.println("Show time is valid: " + show.getShowTime());
-            
-            // Confirm booking in in-memory system
-            boolean confirmed = seatLockService.confirmBooking(showId, seatIds, userId);
-            System.out.println("In-memory confirmation: " + confirmed);
+            // Priced before the seats are claimed, so nothing can fail between the claim and the save
+            List<Long> distinctSeatIds = List.copyOf(new LinkedHashSet<>(seatIds));
+            List<BigDecimal> seatPrices = showPricingService.getPriceTable(showId).seatPrices(distinctSeatIds);
+            Booking booking = bookingPersistenceService.newBooking(show, distinctSeatIds, seatPrices,
+                    guestName, guestEmail);
             
-            if (confirmed) {
-                // Create booking record in database
-                System.out.println("Show found: " + show.getId());
-                
-                // Calculate total price
-                BigDecimal totalPrice = showSeatService.calculateTotalPrice(showId, seatIds);
-                System.out.println("Total price: " + totalPrice);
-                
-                // Create booking
-                Booking booking = new Booking();
-                booking.setShow(show);
-                booking.setGuestName("Guest"); // Default name
-                booking.setGuestEmail("guest@example.com"); // Default email
-                booking.setTotalAmount(totalPrice);
-                booking.setBookingTime(LocalDateTime.now());
-                booking.setStatus("CONFIRMED");
-                
-                booking = bookingRepository.save(booking);
-                System.out.println("Booking saved: " + booking.getId());
-                final Booking finalBooking = booking;
-                
-                // Create booking seats
-                BigDecimal seatPrice = totalPrice.divide(BigDecimal.valueOf(seatIds.size()));
-                List<BookingSeat> bookingSeats = seatIds.stream()
-                        .map(seatId -> {
-                            BookingSeat bookingSeat = new BookingSeat();
-                            bookingSeat.setBooking(finalBooking);
-                            bookingSeat.setSeatId(seatId);
-                            bookingSeat.setPrice(seatPrice);
-                            return bookingSeat;
-                        })
-                        .collect(Collectors.toList());
-                
-                bookingSeatRepository.saveAll(bookingSeats);
-                System.out.println("Booking seats saved: " + bookingSeats.size());
+            // Claim the seats in the lock service first, so requests that lost the seats never reach the database
+            if (!seatLockService.confirmBooking(showId, distinctSeatIds, userId)) {
+                return null;
             }
             
-            return confirmed;
-        } catch (Exception e) {
-            System.out.println("ERROR in confirmBooking: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            try {
+                saved = bookingPersistenceService.save(booking, idempotencyKey);
+            } catch (RuntimeException e) {
+                if (!savedDespiteFailure(booking, showId, distinctSeatIds, userId)) {
+                    throw e;
+                }
+                saved = booking;
+            }
+            return saved;
+        } finally {
+            seatLockMetrics.recordConfirm(System.nanoTime() - start, saved != null);
         }
     }
     
-    @Transactional
-    public BookingResponse createBooking(BookingRequest request) {
-        // Validate show exists
-        Show show = showRepository.findById(request.getShowId())
-                .orElseThrow(() -> new RuntimeException("Show not found with id: " + request.getShowId()));
-        
-        // Confirm booking (this will validate seat locks)
-        boolean confirmed = confirmBooking(request.getShowId(), request.getSeatIds(), request.getUserId());
-        if (!confirmed) {
-            throw new RuntimeException("Failed to confirm booking. Seats may no longer be locked.");
+    /**
+     * Compensation for a booking whose save failed after its seats were booked
+     * in the lock service. The booking ID is assigned before any insert, so the
+     * database can tell whether the commit went through after all:
+     * - the booking exists: it stands, and the seats stay booked
+     * - it does not: the seats go back to the user as a hold, so the confirm can be retried
+     * - the database cannot say: the seats stay booked, since a seat left unsold
+     *   can be released by hand while a seat sold twice cannot be taken back
+     * @return true if the booking was saved after all
+     */
+    private boolean savedDespiteFailure(Booking booking, Long showId, List<Long> seatIds, String userId) {
+        boolean saved;
+        try {
+            saved = bookingPersistenceService.isSaved(booking.getId());
+        } catch (RuntimeException e) {
+            log.error("Booking {} for show {} seats {} may not be saved; seats stay booked",
+                    booking.getId(), showId, seatIds, e);
+            return false;
         }
         
-        // Calculate total amount
-        BigDecimal totalAmount = showSeatService.calculateTotalPrice(request.getShowId(), request.getSeatIds());
-        
-        // Create booking
-        Booking booking = new Booking();
-        booking.setShow(show);
-        booking.setGuestName(request.getGuestName());
-        booking.setGuestEmail(request.getGuestEmail());
-        booking.setTotalAmount(totalAmount);
-        booking.setStatus("CONFIRMED");
-        
-        booking = bookingRepository.save(booking);
-        
-        // Create booking seats
-        BigDecimal seatPrice = totalAmount.divide(BigDecimal.valueOf(request.getSeatIds().size()));
-        for (Long seatId : request.getSeatIds()) {
-            BookingSeat bookingSeat = new BookingSeat();
-            bookingSeat.setBooking(booking);
-            bookingSeat.setSeatId(seatId);
-            bookingSeat.setPrice(seatPrice);
-            bookingSeatRepository.save(bookingSeat);
+        if (!saved) {
+            seatLockService.revertBooking(showId, seatIds, userId, holdInitialSeconds);
         }
-        
-        return convertToResponse(booking, request.getSeatIds());
+        return saved;
     }
     
     private BookingResponse convertToResponse(Booking booking, List<Long> seatIds) {
-        // Convert seat IDs to SeatDto objects
+        // Convert seat IDs to SeatDto objects, placed on the show's seat map
+        SeatGrid grid = seatService.getSeatGrid(booking.getShow().getId());
         List<SeatDto> seatDtos = seatIds.stream()
-                .map(seatId -> new SeatDto(seatId, 0, 0, "REGULAR", "BOOKED", null, null))
+                .map(seatId -> grid.isSeat(seatId)
+                        ? new SeatDto(seatId, grid.rowOf(seatId), grid.seatNumberOf(seatId),
+                                grid.categoryOf(seatId).name(), "BOOKED", null, null, 0)
+                        : new SeatDto(seatId, 0, 0, "REGULAR", "BOOKED", null, null, 0))
                 .collect(Collectors.toList());
         
         return new BookingResponse(
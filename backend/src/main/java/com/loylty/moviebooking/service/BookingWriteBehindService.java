@@ -0,0 +1,319 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.cache.SeatLockService;
+import com.loylty.moviebooking.entity.Booking;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind pipeline for confirmed bookings: journaled, queued and saved
+ * in batches by a single writer thread. The queue is bounded by reserve, and
+ * a booking is looked up by its reference (V17) before any retry, so it is
+ * never saved twice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookingWriteBehindService {
+    
+    /**
+     * A booking whose seats are booked in the lock service but not yet saved
+     * @param seatPrices price of each seat, in the order of seatIds
+     * @param idempotencyKey key of the confirm request, or null
+     */
+    public record PendingBooking(String reference, long showId, List<Long> seatIds, String userId,
+                                 String guestName, String guestEmail, List<BigDecimal> seatPrices,
+                                 LocalDateTime bookingTime, String idempotencyKey) {
+    }
+    
+    public enum State {
+        PENDING,
+        PERSISTED,
+        FAILED
+    }
+    
+    /**
+     * Progress of an accepted booking
+     * @param bookingId ID of the saved booking, null until persisted
+     * @param completedAt epoch millis the booking was saved or given up, 0 while pending
+     */
+    public record Status(State state, Long bookingId, long completedAt) {
+    }
+    
+    private static final long IDLE_POLL_MILLIS = 50;
+    private static final long MIN_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 10_000;
+    
+    private final BookingPersistenceService bookingPersistenceService;
+    private final SeatLockService seatLockService;
+    
+    @Value("${booking.write-behind.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${booking.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+    
+    @Value("${booking.write-behind.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${booking.write-behind.enqueue-timeout-ms:100}")
+    private long enqueueTimeoutMillis;
+    
+    @Value("${booking.write-behind.journal-dir:data/booking-journal}")
+    private String journalDir;
+    
+    @Value("${booking.write-behind.status-retention-minutes:30}")
+    private long statusRetentionMinutes;
+    
+    @Value("${seat-lock.hold.initial-seconds:120}")
+    private int revertHoldSeconds;
+    
+    private Semaphore slots;
+    private final BlockingQueue<PendingBooking> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Status> statuses = new ConcurrentHashMap<>();
+    private BookingJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+    // Only touched by the writer thread
+    private long lastHousekeeping;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        
+        List<PendingBooking> recovered;
+        try {
+            journal = new BookingJournal(Path.of(journalDir));
+            recovered = journal.recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover booking journal from " + journalDir, e);
+        }
+        
+        // Recovered bookings count against the capacity, so the semaphore may start negative
+        slots = new Semaphore(queueCapacity - recovered.size());
+        for (PendingBooking booking : recovered) {
+            if (!completeIfSaved(booking)) {
+                // The seat lock state may not have survived the restart; the seats are sold either way
+                seatLockService.markSeatsBooked(booking.showId(), booking.seatIds());
+                statuses.put(booking.reference(), new Status(State.PENDING, null, 0L));
+                queue.add(booking);
+            }
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Recovered {} unsaved bookings from the booking journal", queue.size());
+        }
+        
+        running = true;
+        writer = new Thread(this::runWriter, "booking-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (writer == null) {
+            return;
+        }
+        // Let the writer drain what it can; anything left is replayed from the journal on the next start
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("Failed to close booking journal: {}", e.getMessage());
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Reserve a queue slot for one booking, waiting up to the enqueue timeout if the queue is full
+     * @return false if no slot came free, in which case the booking must not be submitted
+     */
+    public boolean reserve() {
+        try {
+            return slots.tryAcquire(enqueueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * Give back a slot taken by reserve for a booking that was not submitted
+     */
+    public void cancelReservation() {
+        slots.release();
+    }
+    
+    /**
+     * Journal the booking and queue it for the writer, using a slot taken by
+     * reserve. Returns once the booking is on disk, so an acknowledged booking
+     * is never lost.
+     */
+    public void submit(PendingBooking booking) throws IOException {
+        statuses.put(booking.reference(), new Status(State.PENDING, null, 0L));
+        try {
+            journal.sync(journal.append(booking));
+        } catch (IOException e) {
+            // The record may still reach the disk with a later flush; make sure it is never replayed
+            journal.markDone(List.of(booking.reference()));
+            statuses.remove(booking.reference());
+            throw e;
+        }
+        queue.add(booking);
+    }
+    
+    /**
+     * @return the progress of the booking, or null if the reference is unknown or no longer retained
+     */
+    public Status getStatus(String reference) {
+        return statuses.get(reference);
+    }
+    
+    private void runWriter() {
+        List<PendingBooking> batch = new ArrayList<>(batchSize);
+        long retryMillis = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            // On a timer rather than when idle, as the queue may never run dry during a sale
+            housekeep();
+            try {
+                if (batch.isEmpty()) {
+                    PendingBooking first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                } else if (retryMillis > 0) {
+                    // The failed commit may have gone through; never save a booking twice
+                    batch.removeIf(this::completeIfSaved);
+                }
+                
+                write(batch);
+                batch.clear();
+                retryMillis = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    // Shutting down with the database unavailable; the journal still has the batch
+                    return;
+                }
+                retryMillis = Math.min(MAX_RETRY_MILLIS, Math.max(MIN_RETRY_MILLIS, retryMillis * 2));
+                log.error("Failed to save {} bookings, retrying in {} ms: {}", batch.size(), retryMillis,
+                        e.getMessage());
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    private void write(List<PendingBooking> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            complete(batch, bookingPersistenceService.saveAll(batch));
+        } catch (DataIntegrityViolationException e) {
+            // One bad booking fails the whole batch; save them one by one to find it
+            for (PendingBooking booking : batch) {
+                if (statuses.get(booking.reference()).state() == State.PENDING) {
+                    writeOne(booking);
+                }
+            }
+        }
+    }
+    
+    private void writeOne(PendingBooking booking) {
+        try {
+            complete(List.of(booking), bookingPersistenceService.saveAll(List.of(booking)));
+        } catch (DataIntegrityViolationException e) {
+            // A commit that went through after all fails again on the reference; the booking stands
+            if (completeIfSaved(booking)) {
+                return;
+            }
+            log.error("Giving up on booking {} for show {} seats {}: {}", booking.reference(), booking.showId(),
+                    booking.seatIds(), e.getMessage());
+            seatLockService.revertBooking(booking.showId(), booking.seatIds(), booking.userId(), revertHoldSeconds);
+            finish(booking, new Status(State.FAILED, null, System.currentTimeMillis()));
+        }
+    }
+    
+    /**
+     * @return true if the booking is already in the database, in which case it is marked persisted
+     */
+    private boolean completeIfSaved(PendingBooking booking) {
+        Long bookingId = bookingPersistenceService.findSavedId(booking.reference());
+        if (bookingId == null) {
+            return false;
+        }
+        finish(booking, new Status(State.PERSISTED, bookingId, System.currentTimeMillis()));
+        return true;
+    }
+    
+    private void complete(List<PendingBooking> batch, List<Booking> saved) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size(); i++) {
+            statuses.put(batch.get(i).reference(), new Status(State.PERSISTED, saved.get(i).getId(), now));
+        }
+        journal.markDone(batch.stream().map(PendingBooking::reference).toList());
+        slots.release(batch.size());
+    }
+    
+    private void finish(PendingBooking booking, Status status) {
+        statuses.put(booking.reference(), status);
+        journal.markDone(List.of(booking.reference()));
+        slots.release();
+    }
+    
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        if (now - lastHousekeeping < HOUSEKEEPING_INTERVAL_MILLIS) {
+            return;
+        }
+        lastHousekeeping = now;
+        
+        try {
+            journal.compact();
+        } catch (IOException e) {
+            log.error("Failed to compact booking journal: {}", e.getMessage());
+        }
+        
+        long cutoff = now - TimeUnit.MINUTES.toMillis(statusRetentionMinutes);
+        statuses.values().removeIf(status -> status.completedAt() > 0 && status.completedAt() < cutoff);
+    }
+}
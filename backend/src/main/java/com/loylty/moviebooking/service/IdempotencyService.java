@@ -0,0 +1,234 @@
+package com.loylty.moviebooking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Replays the stored response of a request whose Idempotency-Key, scoped to
+ * the caller, was seen before. Entries share one TTL and sit in capped,
+ * insertion-ordered stripes, so eviction only looks at a stripe's head.
+ * 5xx responses are not kept; a reused key with another body gets 422.
+ */
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+    
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    
+    private static final int STRIPES = 64;
+    private static final int MAX_KEY_LENGTH = 64;
+    
+    @Value("${idempotency.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${idempotency.max-entries:100000}")
+    private int maxEntries;
+    
+    @Value("${idempotency.ttl-seconds:600}")
+    private long ttlSeconds;
+    
+    @Value("${idempotency.wait-timeout-ms:10000}")
+    private long waitTimeoutMillis;
+    
+    private final ObjectMapper objectMapper;
+    
+    private Stripe[] stripes;
+    private long ttlMillis;
+    
+    @PostConstruct
+    public void init() {
+        ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        stripes = new Stripe[STRIPES];
+        int capacity = Math.max(1, maxEntries / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+    
+    /**
+     * @return true if the key should be used, i.e. the feature is on and a key was sent
+     */
+    public boolean isKeyed(String key) {
+        return enabled && key != null && !key.isBlank();
+    }
+    
+    /**
+     * Key of the request as saved with a booking: the caller's key, scoped to
+     * the caller and hashed, so it fits the column however long the caller ID is
+     * @return null if the key is not used
+     */
+    public String storedKey(String caller, String key) {
+        if (!isKeyed(key)) {
+            return null;
+        }
+        return HexFormat.of().formatHex(sha256(scoped(caller, key).getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Run the action once per caller, key and operation and return its
+     * response, or the response of the earlier run for a repeated key
+     * @param operation name of the endpoint, so the same key can be used on different endpoints
+     * @param caller user or session ID the key belongs to, or null for an anonymous caller
+     * @param request request body, compared by digest to detect a key reused for another request
+     */
+    public <T> ResponseEntity<T> execute(String operation, String caller, String key, Object request,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (!isKeyed(key)) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        String cacheKey = operation + ':' + scoped(caller, key);
+        byte[] fingerprint = fingerprint(request);
+        Stripe stripe = stripes[(cacheKey.hashCode() & 0x7fffffff) % STRIPES];
+        while (true) {
+            long now = System.currentTimeMillis();
+            Entry entry = new Entry(fingerprint, now + ttlMillis);
+            Entry existing = stripe.putIfAbsent(cacheKey, entry, now);
+            if (existing == null) {
+                return run(stripe, cacheKey, entry, action);
+            }
+            if (!MessageDigest.isEqual(existing.fingerprint, fingerprint)) {
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+            }
+            
+            ResponseEntity<?> response;
+            try {
+                response = existing.result.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | CancellationException e) {
+                // The first request failed and its entry is gone; run it again
+                continue;
+            } catch (TimeoutException e) {
+                // The first request is still running; the client retries later with the same key
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+            if (response == null) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            ResponseEntity<T> replayed = (ResponseEntity<T>) response;
+            return ResponseEntity.status(replayed.getStatusCode())
+                    .headers(replayed.getHeaders())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(replayed.getBody());
+        }
+    }
+    
+    // Length-prefixed, so no caller and key pair reads the same as another
+    private static String scoped(String caller, String key) {
+        String scope = caller != null ? caller : "";
+        return scope.length() + ":" + scope + ':' + key;
+    }
+    
+    private byte[] fingerprint(Object request) {
+        try {
+            return sha256(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize request for its idempotency key", e);
+        }
+    }
+    
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private <T> ResponseEntity<T> run(Stripe stripe, String cacheKey, Entry entry,
+                                      Supplier<ResponseEntity<T>> action) {
+        ResponseEntity<T> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException | Error e) {
+            stripe.remove(cacheKey, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            stripe.remove(cacheKey, entry);
+            // Requests waiting on this one run again themselves
+            entry.result.complete(null);
+        } else {
+            entry.result.complete(response);
+        }
+        return response;
+    }
+    
+    private static final class Entry {
+        final byte[] fingerprint;
+        final long expiresAt;
+        final CompletableFuture<ResponseEntity<?>> result = new CompletableFuture<>();
+        
+        Entry(byte[] fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    /**
+     * One insertion-ordered map; since all entries share a TTL, expired entries form a prefix
+     */
+    private static final class Stripe {
+        private final int capacity;
+        private final LinkedHashMap<String, Entry> entries;
+        
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(Math.min(capacity, 1024) * 2);
+        }
+        
+        synchronized Entry putIfAbsent(String key, Entry entry, long now) {
+            evict(now);
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(key, entry);
+            if (entries.size() > capacity) {
+                Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            return null;
+        }
+        
+        synchronized void remove(String key, Entry entry) {
+            entries.remove(key, entry);
+        }
+        
+        private void evict(long now) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext() && it.next().expiresAt <= now) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.loylty.moviebooking.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Waiting room queues kept in this process. A ticket is only ever admitted
+ * by the instance that issued it, so with several instances the load
+ * balancer must route all waiting room and lock traffic of a show to the
+ * same instance; otherwise use waiting-room.store=postgres.
+ */
+@Service
+@ConditionalOnProperty(name = "waiting-room.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryWaitingRoomQueues implements WaitingRoomQueues {
+    
+    @Value("${waiting-room.admission-rate-per-second:50}")
+    private double admissionRatePerSecond;
+    
+    @Value("${waiting-room.admission-burst:100}")
+    private int admissionBurst;
+    
+    private final Map<Long, ShowQueue> queues = new ConcurrentHashMap<>();
+    
+    @Override
+    public long join(long showId, long now) {
+        return queues.computeIfAbsent(showId, k -> new ShowQueue(admissionRatePerSecond, admissionBurst, now))
+                .join(now);
+    }
+    
+    @Override
+    public long admitted(long showId, long now) {
+        ShowQueue queue = queues.get(showId);
+        return queue != null ? queue.admitted(now) : 0L;
+    }
+    
+    /**
+     * Ticket counter and admission token bucket of one show
+     */
+    private static final class ShowQueue {
+        
+        private final double permitsPerMilli;
+        private final double burst;
+        
+        private long issued;
+        private long admitted;
+        private double permits;
+        private long lastRefill;
+        
+        ShowQueue(double ratePerSecond, int burst, long now) {
+            this.permitsPerMilli = ratePerSecond / 1000.0;
+            this.burst = burst;
+            this.permits = burst;
+            this.lastRefill = now;
+        }
+        
+        synchronized long join(long now) {
+            long ticket = ++issued;
+            admit(now);
+            return ticket;
+        }
+        
+        synchronized long admitted(long now) {
+            admit(now);
+            return admitted;
+        }
+        
+        private void admit(long now) {
+            if (now > lastRefill) {
+                permits = Math.min(burst, permits + (now - lastRefill) * permitsPerMilli);
+                lastRefill = now;
+            }
+            long admissible = Math.min((long) permits, issued - admitted);
+            admitted += admissible;
+            permits -= admissible;
+        }
+    }
+}
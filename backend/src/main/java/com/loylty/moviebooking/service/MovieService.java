@@ -14,11 +14,10 @@ import java.util.stream.Collectors;
 public class MovieService {
     
     private final MovieRepository movieRepository;
+    private final ShowCatalog showCatalog;
     
     public List<MovieDto> getMoviesByCity(Long cityId) {
-        return movieRepository.findMoviesByCity(cityId).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return showCatalog.getMoviesByCity(cityId);
     }
     
     public List<MovieDto> searchMovies(String title) {
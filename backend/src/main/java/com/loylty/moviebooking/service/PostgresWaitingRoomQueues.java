@@ -0,0 +1,114 @@
+package com.loylty.moviebooking.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Waiting room queues kept in the waiting_room_queues table, so a token
+ * issued by one instance is admitted by any other and the configured rate
+ * holds for the whole deployment rather than per instance.
+ *
+ * A queue is advanced by one UPDATE that refills the bucket, admits and
+ * optionally issues a ticket, computed from the row it locks, so concurrent
+ * instances never admit the same permit twice. Admitted counts only grow, so
+ * each instance keeps the last one it read for REFRESH_MILLIS and answers
+ * status polls and lock checks from it instead of writing the row each time.
+ *
+ * Selected with waiting-room.store=postgres.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "waiting-room.store", havingValue = "postgres")
+public class PostgresWaitingRoomQueues implements WaitingRoomQueues {
+    
+    // How long an admitted count read from the table is reused by this instance
+    private static final long REFRESH_MILLIS = 100;
+    
+    private static final String REFILLED =
+            "LEAST(:burst, permits + GREATEST(0, :now - last_refill) * :permitsPerMilli)";
+    
+    private static final String ADMISSIBLE =
+            "LEAST(FLOOR(" + REFILLED + ")::BIGINT, issued + :joining - admitted)";
+    
+    // Every right-hand side reads the row as it was before the update
+    private static final String ADVANCE =
+            "UPDATE waiting_room_queues SET " +
+            "  issued = issued + :joining, " +
+            "  admitted = admitted + " + ADMISSIBLE + ", " +
+            "  permits = " + REFILLED + " - " + ADMISSIBLE + ", " +
+            "  last_refill = GREATEST(last_refill, :now) " +
+            "WHERE show_id = :showId " +
+            "RETURNING issued, admitted";
+    
+    private static final String CREATE_QUEUE =
+            "INSERT INTO waiting_room_queues (show_id, permits, last_refill) VALUES (:showId, :burst, :now) " +
+            "ON CONFLICT (show_id) DO NOTHING";
+    
+    private final NamedParameterJdbcTemplate jdbc;
+    
+    @Value("${waiting-room.admission-rate-per-second:50}")
+    private double admissionRatePerSecond;
+    
+    @Value("${waiting-room.admission-burst:100}")
+    private int admissionBurst;
+    
+    private final Map<Long, Admitted> lastRead = new ConcurrentHashMap<>();
+    
+    @Override
+    public long join(long showId, long now) {
+        long[] counts = advance(showId, now, 1);
+        if (counts == null) {
+            jdbc.update(CREATE_QUEUE, new MapSqlParameterSource()
+                    .addValue("showId", showId)
+                    .addValue("burst", (double) admissionBurst)
+                    .addValue("now", now));
+            counts = advance(showId, now, 1);
+            if (counts == null) {
+                throw new RuntimeException("Waiting room queue not found for show: " + showId);
+            }
+        }
+        return counts[0];
+    }
+    
+    @Override
+    public long admitted(long showId, long now) {
+        Admitted read = lastRead.get(showId);
+        if (read != null && now - read.readAt() < REFRESH_MILLIS) {
+            return read.count();
+        }
+        long[] counts = advance(showId, now, 0);
+        return counts != null ? counts[1] : 0L;
+    }
+    
+    /**
+     * @return issued and admitted counts after the update, or null if the show has no queue yet
+     */
+    private long[] advance(long showId, long now, int joining) {
+        List<long[]> rows = jdbc.query(ADVANCE, new MapSqlParameterSource()
+                        .addValue("showId", showId)
+                        .addValue("now", now)
+                        .addValue("joining", joining)
+                        .addValue("burst", (double) admissionBurst)
+                        .addValue("permitsPerMilli", admissionRatePerSecond / 1000.0),
+                (rs, i) -> new long[] {rs.getLong("issued"), rs.getLong("admitted")});
+        if (rows.isEmpty()) {
+            return null;
+        }
+        long[] counts = rows.get(0);
+        lastRead.merge(showId, new Admitted(counts[1], now),
+                (old, fresh) -> new Admitted(Math.max(old.count(), fresh.count()),
+                        Math.max(old.readAt(), fresh.readAt())));
+        return counts;
+    }
+    
+    private record Admitted(long count, long readAt) {
+    }
+}
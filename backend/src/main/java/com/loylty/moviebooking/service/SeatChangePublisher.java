@@ -0,0 +1,159 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.cache.SeatLockService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes seat map changes of each show to its STOMP subscribers at
+ * /topic/shows/{showId}/seats, at most one batch per show per interval.
+ * A client that sees a batch starting after its version reloads the changes.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatChangePublisher {
+    
+    public static final String TOPIC_PREFIX = "/topic/shows/";
+    public static final String TOPIC_SUFFIX = "/seats";
+    
+    private final SeatLockService seatLockService;
+    private final SimpMessagingTemplate messagingTemplate;
+    
+    @Value("${seat-push.batch-interval-ms:200}")
+    private long batchIntervalMillis;
+    
+    // Key: showId, Value: subscriber count and push position of the show
+    private final Map<Long, Feed> feeds = new ConcurrentHashMap<>();
+    
+    // Key: sessionId, Value: showId of each of the session's subscriptions, by subscription ID
+    private final Map<String, Map<String, Long>> sessions = new ConcurrentHashMap<>();
+    
+    private ScheduledExecutorService pushExecutor;
+    
+    @PostConstruct
+    public void init() {
+        pushExecutor = Executors.newSingleThreadScheduledExecutor();
+        pushExecutor.scheduleWithFixedDelay(this::pushChanges,
+                batchIntervalMillis, batchIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        pushExecutor.shutdown();
+    }
+    
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        Message<?> message = event.getMessage();
+        Long showId = showIdOf(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (showId == null || sessionId == null || subscriptionId == null) {
+            return;
+        }
+        
+        Long previous = sessions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>()).put(subscriptionId, showId);
+        if (previous != null) {
+            removeSubscriber(previous);
+        }
+        feeds.compute(showId, (k, feed) -> {
+            Feed subscribed = feed != null ? feed : new Feed();
+            subscribed.subscribers++;
+            return subscribed;
+        });
+    }
+    
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        Message<?> message = event.getMessage();
+        Map<String, Long> subscriptions = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (subscriptions == null || subscriptionId == null) {
+            return;
+        }
+        
+        Long showId = subscriptions.remove(subscriptionId);
+        if (showId != null) {
+            removeSubscriber(showId);
+        }
+    }
+    
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Long> subscriptions = sessions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::removeSubscriber);
+        }
+    }
+    
+    /**
+     * Send one batch per watched show. Runs on the push thread only, which
+     * is the only one touching a feed's push position.
+     */
+    void pushChanges() {
+        for (Map.Entry<Long, Feed> entry : feeds.entrySet()) {
+            Long showId = entry.getKey();
+            Feed feed = entry.getValue();
+            try {
+                SeatLockService.SeatChanges changes =
+                        seatLockService.getSeatChanges(showId, feed.epoch, feed.version, null);
+                boolean unchanged = changes.snapshot()
+                        ? changes.seats().equals(feed.lastSnapshot)
+                        : changes.seats().isEmpty();
+                if (!unchanged) {
+                    Long since = changes.snapshot() ? null : feed.version;
+                    messagingTemplate.convertAndSend(TOPIC_PREFIX + showId + TOPIC_SUFFIX,
+                            SeatService.toResponse(showId, since, changes));
+                }
+                feed.epoch = changes.epoch();
+                feed.version = changes.version();
+                feed.lastSnapshot = changes.snapshot() ? changes.seats() : null;
+            } catch (Exception e) {
+                log.warn("Failed to push seat changes of show {}: {}", showId, e.getMessage());
+            }
+        }
+    }
+    
+    private void removeSubscriber(Long showId) {
+        feeds.computeIfPresent(showId, (k, feed) -> --feed.subscribers > 0 ? feed : null);
+    }
+    
+    private static Long showIdOf(String destination) {
+        if (destination == null || !destination.startsWith(TOPIC_PREFIX) || !destination.endsWith(TOPIC_SUFFIX)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(destination.substring(TOPIC_PREFIX.length(), destination.length() - TOPIC_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static final class Feed {
+        // Changed inside the map's compute calls only
+        int subscribers;
+        // Push position, starting with a snapshot
+        long epoch;
+        long version = -1L;
+        List<SeatLockService.SeatChange> lastSnapshot;
+    }
+}
@@ -0,0 +1,111 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.cache.SeatGrid;
+import com.loylty.moviebooking.entity.ShowSeat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Seat map of a screen, built once from its screens row and seats rows and
+ * shared by every show on the screen. The SeatGrid holds the seat positions
+ * and categories the lock engine and pricing work with; the template adds
+ * what only matters for drawing the map, such as how far a seat of a
+ * staggered row is shifted.
+ *
+ * A screen without seats rows gets the rectangular grid of its dimensions.
+ * The grid is widened when a seat lies outside the screen's dimensions.
+ *
+ * Instances are immutable. Each carries a digest of its seats, so clients
+ * can keep the map and revalidate it with an ETag instead of fetching it
+ * with every seat status update.
+ */
+public final class SeatLayoutTemplate {
+    
+    private final SeatGrid grid;
+    // Horizontal shift of each seat ID - 1, in half-seat widths
+    private final byte[] offsets;
+    // Seats of the map, one character per position: '.' for no seat, else the category ordinal
+    private final String layout;
+    // Strong validator of the map, derived from its content only
+    private final String tag;
+    
+    private SeatLayoutTemplate(SeatGrid grid, byte[] offsets) {
+        this.grid = grid;
+        this.offsets = offsets;
+        StringBuilder positions = new StringBuilder(grid.getMaxSeatId());
+        for (long seatId = 1; seatId <= grid.getMaxSeatId(); seatId++) {
+            positions.append(grid.isSeat(seatId) ? (char) ('0' + grid.categoryOf(seatId).ordinal()) : '.');
+        }
+        this.layout = positions.toString();
+        this.tag = digest(grid, layout, offsets);
+    }
+    
+    /**
+     * One row of the seats table
+     */
+    record SeatPosition(int rowNumber, int seatNumber, ShowSeat.SeatCategory category, int offset) {
+    }
+    
+    static SeatLayoutTemplate of(int totalRows, int seatsPerRow, List<SeatPosition> seats) {
+        if (seats.isEmpty()) {
+            SeatGrid grid = new SeatGrid(totalRows, seatsPerRow);
+            return new SeatLayoutTemplate(grid, new byte[grid.getMaxSeatId()]);
+        }
+        
+        int rows = totalRows;
+        int width = seatsPerRow;
+        for (SeatPosition seat : seats) {
+            if (seat.rowNumber() < 1 || seat.seatNumber() < 1) {
+                throw new IllegalArgumentException("Invalid seat position " + seat.rowNumber() + "/" + seat.seatNumber());
+            }
+            rows = Math.max(rows, seat.rowNumber());
+            width = Math.max(width, seat.seatNumber());
+        }
+        
+        ShowSeat.SeatCategory[] categories = new ShowSeat.SeatCategory[rows * width];
+        byte[] offsets = new byte[rows * width];
+        for (SeatPosition seat : seats) {
+            int index = (seat.rowNumber() - 1) * width + seat.seatNumber() - 1;
+            categories[index] = seat.category();
+            offsets[index] = (byte) seat.offset();
+        }
+        return new SeatLayoutTemplate(new SeatGrid(rows, width, categories), offsets);
+    }
+    
+    public SeatGrid getGrid() {
+        return grid;
+    }
+    
+    /**
+     * @return horizontal shift of the seat in half-seat widths, 0 for an unshifted seat
+     */
+    public int offsetOf(long seatId) {
+        return offsets[(int) (seatId - 1)];
+    }
+    
+    public String getLayout() {
+        return layout;
+    }
+    
+    /**
+     * @return quoted ETag of the map; equal for maps with the same dimensions, seats, categories and offsets
+     */
+    public String getTag() {
+        return tag;
+    }
+    
+    private static String digest(SeatGrid grid, String layout, byte[] offsets) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update((grid.getRows() + "x" + grid.getSeatsPerRow() + ":" + layout).getBytes(StandardCharsets.US_ASCII));
+            sha.update(offsets);
+            return "\"t-" + HexFormat.of().formatHex(sha.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,107 +1,255 @@
 package com.loylty.moviebooking.service;
 
+import com.loylty.moviebooking.dto.SeatChangeDto;
+import com.loylty.moviebooking.dto.SeatChangesResponse;
 import com.loylty.moviebooking.dto.SeatDto;
-import com.loylty.moviebooking.entity.Seat;
+import com.loylty.moviebooking.dto.SeatMapTemplateDto;
+import com.loylty.moviebooking.entity.Screen;
 import com.loylty.moviebooking.entity.Show;
-import com.loylty.moviebooking.repository.BookingSeatRepository;
+import com.loylty.moviebooking.entity.ShowSeat;
+import com.loylty.moviebooking.repository.ScreenRepository;
 import com.loylty.moviebooking.repository.SeatRepository;
 import com.loylty.moviebooking.repository.ShowRepository;
+import com.loylty.moviebooking.cache.SeatGrid;
+import com.loylty.moviebooking.cache.SeatLockMetrics;
 import com.loylty.moviebooking.cache.SeatLockService;
+import com.loylty.moviebooking.cache.ShowSeatSnapshot;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class SeatService {
     
     private final SeatRepository seatRepository;
     private final ShowRepository showRepository;
-    private final BookingSeatRepository bookingSeatRepository;
+    private final ScreenRepository screenRepository;
     private final SeatLockService seatLockService;
+    private final SeatLockMetrics seatLockMetrics;
     
-    public List<SeatDto> getSeatLayout(Long showId) {
+    // Key: screenId, Value: seat map of the screen, loaded on first use
+    private final Map<Long, SeatLayoutTemplate> templates = new ConcurrentHashMap<>();
+    
+    // Key: showId, Value: screenId; a show never changes screen, so each is looked up once
+    private final Map<Long, Long> showScreens = new ConcurrentHashMap<>();
+    
+    // Format byte in front of an encoded status vector, bumped on incompatible changes
+    private static final byte STATUS_FORMAT = 1;
+    
+    /**
+     * Seat layout of the show as one DTO per seat.
+     * @param userId requester; lock holder and expiry are only filled in on the requester's own locks
+     */
+    public List<SeatDto> getSeatLayout(Long showId, String userId) {
+        long start = System.nanoTime();
         try {
-            System.out.println("=== DEBUG: getSeatLayout called for showId: " + showId);
+            SeatLayoutTemplate template = getLayoutTemplate(showId);
+            SeatGrid grid = template.getGrid();
             
-            // Validate show exists
-            showRepository.findById(showId)
-                    .orElseThrow(() -> new RuntimeException("Show not found with id: " + showId));
-            
-            System.out.println("Show exists, proceeding with seat layout generation");
-            
-            // Generate a standard 10x12 seat layout (120 seats)
-            // This matches the seat IDs that work with the locking system
-            Set<Long> bookedSeatIds;
-            try {
-                bookedSeatIds = bookingSeatRepository.findBookedSeatIdsByShowId(showId);
-                System.out.println("Booked seat IDs: " + bookedSeatIds);
-            } catch (Exception e) {
-                System.out.println("Error getting booked seats: " + e.getMessage());
-                bookedSeatIds = java.util.Collections.emptySet();
-            }
+            // Every seat is read from one immutable copy of the show's state, shared with other readers
+            ShowSeatSnapshot snapshot = seatLockService.getShowSnapshot(showId);
+            long now = System.currentTimeMillis();
             
-            Set<Long> lockedSeatIds;
-            try {
-                lockedSeatIds = seatLockService.getLockedSeats(showId);
-                System.out.println("Locked seat IDs: " + lockedSeatIds);
-            } catch (Exception e) {
-                System.out.println("Error getting locked seats: " + e.getMessage());
-                lockedSeatIds = java.util.Collections.emptySet();
-            }
-            
-            List<SeatDto> seatLayout = new java.util.ArrayList<>();
-            
-            // Generate seats 1-120 (10 rows x 12 seats)
-            for (int row = 1; row <= 10; row++) {
-                for (int seatNum = 1; seatNum <= 12; seatNum++) {
-                    long seatId = ((row - 1) * 12) + seatNum;
-                    
-                    String status;
-                    String lockUserId = null;
-                    java.time.LocalDateTime lockExpiryTime = null;
-                    
-                    if (bookedSeatIds.contains(seatId)) {
-                        status = "BOOKED";
-                    } else if (lockedSeatIds.contains(seatId)) {
-                        status = "LOCKED";
-                        try {
-                            SeatLockService.SeatLockInfo lockInfo = seatLockService.getSeatLockInfo(showId, seatId);
-                            if (lockInfo != null) {
-                                lockUserId = lockInfo.getUserId();
-                                lockExpiryTime = lockInfo.getExpiryTime();
-                            }
-                        } catch (Exception e) {
-                            System.out.println("Error getting lock info for seat " + seatId + ": " + e.getMessage());
-                        }
-                    } else {
-                        status = "AVAILABLE";
+            List<SeatDto> seatLayout = new ArrayList<>(grid.getSeatCount());
+            for (long seatId = 1; seatId <= grid.getMaxSeatId(); seatId++) {
+                if (!grid.isSeat(seatId)) {
+                    continue;
+                }
+                
+                ShowSeat.SeatStatus status = snapshot.statusOf(seatId, now);
+                String lockUserId = null;
+                java.time.LocalDateTime lockExpiryTime = null;
+                if (status == ShowSeat.SeatStatus.LOCKED && userId != null) {
+                    SeatLockService.SeatLockInfo lockInfo = snapshot.lockInfo(seatId, now);
+                    if (lockInfo != null && userId.equals(lockInfo.getUserId())) {
+                        lockUserId = lockInfo.getUserId();
+                        lockExpiryTime = lockInfo.getExpiryTime();
                     }
-                    
-                    // Determine seat category (last 2 rows are premium)
-                    String category = (row >= 9) ? "PREMIUM" : "REGULAR";
-                    
-                    seatLayout.add(new SeatDto(
-                            seatId,
-                            row,
-                            seatNum,
-                            category,
-                            status,
-                            lockUserId,
-                            lockExpiryTime
-                    ));
                 }
+                
+                // Category and position strings come from the template and enum constants, nothing is formatted
+                seatLayout.add(new SeatDto(
+                        seatId,
+                        grid.rowOf(seatId),
+                        grid.seatNumberOf(seatId),
+                        grid.categoryOf(seatId).name(),
+                        status.name(),
+                        lockUserId,
+                        lockExpiryTime,
+                        template.offsetOf(seatId)
+                ));
             }
             
-            System.out.println("Generated seat layout with " + seatLayout.size() + " seats");
+            seatLockMetrics.recordSeatLayout(System.nanoTime() - start);
             return seatLayout;
         } catch (Exception e) {
-            System.out.println("ERROR in getSeatLayout: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Failed to get seat layout for show {}", showId, e);
             throw new RuntimeException("Failed to get seat layout: " + e.getMessage(), e);
         }
     }
+    
+    /**
+     * Seat map of the show's screen; seat IDs and categories in requests for the show refer to it
+     */
+    public SeatLayoutTemplate getLayoutTemplate(Long showId) {
+        Long screenId = showScreens.get(showId);
+        if (screenId == null) {
+            Show show = showRepository.findWithScreenById(showId)
+                    .orElseThrow(() -> new RuntimeException("Show not found with id: " + showId));
+            screenId = show.getScreen().getId();
+            showScreens.put(showId, screenId);
+        }
+        
+        SeatLayoutTemplate template = templates.get(screenId);
+        if (template == null) {
+            template = loadTemplate(screenId);
+            SeatLayoutTemplate loaded = templates.putIfAbsent(screenId, template);
+            if (loaded != null) {
+                template = loaded;
+            }
+        }
+        return template;
+    }
+    
+    /**
+     * Static part of the show's seat map; it only changes when the screen's layout is reloaded
+     */
+    public SeatMapTemplateDto getSeatMapTemplate(Long showId) {
+        SeatLayoutTemplate template = getLayoutTemplate(showId);
+        SeatGrid grid = template.getGrid();
+        List<String> categories = new ArrayList<>();
+        for (ShowSeat.SeatCategory category : ShowSeat.SeatCategory.values()) {
+            categories.add(category.name());
+        }
+        Map<Long, Integer> offsets = new LinkedHashMap<>();
+        for (long seatId = 1; seatId <= grid.getMaxSeatId(); seatId++) {
+            if (grid.isSeat(seatId) && template.offsetOf(seatId) != 0) {
+                offsets.put(seatId, template.offsetOf(seatId));
+            }
+        }
+        return new SeatMapTemplateDto(grid.getRows(), grid.getSeatsPerRow(), categories, template.getLayout(), offsets);
+    }
+    
+    public SeatLockService.SeatStatusVector getSeatStatusVector(Long showId, String userId) {
+        return seatLockService.getSeatStatusVector(showId, getSeatGrid(showId).getMaxSeatId(), userId);
+    }
+    
+    /**
+     * ETag the show's status vector would be sent with now, found without packing it
+     * @return the quoted tag, or null if the lock store keeps no versions
+     */
+    public String getSeatStatusTag(Long showId) {
+        SeatLockService.SeatStatusVersion version = seatLockService.getSeatStatusVersion(showId);
+        if (version == null) {
+            return null;
+        }
+        return statusTag(version.epoch(), version.version(), getSeatGrid(showId).getMaxSeatId());
+    }
+    
+    /**
+     * Strong ETag of a status vector. A versioned vector is identified by its
+     * epoch, version and seat count; an unversioned one by a digest of its statuses.
+     */
+    public static String statusTag(SeatLockService.SeatStatusVector vector) {
+        if (vector.version() >= 0) {
+            return statusTag(vector.epoch(), vector.version(), vector.seatCount());
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(vector.statuses());
+            return "\"d-" + vector.seatCount() + "-" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static String statusTag(long epoch, long version, int seatCount) {
+        return "\"v-" + epoch + "-" + version + "-" + seatCount + "\"";
+    }
+    
+    /**
+     * Binary form of a status vector: a format byte, the epoch and version as
+     * 8-byte big-endian integers, the seat count as a 2-byte one, and then the
+     * packed statuses. Epoch and version can be sent to the changes feed to
+     * follow the vector with deltas.
+     */
+    public static byte[] encode(SeatLockService.SeatStatusVector vector) {
+        byte[] statuses = vector.statuses();
+        return ByteBuffer.allocate(19 + statuses.length)
+                .put(STATUS_FORMAT)
+                .putLong(vector.epoch())
+                .putLong(vector.version())
+                .putShort((short) vector.seatCount())
+                .put(statuses)
+                .array();
+    }
+    
+    public SeatGrid getSeatGrid(Long showId) {
+        return getLayoutTemplate(showId).getGrid();
+    }
+    
+    /**
+     * Drop the seat map of the show's screen, so it is loaded again on next use
+     * @return the shows known to be on the screen, including the given one
+     */
+    public Set<Long> reloadLayout(Long showId) {
+        Long screenId = showScreens.get(showId);
+        if (screenId == null) {
+            return Set.of(showId);
+        }
+        
+        templates.remove(screenId);
+        Set<Long> shows = new HashSet<>();
+        showScreens.forEach((show, screen) -> {
+            if (screen.equals(screenId)) {
+                shows.add(show);
+            }
+        });
+        return shows;
+    }
+    
+    private SeatLayoutTemplate loadTemplate(Long screenId) {
+        Screen screen = screenRepository.findById(screenId)
+                .orElseThrow(() -> new RuntimeException("Screen not found with id: " + screenId));
+        List<SeatLayoutTemplate.SeatPosition> seats = new ArrayList<>();
+        for (Object[] row : seatRepository.findLayoutByScreenId(screenId)) {
+            seats.add(new SeatLayoutTemplate.SeatPosition(
+                    ((Number) row[0]).intValue(),
+                    ((Number) row[1]).intValue(),
+                    ShowSeat.SeatCategory.valueOf((String) row[2]),
+                    row[3] != null ? ((Number) row[3]).intValue() : 0));
+        }
+        return SeatLayoutTemplate.of(screen.getTotalRows(), screen.getSeatsPerRow(), seats);
+    }
+    
+    /**
+     * Seats whose state changed since the client's version, answered from the
+     * lock service alone. Clients start with a snapshot (no version) and then
+     * apply the changes of each call to the seat map they hold.
+     */
+    public SeatChangesResponse getSeatChanges(Long showId, long epoch, long sinceVersion, String userId) {
+        SeatLockService.SeatChanges changes = seatLockService.getSeatChanges(showId, epoch, sinceVersion, userId);
+        return toResponse(showId, changes.snapshot() ? null : sinceVersion, changes);
+    }
+    
+    static SeatChangesResponse toResponse(Long showId, Long since, SeatLockService.SeatChanges changes) {
+        List<SeatChangeDto> seats = new ArrayList<>(changes.seats().size());
+        for (SeatLockService.SeatChange seat : changes.seats()) {
+            seats.add(new SeatChangeDto(seat.seatId(), seat.status().name(), seat.heldByUser()));
+        }
+        return new SeatChangesResponse(showId, changes.epoch(), since, changes.version(), changes.snapshot(), seats);
+    }
 }
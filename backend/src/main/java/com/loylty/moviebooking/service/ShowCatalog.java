@@ -0,0 +1,402 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.dto.CinemaDto;
+import com.loylty.moviebooking.dto.MovieDto;
+import com.loylty.moviebooking.dto.ShowDto;
+import com.loylty.moviebooking.entity.Cinema;
+import com.loylty.moviebooking.entity.Movie;
+import com.loylty.moviebooking.entity.Show;
+import com.loylty.moviebooking.repository.ShowRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of upcoming shows by city, movie and cinema, each level
+ * sorted by show time. The index is immutable and swapped as a whole, so
+ * reads take no lock; loads and updates are serialized on the monitor.
+ * Started shows are skipped by readers and dropped by the next full load.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ShowCatalog {
+    
+    private static final Comparator<Entry> BY_SHOW_TIME =
+            Comparator.comparing((Entry entry) -> entry.show().getShowTime()).thenComparing(entry -> entry.show().getId());
+    
+    private static final Comparator<CinemaShows> BY_CINEMA_NAME =
+            Comparator.comparing((CinemaShows cinema) -> cinema.cinema().getName(), String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(cinema -> cinema.cinema().getId());
+    
+    private final ShowRepository showRepository;
+    
+    // Null until the first load
+    private volatile Index index;
+    
+    // Single-show updates run here, outside the persistence context of the transaction that changed the show
+    private ExecutorService updateExecutor;
+    
+    @PostConstruct
+    public void init() {
+        updateExecutor = Executors.newSingleThreadExecutor();
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        updateExecutor.shutdown();
+    }
+    
+    /**
+     * Upcoming shows in the city, by show time
+     */
+    public List<ShowDto> getShowsByCity(Long cityId) {
+        CityShows city = index().cities().get(cityId);
+        return city != null ? upcoming(city.shows(), LocalDateTime.now()) : List.of();
+    }
+    
+    /**
+     * Upcoming shows of the movie in the city, by show time
+     */
+    public List<ShowDto> getShowsByMovieAndCity(Long movieId, Long cityId) {
+        CityShows city = index().cities().get(cityId);
+        MovieShows movie = city != null ? city.movies().get(movieId) : null;
+        return movie != null ? upcoming(movie.shows(), LocalDateTime.now()) : List.of();
+    }
+    
+    /**
+     * Movies with an upcoming show in the city, in the order of their first show
+     */
+    public List<MovieDto> getMoviesByCity(Long cityId) {
+        CityShows city = index().cities().get(cityId);
+        if (city == null) {
+            return List.of();
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<MovieDto> movies = new ArrayList<>(city.movies().size());
+        for (MovieShows movie : city.movies().values()) {
+            if (movie.lastShowTime().isAfter(now)) {
+                movies.add(movie.movie());
+            }
+        }
+        return movies;
+    }
+    
+    /**
+     * Upcoming shows of the movie in the city on one day, grouped by cinema
+     * in cinema name order, each cinema's shows by show time. Cinemas with no
+     * show left that day are left out.
+     * @param date day of the show times, or null for the first day with an upcoming show
+     */
+    public Showtimes getShowtimes(Long movieId, Long cityId, LocalDate date) {
+        Index current = index();
+        CityShows city = current.cities().get(cityId);
+        MovieShows movie = city != null ? city.movies().get(movieId) : null;
+        if (movie == null) {
+            return new Showtimes(date, List.of(), List.of());
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<LocalDate> dates = new ArrayList<>();
+        for (ShowDto show : upcoming(movie.shows(), now)) {
+            LocalDate day = show.getShowTime().toLocalDate();
+            if (dates.isEmpty() || !dates.get(dates.size() - 1).equals(day)) {
+                dates.add(day);
+            }
+        }
+        LocalDate day = date != null ? date : (dates.isEmpty() ? null : dates.get(0));
+        // Only days with an upcoming show are cached, so arbitrary dates in requests cannot grow the index
+        if (day == null || !dates.contains(day)) {
+            return new Showtimes(day, dates, List.of());
+        }
+        
+        List<CinemaShows> cinemas = new ArrayList<>();
+        for (CinemaShows cinema : current.days().computeIfAbsent(new DayKey(movieId, cityId, day),
+                key -> showsOnDay(movie, day))) {
+            List<ShowDto> shows = upcoming(cinema.shows(), now);
+            if (shows.size() == cinema.shows().size()) {
+                cinemas.add(cinema);
+            } else if (!shows.isEmpty()) {
+                cinemas.add(new CinemaShows(cinema.cinema(), shows));
+            }
+        }
+        return new Showtimes(day, dates, cinemas);
+    }
+    
+    /**
+     * Load the whole catalog again
+     * @return number of upcoming shows loaded
+     */
+    @Scheduled(fixedDelayString = "${catalog.refresh-interval-minutes:60}",
+               initialDelayString = "${catalog.refresh-interval-minutes:60}", timeUnit = TimeUnit.MINUTES)
+    public synchronized int reload() {
+        long start = System.nanoTime();
+        Map<Long, MovieDto> movies = new HashMap<>();
+        Map<Long, CinemaDto> cinemas = new HashMap<>();
+        List<Entry> entries = new ArrayList<>();
+        for (Show show : showRepository.findCatalogShowsAfter(LocalDateTime.now())) {
+            entries.add(toEntry(show, movies, cinemas));
+        }
+        index = Index.of(entries);
+        log.info("Loaded show catalog: {} shows in {} cities in {} ms",
+                entries.size(), index.cities().size(), (System.nanoTime() - start) / 1_000_000);
+        return entries.size();
+    }
+    
+    /**
+     * Read the show back into the catalog, or drop it if it no longer exists.
+     * Called once the transaction that changed it has committed; the update
+     * itself happens shortly after, on the catalog's own thread.
+     */
+    public void showChanged(Long showId) {
+        updateExecutor.execute(() -> {
+            try {
+                refreshShow(showId);
+            } catch (Exception e) {
+                // The next full load picks the show up
+                log.error("Failed to update show {} in the catalog: {}", showId, e.getMessage());
+            }
+        });
+    }
+    
+    private synchronized void refreshShow(Long showId) {
+        Index current = index;
+        if (current == null) {
+            // Not loaded yet; the first load reads the show anyway
+            return;
+        }
+        Optional<Show> show = showRepository.findCatalogShowById(showId);
+        Entry entry = show.map(s -> toEntry(s, new HashMap<>(), new HashMap<>())).orElse(null);
+        index = current.with(showId, entry);
+    }
+    
+    private Index index() {
+        Index current = index;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (index == null) {
+                reload();
+            }
+            return index;
+        }
+    }
+    
+    /**
+     * @return the shows after the given time, as a view of the sorted list
+     */
+    private static List<ShowDto> upcoming(List<ShowDto> shows, LocalDateTime now) {
+        return shows.subList(firstAfter(shows, now), shows.size());
+    }
+    
+    /**
+     * Shows of each cinema that start on the day, including those that have started
+     */
+    private static List<CinemaShows> showsOnDay(MovieShows movie, LocalDate day) {
+        // Just before the day starts, so shows at midnight are on it
+        LocalDateTime start = day.atStartOfDay().minusNanos(1);
+        LocalDateTime end = day.plusDays(1).atStartOfDay().minusNanos(1);
+        List<CinemaShows> cinemas = new ArrayList<>();
+        for (CinemaShows cinema : movie.cinemas()) {
+            int from = firstAfter(cinema.shows(), start);
+            int to = firstAfter(cinema.shows(), end);
+            if (from < to) {
+                cinemas.add(new CinemaShows(cinema.cinema(), cinema.shows().subList(from, to)));
+            }
+        }
+        cinemas.sort(BY_CINEMA_NAME);
+        return List.copyOf(cinemas);
+    }
+    
+    /**
+     * @return index of the first show after the given time in the sorted list
+     */
+    private static int firstAfter(List<ShowDto> shows, LocalDateTime time) {
+        int low = 0;
+        int high = shows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (shows.get(mid).getShowTime().isAfter(time)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * DTOs of the show; movies and cinemas already converted in this load are shared
+     */
+    private static Entry toEntry(Show show, Map<Long, MovieDto> movies, Map<Long, CinemaDto> cinemas) {
+        Movie movie = show.getMovie();
+        MovieDto movieDto = movies.computeIfAbsent(movie.getId(), id -> new MovieDto(
+                movie.getId(),
+                movie.getTitle(),
+                movie.getDescription(),
+                movie.getDurationMinutes(),
+                movie.getLanguage(),
+                movie.getGenre(),
+                movie.getRating(),
+                movie.getReleaseDate()
+        ));
+        
+        Cinema cinema = show.getScreen().getCinema();
+        CinemaDto cinemaDto = cinemas.computeIfAbsent(cinema.getId(), id -> new CinemaDto(
+                cinema.getId(),
+                cinema.getName(),
+                cinema.getAddress(),
+                cinema.getTheaterChain().getName()
+        ));
+        
+        ShowDto showDto = new ShowDto(
+                show.getId(),
+                movieDto,
+                cinemaDto,
+                show.getScreen().getName(),
+                show.getShowTime(),
+                show.getEndTime(),
+                show.getBasePrice(),
+                show.getPremiumPrice()
+        );
+        return new Entry(cinema.getCity().getId(), showDto);
+    }
+    
+    private record Entry(Long cityId, ShowDto show) {
+    }
+    
+    private record DayKey(Long movieId, Long cityId, LocalDate date) {
+    }
+    
+    /**
+     * Shows of a movie in a city on one day, grouped by cinema
+     * @param date the day, null if the movie has no upcoming show in the city
+     * @param dates every day the movie has an upcoming show in the city on
+     */
+    record Showtimes(LocalDate date, List<LocalDate> dates, List<CinemaShows> cinemas) {
+    }
+    
+    /**
+     * Shows of a movie at one cinema of a city
+     */
+    record CinemaShows(CinemaDto cinema, List<ShowDto> shows) {
+    }
+    
+    /**
+     * Shows of a movie in a city, also grouped by cinema in the order of each cinema's first show
+     */
+    record MovieShows(MovieDto movie, List<ShowDto> shows, List<CinemaShows> cinemas) {
+        
+        LocalDateTime lastShowTime() {
+            return shows.get(shows.size() - 1).getShowTime();
+        }
+    }
+    
+    /**
+     * Shows of a city, keyed by movie in the order of each movie's first show
+     */
+    private record CityShows(List<Entry> entries, List<ShowDto> shows, Map<Long, MovieShows> movies) {
+        
+        static CityShows of(List<Entry> entries) {
+            List<Entry> sorted = new ArrayList<>(entries);
+            sorted.sort(BY_SHOW_TIME);
+            
+            List<ShowDto> shows = new ArrayList<>(sorted.size());
+            Map<Long, List<ShowDto>> showsByMovie = new LinkedHashMap<>();
+            Map<Long, Map<Long, List<ShowDto>>> showsByMovieAndCinema = new HashMap<>();
+            for (Entry entry : sorted) {
+                ShowDto show = entry.show();
+                shows.add(show);
+                showsByMovie.computeIfAbsent(show.getMovie().getId(), id -> new ArrayList<>()).add(show);
+                showsByMovieAndCinema.computeIfAbsent(show.getMovie().getId(), id -> new LinkedHashMap<>())
+                        .computeIfAbsent(show.getCinema().getId(), id -> new ArrayList<>()).add(show);
+            }
+            
+            Map<Long, MovieShows> movies = new LinkedHashMap<>();
+            showsByMovie.forEach((movieId, movieShows) -> {
+                List<CinemaShows> cinemas = new ArrayList<>();
+                for (List<ShowDto> cinemaShows : showsByMovieAndCinema.get(movieId).values()) {
+                    cinemas.add(new CinemaShows(cinemaShows.get(0).getCinema(), List.copyOf(cinemaShows)));
+                }
+                movies.put(movieId, new MovieShows(movieShows.get(0).getMovie(), List.copyOf(movieShows),
+                        List.copyOf(cinemas)));
+            });
+            return new CityShows(List.copyOf(sorted), List.copyOf(shows), movies);
+        }
+    }
+    
+    /**
+     * @param days showtimes by cinema per movie, city and day, filled in as they are asked for,
+     *             for days with an upcoming show only
+     */
+    private record Index(Map<Long, Entry> shows, Map<Long, CityShows> cities, Map<DayKey, List<CinemaShows>> days) {
+        
+        static Index of(List<Entry> entries) {
+            Map<Long, Entry> shows = new HashMap<>();
+            Map<Long, List<Entry>> entriesByCity = new HashMap<>();
+            for (Entry entry : entries) {
+                shows.put(entry.show().getId(), entry);
+                entriesByCity.computeIfAbsent(entry.cityId(), id -> new ArrayList<>()).add(entry);
+            }
+            Map<Long, CityShows> cities = new HashMap<>();
+            entriesByCity.forEach((cityId, cityEntries) -> cities.put(cityId, CityShows.of(cityEntries)));
+            return new Index(shows, cities, new ConcurrentHashMap<>());
+        }
+        
+        /**
+         * Copy of the index with the show replaced, rebuilding only the cities it was and is in
+         * @param entry new state of the show, or null to drop it
+         */
+        Index with(Long showId, Entry entry) {
+            Map<Long, Entry> shows = new HashMap<>(this.shows);
+            Entry previous = entry != null ? shows.put(showId, entry) : shows.remove(showId);
+            Map<Long, CityShows> cities = new HashMap<>(this.cities);
+            if (previous != null) {
+                rebuildCity(cities, previous.cityId(), showId, null);
+            }
+            if (entry != null) {
+                rebuildCity(cities, entry.cityId(), showId, entry);
+            }
+            return new Index(shows, cities, new ConcurrentHashMap<>());
+        }
+        
+        private static void rebuildCity(Map<Long, CityShows> cities, Long cityId, Long showId, Entry entry) {
+            List<Entry> entries = new ArrayList<>();
+            CityShows city = cities.get(cityId);
+            if (city != null) {
+                for (Entry existing : city.entries()) {
+                    if (!existing.show().getId().equals(showId)) {
+                        entries.add(existing);
+                    }
+                }
+            }
+            if (entry != null) {
+                entries.add(entry);
+            }
+            if (entries.isEmpty()) {
+                cities.remove(cityId);
+            } else {
+                cities.put(cityId, CityShows.of(entries));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.entity.Show;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Entity listener on Show that hands every created, updated or deleted show
+ * to the ShowCatalog once the transaction commits, so the catalog never
+ * reads a change that is rolled back. Outside a transaction the change is
+ * handed over at once.
+ *
+ * Like ShowPriceInvalidator, the catalog is looked up on use, since Hibernate
+ * creates its listeners before the repositories exist.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShowCatalogUpdater {
+    
+    private final ObjectProvider<ShowCatalog> showCatalog;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void showChanged(Show show) {
+        Long showId = show.getId();
+        ShowCatalog catalog = showCatalog.getObject();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    catalog.showChanged(showId);
+                }
+            });
+        } else {
+            catalog.showChanged(showId);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.entity.Show;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Entity listener on Show that drops the show's cached prices when it is
+ * updated or deleted. The prices are dropped again once the transaction
+ * commits, since a request in between may have reloaded the old ones.
+ *
+ * Hibernate creates its listeners while the entity manager factory is built,
+ * before the repositories behind ShowPricingService exist, so the service is
+ * looked up on use.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShowPriceInvalidator {
+    
+    private final ObjectProvider<ShowPricingService> showPricingService;
+    
+    @PostUpdate
+    @PostRemove
+    public void showChanged(Show show) {
+        Long showId = show.getId();
+        ShowPricingService pricing = showPricingService.getObject();
+        pricing.invalidate(showId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pricing.invalidate(showId);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.cache.SeatGrid;
+import com.loylty.moviebooking.entity.Show;
+import com.loylty.moviebooking.entity.ShowSeat;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seat prices of one show: a price per seat category, in paise, and the seat
+ * map that tells each seat's category. Pricing a seat is an array lookup and
+ * a division, and totals are summed as longs, so a booking of any size is
+ * priced without BigDecimal arithmetic or database access.
+ *
+ * REGULAR seats cost the show's base price and PREMIUM seats its premium
+ * price. VIP seats cost the premium price plus a configurable surcharge; no
+ * current seat map has VIP rows.
+ *
+ * Instances are immutable; a price change replaces the table.
+ */
+public final class ShowPriceTable {
+    
+    private static final int SCALE = 2;
+    
+    private final SeatGrid grid;
+    private final long[] pricesByCategory;
+    
+    private ShowPriceTable(SeatGrid grid, long[] pricesByCategory) {
+        this.grid = grid;
+        this.pricesByCategory = pricesByCategory;
+    }
+    
+    static ShowPriceTable of(Show show, SeatGrid grid, int vipSurchargePercent) {
+        long regular = toPaise(show.getBasePrice());
+        long premium = toPaise(show.getPremiumPrice());
+        long vip = toPaise(show.getPremiumPrice().multiply(BigDecimal.valueOf(100L + vipSurchargePercent))
+                .movePointLeft(2));
+        
+        long[] prices = new long[ShowSeat.SeatCategory.values().length];
+        prices[ShowSeat.SeatCategory.REGULAR.ordinal()] = regular;
+        prices[ShowSeat.SeatCategory.PREMIUM.ordinal()] = premium;
+        prices[ShowSeat.SeatCategory.VIP.ordinal()] = vip;
+        return new ShowPriceTable(grid, prices);
+    }
+    
+    /**
+     * @throws IllegalArgumentException if a seat is not on the show's seat map
+     */
+    public BigDecimal seatPrice(long seatId) {
+        return BigDecimal.valueOf(paise(seatId), SCALE);
+    }
+    
+    /**
+     * @throws IllegalArgumentException if a seat is not on the show's seat map
+     */
+    public List<BigDecimal> seatPrices(List<Long> seatIds) {
+        List<BigDecimal> prices = new ArrayList<>(seatIds.size());
+        for (Long seatId : seatIds) {
+            prices.add(seatPrice(seatId));
+        }
+        return prices;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if a seat is not on the show's seat map
+     */
+    public BigDecimal total(List<Long> seatIds) {
+        long total = 0;
+        for (Long seatId : seatIds) {
+            total += paise(seatId);
+        }
+        return BigDecimal.valueOf(total, SCALE);
+    }
+    
+    private long paise(long seatId) {
+        return pricesByCategory[grid.categoryOf(seatId).ordinal()];
+    }
+    
+    private static long toPaise(BigDecimal price) {
+        return price.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,71 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.entity.Show;
+import com.loylty.moviebooking.repository.ShowRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.persistence.EntityNotFoundException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a ShowPriceTable per show, so pricing a booking needs no database
+ * access. A show's table is loaded on first use and dropped whenever the show
+ * is updated through JPA (see ShowPriceInvalidator); prices changed directly
+ * in the database, and seat categories changed on the screen's seat map, are
+ * picked up after a reload through the internal API.
+ * Each instance keeps its own tables, so with several instances the reload
+ * has to reach all of them.
+ */
+@Service
+@RequiredArgsConstructor
+public class ShowPricingService {
+    
+    private final ShowRepository showRepository;
+    private final SeatService seatService;
+    
+    @Value("${pricing.vip-surcharge-percent:0}")
+    private int vipSurchargePercent;
+    
+    private final Map<Long, ShowPriceTable> tables = new ConcurrentHashMap<>();
+    // Bumped by every invalidation, so a table loaded while one ran is not kept
+    private final AtomicLong invalidations = new AtomicLong();
+    
+    public ShowPriceTable getPriceTable(Long showId) {
+        ShowPriceTable table = tables.get(showId);
+        if (table != null) {
+            return table;
+        }
+        
+        long seen = invalidations.get();
+        Show show = showRepository.findById(showId)
+                .orElseThrow(() -> new EntityNotFoundException("Show not found: " + showId));
+        table = ShowPriceTable.of(show, seatService.getSeatGrid(showId), vipSurchargePercent);
+        tables.put(showId, table);
+        if (invalidations.get() != seen) {
+            tables.remove(showId, table);
+        }
+        return table;
+    }
+    
+    /**
+     * Total price of the seats, each at the price of its category
+     * @throws IllegalArgumentException if a seat is not on the show's seat map
+     */
+    public BigDecimal calculateTotalPrice(Long showId, List<Long> seatIds) {
+        return getPriceTable(showId).total(seatIds);
+    }
+    
+    /**
+     * Drop the show's prices; they are loaded again on next use
+     */
+    public void invalidate(Long showId) {
+        invalidations.incrementAndGet();
+        tables.remove(showId);
+    }
+}
@@ -4,6 +4,7 @@ import com.loylty.moviebooking.entity.Screen;
 import com.loylty.moviebooking.entity.Show;
 import com.loylty.moviebooking.entity.ShowSeat;
 import com.loylty.moviebooking.repository.ScreenRepository;
+import com.loylty.moviebooking.repository.SeatRepository;
 import com.loylty.moviebooking.repository.ShowRepository;
 import com.loylty.moviebooking.repository.ShowSeatRepository;
 import lombok.RequiredArgsConstructor;
@@ -25,6 +26,7 @@ public class ShowSeatService {
     private final ShowSeatRepository showSeatRepository;
     private final ShowRepository showRepository;
     private final ScreenRepository screenRepository;
+    private final SeatRepository seatRepository;
     
     /**
      * Initialize seating plan for a new show
@@ -47,25 +49,19 @@ public class ShowSeatService {
         
         List<ShowSeat> showSeats = new ArrayList<>();
         
-        // Create seats based on screen configuration
-        for (int row = 1; row <= screen.getTotalRows(); row++) {
-            for (int seatNum = 1; seatNum <= screen.getSeatsPerRow(); seatNum++) {
-                ShowSeat.SeatCategory category = determineSeatCategory(row, screen.getTotalRows());
-                BigDecimal price = category == ShowSeat.SeatCategory.PREMIUM ? 
-                    show.getPremiumPrice() : show.getBasePrice();
-                
-                ShowSeat showSeat = ShowSeat.builder()
-                    .show(show)
-                    .rowNumber(row)
-                    .seatNumber(seatNum)
-                    .category(category)
-                    .status(ShowSeat.SeatStatus.AVAILABLE)
-                    .price(price)
-                    .createdAt(LocalDateTime.now())
-                    .updatedAt(LocalDateTime.now())
-                    .build();
-                
-                showSeats.add(showSeat);
+        // One row per seat of the screen's seat map, so show_seats positions match the seat IDs of SeatService
+        List<Object[]> layout = seatRepository.findLayoutByScreenId(screen.getId());
+        if (!layout.isEmpty()) {
+            for (Object[] seat : layout) {
+                showSeats.add(newShowSeat(show, ((Number) seat[0]).intValue(), ((Number) seat[1]).intValue(),
+                        ShowSeat.SeatCategory.valueOf((String) seat[2])));
+            }
+        } else {
+            // Create seats based on screen configuration
+            for (int row = 1; row <= screen.getTotalRows(); row++) {
+                for (int seatNum = 1; seatNum <= screen.getSeatsPerRow(); seatNum++) {
+                    showSeats.add(newShowSeat(show, row, seatNum, determineSeatCategory(row, screen.getTotalRows())));
+                }
             }
         }
         
@@ -181,16 +177,19 @@ public class ShowSeatService {
         return showSeatRepository.countByShowIdAndStatus(showId, ShowSeat.SeatStatus.BOOKED);
     }
     
-    /**
-     * Calculate total price for selected seats
-     */
-    public BigDecimal calculateTotalPrice(Long showId, List<Long> seatIds) {
-        Show show = showRepository.findById(showId)
-                .orElseThrow(() -> new EntityNotFoundException("Show not found: " + showId));
-        
-        // For simplicity, use base price for all seats
-        // In a real system, you'd check seat categories
-        return show.getBasePrice().multiply(BigDecimal.valueOf(seatIds.size()));
+    private ShowSeat newShowSeat(Show show, int row, int seatNum, ShowSeat.SeatCategory category) {
+        BigDecimal price = category == ShowSeat.SeatCategory.REGULAR ?
+            show.getBasePrice() : show.getPremiumPrice();
+        return ShowSeat.builder()
+            .show(show)
+            .rowNumber(row)
+            .seatNumber(seatNum)
+            .category(category)
+            .status(ShowSeat.SeatStatus.AVAILABLE)
+            .price(price)
+            .createdAt(LocalDateTime.now())
+            .updatedAt(LocalDateTime.now())
+            .build();
     }
     
     /**
@@ -1,9 +1,14 @@
 package com.loylty.moviebooking.service;
 
+import com.loylty.moviebooking.cache.SeatLockService;
+import com.loylty.moviebooking.cache.ShowSeatSnapshot;
 import com.loylty.moviebooking.dto.ShowDto;
 import com.loylty.moviebooking.dto.CinemaDto;
+import com.loylty.moviebooking.dto.CinemaShowtimesDto;
 import com.loylty.moviebooking.dto.MovieDto;
 import com.loylty.moviebooking.dto.SeatDto;
+import com.loylty.moviebooking.dto.ShowtimeDto;
+import com.loylty.moviebooking.dto.ShowtimesResponse;
 import com.loylty.moviebooking.entity.Show;
 import com.loylty.moviebooking.entity.ShowSeat;
 import com.loylty.moviebooking.repository.ShowRepository;
@@ -12,9 +17,9 @@ import com.loylty.moviebooking.repository.ShowSeatRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +29,9 @@ public class ShowService {
     private final ShowRepository showRepository;
     private final BookingSeatRepository bookingSeatRepository;
     private final ShowSeatRepository showSeatRepository;
+    private final ShowCatalog showCatalog;
+    private final SeatService seatService;
+    private final SeatLockService seatLockService;
     
     public List<ShowDto> getAllShows() {
         return showRepository.findAll().stream()
@@ -32,29 +40,43 @@ public class ShowService {
     }
     
     public List<ShowDto> getShowsByCity(Long cityId) {
-        return showRepository.findShowsByCity(cityId).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return showCatalog.getShowsByCity(cityId);
     }
     
     public List<ShowDto> getShowsByMovieAndCity(Long movieId, Long cityId) {
-        return showRepository.findShowsByMovieAndCity(movieId, cityId).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return showCatalog.getShowsByMovieAndCity(movieId, cityId);
     }
     
-    public Map<String, List<ShowDto>> getShowsByMovieAndCityGroupedByCinema(Long movieId, Long cityId) {
-        List<ShowDto> shows = getShowsByMovieAndCity(movieId, cityId);
+    /**
+     * Showtimes of the movie in the city on one day, grouped by cinema, for
+     * the showtime selection page. Groups and showtimes come from the show
+     * catalog; seat availability is added from the lock engine on each call.
+     * @param date day of the show times, or null for the first day with an upcoming show
+     */
+    public ShowtimesResponse getShowtimes(Long movieId, Long cityId, LocalDate date) {
+        ShowCatalog.Showtimes showtimes = showCatalog.getShowtimes(movieId, cityId, date);
+        long now = System.currentTimeMillis();
         
-        return shows.stream()
-                .collect(Collectors.groupingBy(
-                        show -> {
-                            CinemaDto cinema = show.getCinema();
-                            return String.format("{\"id\":%d,\"name\":\"%s\",\"address\":\"%s\",\"theaterChainName\":\"%s\"}",
-                                    cinema.getId(), cinema.getName(), cinema.getAddress(), cinema.getTheaterChainName());
-                        },
-                        Collectors.toList()
+        List<CinemaShowtimesDto> cinemas = new ArrayList<>(showtimes.cinemas().size());
+        for (ShowCatalog.CinemaShows cinema : showtimes.cinemas()) {
+            List<ShowtimeDto> shows = new ArrayList<>(cinema.shows().size());
+            for (ShowDto show : cinema.shows()) {
+                int totalSeats = seatService.getSeatGrid(show.getId()).getSeatCount();
+                ShowSeatSnapshot snapshot = seatLockService.getShowSnapshot(show.getId());
+                shows.add(new ShowtimeDto(
+                        show.getId(),
+                        show.getShowTime(),
+                        show.getEndTime(),
+                        show.getScreenName(),
+                        show.getBasePrice(),
+                        show.getPremiumPrice(),
+                        Math.max(0, totalSeats - snapshot.countUnavailable(now)),
+                        totalSeats
                 ));
+            }
+            cinemas.add(new CinemaShowtimesDto(cinema.cinema(), shows));
+        }
+        return new ShowtimesResponse(movieId, cityId, showtimes.date(), showtimes.dates(), cinemas);
     }
     
     public ShowDto getShowById(Long id) {
@@ -94,7 +116,8 @@ public class ShowService {
                 showSeat.getCategory().name(),
                 showSeat.getStatus().name(),
                 showSeat.getLockUserId(),
-                showSeat.getLockExpiryTime()
+                showSeat.getLockExpiryTime(),
+                0
         );
     }
     
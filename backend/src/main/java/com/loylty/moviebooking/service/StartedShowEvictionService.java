@@ -0,0 +1,62 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.cache.InMemorySeatLockService;
+import com.loylty.moviebooking.config.TimezoneConfig;
+import com.loylty.moviebooking.repository.ShowRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops the in-memory seat state of shows once they have started, or were
+ * deleted, so the lock engine and its journal snapshots only carry shows that
+ * can still be booked.
+ */
+@Service
+@ConditionalOnProperty(name = "seat-lock.store", havingValue = "memory", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class StartedShowEvictionService {
+    
+    // Shows looked up per query, to keep the IN list bounded
+    private static final int BATCH_SIZE = 1000;
+    
+    private final InMemorySeatLockService seatLockService;
+    private final ShowRepository showRepository;
+    
+    /**
+     * @return number of shows evicted
+     */
+    @Scheduled(fixedDelayString = "${seat-lock.eviction-interval-minutes:5}",
+               initialDelayString = "${seat-lock.eviction-interval-minutes:5}", timeUnit = TimeUnit.MINUTES)
+    public int evictStartedShows() {
+        LocalDateTime now = TimezoneConfig.getCurrentIstTime();
+        List<Long> tracked = new ArrayList<>(seatLockService.getTrackedShows());
+        List<Long> started = new ArrayList<>();
+        for (int from = 0; from < tracked.size(); from += BATCH_SIZE) {
+            List<Long> batch = tracked.subList(from, Math.min(from + BATCH_SIZE, tracked.size()));
+            Set<Long> upcoming = new HashSet<>(showRepository.findUpcomingIds(batch, now));
+            for (Long showId : batch) {
+                if (!upcoming.contains(showId)) {
+                    started.add(showId);
+                }
+            }
+        }
+        
+        if (!started.isEmpty()) {
+            seatLockService.evictShows(started);
+            log.info("Evicted seat state of {} started shows, {} shows left", started.size(),
+                    tracked.size() - started.size());
+        }
+        return started.size();
+    }
+}
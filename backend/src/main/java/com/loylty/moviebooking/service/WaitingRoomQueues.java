@@ -0,0 +1,21 @@
+package com.loylty.moviebooking.service;
+
+/**
+ * Ticket counters and admission token buckets of the waiting room's show
+ * queues. Admission is refilled lazily whenever a queue is touched: every
+ * permit admits the next ticket, up to the configured burst.
+ */
+public interface WaitingRoomQueues {
+    
+    /**
+     * Issue the next ticket of the show's queue, creating the queue if needed
+     * @return the ticket number, starting at 1
+     */
+    long join(long showId, long now);
+    
+    /**
+     * Admit what the bucket allows and report how far the queue has got
+     * @return number of tickets admitted so far, 0 if the show has no queue
+     */
+    long admitted(long showId, long now);
+}
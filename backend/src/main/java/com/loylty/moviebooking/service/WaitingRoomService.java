@@ -0,0 +1,190 @@
+package com.loylty.moviebooking.service;
+
+import com.loylty.moviebooking.dto.QueueStatusResponse;
+import com.loylty.moviebooking.repository.ShowRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Virtual waiting room that admits users to a show's seat selection at a
+ * fixed rate, through a per-show token bucket over numbered tickets. Tickets
+ * are HMAC-signed tokens, so no per-user state is kept.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WaitingRoomService {
+    
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_BYTES = 16;
+    
+    private final ShowRepository showRepository;
+    private final WaitingRoomQueues queues;
+    
+    @Value("${waiting-room.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${waiting-room.admission-rate-per-second:50}")
+    private double admissionRatePerSecond;
+    
+    @Value("${waiting-room.token-ttl-minutes:30}")
+    private long tokenTtlMinutes;
+    
+    @Value("${waiting-room.token-secret:}")
+    private String tokenSecret;
+    
+    @Value("${waiting-room.store:memory}")
+    private String store;
+    
+    private final Set<Long> knownShows = ConcurrentHashMap.newKeySet();
+    
+    private byte[] secretKey;
+    private ThreadLocal<Mac> macs;
+    
+    @PostConstruct
+    public void init() {
+        if (tokenSecret == null || tokenSecret.isBlank()) {
+            secretKey = new byte[32];
+            new SecureRandom().nextBytes(secretKey);
+            if (enabled) {
+                log.warn("waiting-room.token-secret is not set; queue tokens are only valid on this instance");
+            }
+        } else {
+            secretKey = tokenSecret.getBytes(StandardCharsets.UTF_8);
+        }
+        if (enabled && "memory".equals(store)) {
+            log.info("Waiting room queues are per instance; route each show to one instance or use waiting-room.store=postgres");
+        }
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(new SecretKeySpec(secretKey, HMAC_ALGORITHM));
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC not available", e);
+            }
+        });
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Issue a queue token for the show
+     */
+    public QueueStatusResponse join(Long showId) {
+        if (!enabled) {
+            return new QueueStatusResponse(showId, null, true, 0L, 0L);
+        }
+        
+        long now = System.currentTimeMillis();
+        checkShow(showId);
+        long ticket = queues.join(showId, now);
+        return status(showId, ticket, sign(showId, ticket, now), now);
+    }
+    
+    /**
+     * Current position of a token in the show's queue
+     */
+    public QueueStatusResponse getStatus(Long showId, String token) {
+        if (!enabled) {
+            return new QueueStatusResponse(showId, token, true, 0L, 0L);
+        }
+        
+        long now = System.currentTimeMillis();
+        long ticket = verify(showId, token, now);
+        if (ticket < 0) {
+            throw new RuntimeException("Invalid or expired queue token for show: " + showId);
+        }
+        return status(showId, ticket, token, now);
+    }
+    
+    /**
+     * @return true if the token has been admitted to the show, or the waiting room is off
+     */
+    public boolean isAdmitted(Long showId, String token) {
+        if (!enabled) {
+            return true;
+        }
+        
+        long now = System.currentTimeMillis();
+        long ticket = verify(showId, token, now);
+        if (ticket < 0) {
+            return false;
+        }
+        return queues.admitted(showId, now) >= ticket;
+    }
+    
+    private QueueStatusResponse status(Long showId, long ticket, String token, long now) {
+        checkShow(showId);
+        long position = Math.max(0L, ticket - queues.admitted(showId, now));
+        long waitSeconds = (long) Math.ceil(position / admissionRatePerSecond);
+        return new QueueStatusResponse(showId, token, position == 0, position, waitSeconds);
+    }
+    
+    private void checkShow(Long showId) {
+        // Only checked once per show, so a spike does not turn into database reads
+        if (!knownShows.contains(showId)) {
+            if (!showRepository.existsById(showId)) {
+                throw new RuntimeException("Show not found with id: " + showId);
+            }
+            knownShows.add(showId);
+        }
+    }
+    
+    private String sign(long showId, long ticket, long issuedAt) {
+        String payload = showId + "." + ticket + "." + issuedAt;
+        return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature(payload));
+    }
+    
+    /**
+     * @return the ticket of a valid, unexpired token for the show, or -1
+     */
+    private long verify(Long showId, String token, long now) {
+        if (token == null) {
+            return -1;
+        }
+        int lastDot = token.lastIndexOf('.');
+        if (lastDot < 0) {
+            return -1;
+        }
+        String payload = token.substring(0, lastDot);
+        String[] parts = payload.split("\\.");
+        if (parts.length != 3) {
+            return -1;
+        }
+        try {
+            byte[] expected = signature(payload);
+            byte[] actual = Base64.getUrlDecoder().decode(token.substring(lastDot + 1));
+            if (!MessageDigest.isEqual(expected, actual)
+                    || Long.parseLong(parts[0]) != showId
+                    || Long.parseLong(parts[2]) + TimeUnit.MINUTES.toMillis(tokenTtlMinutes) < now) {
+                return -1;
+            }
+            return Long.parseLong(parts[1]);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+    
+    private byte[] signature(String payload) {
+        byte[] mac = macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(mac, SIGNATURE_BYTES);
+    }
+}
@@ -0,0 +1,5 @@
+-- Index seat locks by holder so all seats held by a user or session can be
+-- listed or released without scanning show_seats
+
+CREATE INDEX IF NOT EXISTS idx_show_seats_lock_user_id ON show_seats(lock_user_id)
+    WHERE lock_user_id IS NOT NULL;
@@ -0,0 +1,6 @@
+-- Record when a user first locked a seat, so hold renewals can be capped
+-- at a maximum lifetime measured from the start of checkout
+
+ALTER TABLE show_seats ADD COLUMN IF NOT EXISTS lock_time TIMESTAMP;
+
+UPDATE show_seats SET lock_time = updated_at WHERE status = 'LOCKED' AND lock_time IS NULL;
@@ -0,0 +1,6 @@
+-- Let Hibernate reserve booking IDs in blocks of 50 (pooled sequence allocation),
+-- so a booking and its seats are inserted as JDBC batches without a sequence call per row.
+-- The increment must match allocationSize on Booking and BookingSeat.
+
+ALTER SEQUENCE bookings_id_seq INCREMENT BY 50;
+ALTER SEQUENCE booking_seats_id_seq INCREMENT BY 50;
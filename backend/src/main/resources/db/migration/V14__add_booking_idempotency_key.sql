@@ -0,0 +1,8 @@
+-- Idempotency-Key of the confirm request that created the booking, so a retried
+-- confirm finds the original booking instead of creating a second one.
+-- Not mapped on the Booking entity; NULL for bookings made without a key.
+
+ALTER TABLE bookings ADD COLUMN IF NOT EXISTS idempotency_key VARCHAR(64);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_bookings_idempotency_key ON bookings(idempotency_key)
+    WHERE idempotency_key IS NOT NULL;
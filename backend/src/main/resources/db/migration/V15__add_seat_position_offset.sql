@@ -0,0 +1,5 @@
+-- Horizontal shift of a seat on the seat map, in half-seat widths, so rows
+-- can be staggered. Aisles and gaps are seat numbers without a seats row.
+-- Read with the screen's layout by SeatService; not mapped on the Seat entity.
+
+ALTER TABLE seats ADD COLUMN IF NOT EXISTS position_offset SMALLINT NOT NULL DEFAULT 0;
@@ -0,0 +1,127 @@
+-- Renumber seat IDs from the standard 10x12 map of V9 to each screen's own
+-- geometry: seat ID (row_number - 1) * seats_per_row + seat_number within a
+-- show, as SeatService and SeatGrid number the seat map since V15.
+--
+-- Seat IDs used to be (row - 1) * 12 + seat on every screen, so an existing
+-- booking_seats row keeps its row and seat and only gets the new ID. Seats of
+-- the old map that the screen does not have (a column past its width, a row
+-- past its last, or a gap in its seats rows) cannot be placed; they are moved
+-- to booking_seats_unplaced for review instead of being marked on another seat.
+
+-- Width of a screen's seat map: the screen's seats_per_row, widened to its
+-- widest seats row as SeatLayoutTemplate does. Shared with PostgresSeatLockService.
+CREATE OR REPLACE FUNCTION screen_seats_per_row(p_screen_id BIGINT)
+RETURNS INTEGER AS $$
+    SELECT GREATEST(sc.seats_per_row,
+                    COALESCE((SELECT MAX(s.seat_number) FROM seats s WHERE s.screen_id = sc.id), 0))
+    FROM screens sc
+    WHERE sc.id = p_screen_id
+$$ LANGUAGE sql STABLE;
+
+-- True if the screen's seat map has a seat at the position: a seats row if the
+-- screen has any, otherwise any position within the screen's dimensions
+CREATE OR REPLACE FUNCTION screen_has_seat(p_screen_id BIGINT, p_row INTEGER, p_seat INTEGER)
+RETURNS BOOLEAN AS $$
+    SELECT CASE
+        WHEN EXISTS (SELECT 1 FROM seats s WHERE s.screen_id = p_screen_id)
+            THEN EXISTS (SELECT 1 FROM seats s
+                         WHERE s.screen_id = p_screen_id AND s.row_number = p_row AND s.seat_number = p_seat)
+        ELSE p_row BETWEEN 1 AND sc.total_rows AND p_seat BETWEEN 1 AND sc.seats_per_row
+    END
+    FROM screens sc
+    WHERE sc.id = p_screen_id
+$$ LANGUAGE sql STABLE;
+
+-- Old position and new ID of every booked seat
+CREATE TEMPORARY TABLE booking_seat_positions ON COMMIT DROP AS
+SELECT bs.id,
+       b.show_id,
+       sh.screen_id,
+       (bs.seat_id - 1) / 12 + 1 AS row_number,
+       (bs.seat_id - 1) % 12 + 1 AS seat_number
+FROM booking_seats bs
+JOIN bookings b ON b.id = bs.booking_id
+JOIN shows sh ON sh.id = b.show_id;
+
+ALTER TABLE booking_seat_positions ADD COLUMN new_seat_id BIGINT;
+
+UPDATE booking_seat_positions p
+SET new_seat_id = (p.row_number - 1) * screen_seats_per_row(p.screen_id) + p.seat_number
+WHERE screen_has_seat(p.screen_id, p.row_number, p.seat_number);
+
+-- Booked seats with no place on their screen, kept with their old 10x12 ID
+CREATE TABLE IF NOT EXISTS booking_seats_unplaced (
+    id BIGINT PRIMARY KEY,
+    booking_id BIGINT NOT NULL REFERENCES bookings(id) ON DELETE CASCADE,
+    show_id BIGINT NOT NULL,
+    old_seat_id BIGINT NOT NULL,
+    row_number INTEGER NOT NULL,
+    seat_number INTEGER NOT NULL,
+    price DECIMAL(10,2) NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    moved_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+INSERT INTO booking_seats_unplaced (id, booking_id, show_id, old_seat_id, row_number, seat_number, price, created_at)
+SELECT bs.id, bs.booking_id, p.show_id, bs.seat_id, p.row_number, p.seat_number, bs.price, bs.created_at
+FROM booking_seats bs
+JOIN booking_seat_positions p ON p.id = bs.id
+WHERE p.new_seat_id IS NULL;
+
+DELETE FROM booking_seats bs
+USING booking_seat_positions p
+WHERE p.id = bs.id AND p.new_seat_id IS NULL;
+
+-- Two steps, so no row takes an ID another seat of its booking still has
+UPDATE booking_seats bs
+SET seat_id = -p.new_seat_id
+FROM booking_seat_positions p
+WHERE p.id = bs.id AND p.new_seat_id IS NOT NULL;
+
+UPDATE booking_seats SET seat_id = -seat_id WHERE seat_id < 0;
+
+-- show_seats: rows are addressed by position, so only the V9 10x12 rectangle
+-- has to be brought to each screen's seat map. Positions the screen does not
+-- have are dropped (their bookings moved above); missing ones are added.
+DELETE FROM show_seats ss
+USING shows sh
+WHERE sh.id = ss.show_id AND NOT screen_has_seat(sh.screen_id, ss.row_number, ss.seat_number);
+
+SELECT setval(pg_get_serial_sequence('show_seats', 'id'), (SELECT COALESCE(MAX(id), 0) + 1 FROM show_seats), false);
+
+INSERT INTO show_seats (show_id, row_number, seat_number, category, status, price, created_at, updated_at)
+SELECT sh.id,
+       pos.row_number,
+       pos.seat_number,
+       pos.category,
+       'AVAILABLE',
+       CASE WHEN pos.category = 'REGULAR' THEN sh.base_price ELSE sh.premium_price END,
+       NOW(),
+       NOW()
+FROM shows sh
+JOIN (
+    SELECT s.screen_id, s.row_number, s.seat_number, s.category
+    FROM seats s
+    UNION ALL
+    -- Screens without seats rows: the rectangle, back rows premium as in SeatGrid
+    SELECT sc.id, r, n, CASE WHEN r > sc.total_rows - 3 THEN 'PREMIUM' ELSE 'REGULAR' END
+    FROM screens sc
+    CROSS JOIN generate_series(1, sc.total_rows) AS r
+    CROSS JOIN generate_series(1, sc.seats_per_row) AS n
+    WHERE NOT EXISTS (SELECT 1 FROM seats s WHERE s.screen_id = sc.id)
+) pos ON pos.screen_id = sh.screen_id
+WHERE NOT EXISTS (SELECT 1 FROM show_seats ss
+                  WHERE ss.show_id = sh.id AND ss.row_number = pos.row_number AND ss.seat_number = pos.seat_number);
+
+DO $$
+DECLARE
+    unplaced BIGINT;
+BEGIN
+    SELECT COUNT(*) INTO unplaced FROM booking_seats_unplaced;
+    IF unplaced > 0 THEN
+        RAISE NOTICE '% booked seats have no place on their screen; see booking_seats_unplaced', unplaced;
+    END IF;
+END $$;
+
+COMMENT ON TABLE show_seats IS 'Seats of each show, one row per seat of the screen''s seat map; seat ID (row_number - 1) * screen_seats_per_row(screen) + seat_number';
+COMMENT ON TABLE booking_seats_unplaced IS 'Booked seats of the old 10x12 seat numbering that the show''s screen does not have, moved out by V16';
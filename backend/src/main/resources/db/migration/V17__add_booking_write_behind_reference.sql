@@ -0,0 +1,8 @@
+-- Reference of the write-behind booking a row was saved from, so the writer
+-- can tell after a failed commit or a restart whether the booking is already
+-- saved. Not mapped on the Booking entity; NULL for bookings saved directly.
+
+ALTER TABLE bookings ADD COLUMN IF NOT EXISTS write_behind_reference VARCHAR(36);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_bookings_write_behind_reference ON bookings(write_behind_reference)
+    WHERE write_behind_reference IS NOT NULL;
@@ -0,0 +1,11 @@
+-- Waiting room queue counters of each show, shared by all backend instances
+-- with waiting-room.store=postgres. issued and admitted count tickets; permits
+-- is the admission token bucket, last refilled at last_refill (epoch millis).
+
+CREATE TABLE IF NOT EXISTS waiting_room_queues (
+    show_id BIGINT PRIMARY KEY REFERENCES shows(id) ON DELETE CASCADE,
+    issued BIGINT NOT NULL DEFAULT 0,
+    admitted BIGINT NOT NULL DEFAULT 0,
+    permits DOUBLE PRECISION NOT NULL,
+    last_refill BIGINT NOT NULL
+);
@@ -0,0 +1,18 @@
+-- Stamp every update of a show_seats row with a value from one sequence, so
+-- PostgresSeatLockService can tell whether a show's seats changed without
+-- reading them. The stamp is taken after the row is locked, so it is above the
+-- row's previous one and the sum over a show only grows as updates commit,
+-- whatever order they commit in. Not mapped on the ShowSeat entity.
+
+CREATE SEQUENCE IF NOT EXISTS show_seats_status_version_seq;
+
+ALTER TABLE show_seats ADD COLUMN IF NOT EXISTS status_version BIGINT NOT NULL DEFAULT 0;
+
+CREATE OR REPLACE FUNCTION update_show_seats_updated_at()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.updated_at = NOW();
+    NEW.status_version = nextval('show_seats_status_version_seq');
+    RETURN NEW;
+END;
+$$ language 'plpgsql';
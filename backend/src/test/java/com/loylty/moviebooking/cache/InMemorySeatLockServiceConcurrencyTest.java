@@ -0,0 +1,167 @@
+package com.loylty.moviebooking.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Threads race to lock overlapping blocks of seats in a few shows; every
+ * seat must end up with exactly one winner, and the holder index must list
+ * each user's winning seats and nothing else.
+ */
+class InMemorySeatLockServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 500;
+    private static final int SHOWS = 3;
+    // Few seats and blocks of several seats, so most requests overlap another one
+    private static final int SEATS = 24;
+    private static final int MAX_BLOCK = 4;
+    // Long enough that no lock expires during a race
+    private static final int LOCK_DURATION = 600;
+
+    @Test
+    void overlappingLocksGrantEachSeatOnce() throws Exception {
+        InMemorySeatLockService service = new InMemorySeatLockService();
+        // Key: showId, Value: seat -> user whose lock call included it and succeeded
+        Map<Long, Map<Long, String>> winners = new ConcurrentHashMap<>();
+        List<String> doubleGrants = new ArrayList<>();
+
+        runRace(threadIndex -> {
+            String userId = "user-" + threadIndex;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                long showId = random.nextInt(SHOWS) + 1;
+                List<Long> seatIds = randomBlock(random);
+                if (service.lockSeats(showId, seatIds, userId, LOCK_DURATION)) {
+                    Map<Long, String> showWinners = winners.computeIfAbsent(showId, k -> new ConcurrentHashMap<>());
+                    for (Long seatId : seatIds) {
+                        String previous = showWinners.putIfAbsent(seatId, userId);
+                        if (previous != null && !previous.equals(userId)) {
+                            synchronized (doubleGrants) {
+                                doubleGrants.add("show " + showId + " seat " + seatId + ": " + previous + " and " + userId);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        assertTrue(doubleGrants.isEmpty(), () -> "Seats granted twice: " + doubleGrants);
+        assertConsistent(service, winners);
+    }
+
+    @Test
+    void lockUnlockChurnLeavesConsistentLocks() throws Exception {
+        InMemorySeatLockService service = new InMemorySeatLockService();
+
+        runRace(threadIndex -> {
+            String userId = "user-" + threadIndex;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                long showId = random.nextInt(SHOWS) + 1;
+                List<Long> seatIds = randomBlock(random);
+                if (service.lockSeats(showId, seatIds, userId, LOCK_DURATION) && random.nextBoolean()) {
+                    assertTrue(service.unlockSeats(showId, seatIds, userId));
+                }
+            }
+        });
+
+        // Winners are whoever holds each seat now
+        Map<Long, Map<Long, String>> holders = new HashMap<>();
+        for (long showId = 1; showId <= SHOWS; showId++) {
+            for (long seatId = 1; seatId <= SEATS; seatId++) {
+                SeatLockService.SeatLockInfo lock = service.getSeatLockInfo(showId, seatId);
+                if (lock != null) {
+                    holders.computeIfAbsent(showId, k -> new HashMap<>()).put(seatId, lock.getUserId());
+                }
+            }
+        }
+        assertConsistent(service, holders);
+    }
+
+    private interface Worker {
+        void run(int threadIndex) throws Exception;
+    }
+
+    /**
+     * Start every worker at the same moment and wait for all of them
+     */
+    private static void runRace(Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int threadIndex = t;
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    worker.run(threadIndex);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Long> randomBlock(ThreadLocalRandom random) {
+        int size = random.nextInt(MAX_BLOCK) + 1;
+        long first = random.nextInt(SEATS - size + 1) + 1;
+        return LongStream.range(first, first + size).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Each seat's live lock belongs to its winner, free seats have no lock,
+     * and each user's held seats are exactly the seats they won
+     */
+    private static void assertConsistent(InMemorySeatLockService service, Map<Long, Map<Long, String>> winners) {
+        Map<String, Map<Long, Set<Long>>> expectedHeld = new HashMap<>();
+        for (long showId = 1; showId <= SHOWS; showId++) {
+            Map<Long, String> showWinners = winners.getOrDefault(showId, Map.of());
+            for (long seatId = 1; seatId <= SEATS; seatId++) {
+                SeatLockService.SeatLockInfo lock = service.getSeatLockInfo(showId, seatId);
+                String winner = showWinners.get(seatId);
+                if (winner == null) {
+                    assertNull(lock, "show " + showId + " seat " + seatId + " is locked without a winner");
+                } else {
+                    assertNotNull(lock, "show " + showId + " seat " + seatId + " lost its lock");
+                    assertEquals(winner, lock.getUserId(), "show " + showId + " seat " + seatId);
+                    expectedHeld.computeIfAbsent(winner, k -> new HashMap<>())
+                            .computeIfAbsent(showId, k -> new HashSet<>())
+                            .add(seatId);
+                }
+            }
+            assertEquals(showWinners.keySet(), service.getLockedSeats(showId), "locked seats of show " + showId);
+        }
+
+        for (int t = 0; t < THREADS; t++) {
+            String userId = "user-" + t;
+            assertEquals(expectedHeld.getOrDefault(userId, Map.of()), service.getHeldSeats(userId),
+                    "held seats of " + userId);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.loylty.moviebooking.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * An evicted show loses its seat state and its holds, while other shows and
+ * the holder index are left as they were.
+ */
+class InMemorySeatLockServiceEvictionTest {
+
+    @Test
+    void evictedShowKeepsNoState() {
+        long[] now = {1_000_000L};
+        InMemorySeatLockService service = new InMemorySeatLockService(() -> now[0]);
+        assertTrue(service.lockSeats(1L, List.of(1L, 2L), "user-1", 60));
+        assertTrue(service.lockSeats(2L, List.of(5L), "user-1", 60));
+        service.markSeatsBooked(1L, List.of(3L));
+
+        service.evictShows(List.of(1L));
+
+        assertEquals(Set.of(2L), service.getTrackedShows());
+        assertEquals(Map.of(2L, Set.of(5L)), service.getHeldSeats("user-1"));
+        assertNull(service.getSeatLockInfo(1L, 1L));
+        assertTrue(service.getBookedSeats(1L).isEmpty());
+
+        // Pending expiries of the evicted show are gone; the other show still expires
+        now[0] += 120_000L;
+        service.cleanupExpiredLocks();
+        assertTrue(service.getHeldSeats("user-1").isEmpty());
+        assertFalse(service.getTrackedShows().contains(1L));
+    }
+}
@@ -0,0 +1,90 @@
+package com.loylty.moviebooking.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Shows appended to from many threads at once, with the flusher running
+ * alongside, must replay with every record and each show's records in order.
+ */
+class SeatLockJournalTest {
+
+    private static final int THREADS = 8;
+    private static final int SHOWS_PER_THREAD = 4;
+    private static final int RECORDS_PER_SHOW = 2000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentAppendsReplayInOrderPerShow() throws Exception {
+        SeatLockJournal journal = new SeatLockJournal(dir, 4);
+        journal.recover(in -> { }, (type, showId, time, expiresAt, holder, seatIds) -> { });
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long firstShow = (long) t * SHOWS_PER_THREAD + 1;
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    // Each thread owns its shows, as a show's records are appended under the show's monitor
+                    for (long time = 1; time <= RECORDS_PER_SHOW; time++) {
+                        for (long showId = firstShow; showId < firstShow + SHOWS_PER_THREAD; showId++) {
+                            if (time % 10 == 0) {
+                                journal.appendExpire(showId, time, time % 100 + 1);
+                            } else {
+                                journal.append(SeatLockJournal.LOCK, showId, time, time + 1000, "user-" + showId,
+                                        List.of(time % 100 + 1));
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            Future<?> flusher = executor.submit(() -> {
+                start.await();
+                while (!writers.stream().allMatch(Future::isDone)) {
+                    journal.flush();
+                }
+                return null;
+            });
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            flusher.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        journal.close();
+
+        Map<Long, Long> lastTime = new HashMap<>();
+        Map<Long, Integer> records = new HashMap<>();
+        new SeatLockJournal(dir, 2).recover(in -> { }, (type, showId, time, expiresAt, holder, seatIds) -> {
+            long previous = lastTime.getOrDefault(showId, 0L);
+            assertEquals(previous + 1, time, "record order of show " + showId);
+            assertEquals(time % 10 == 0 ? SeatLockJournal.EXPIRE : SeatLockJournal.LOCK, type);
+            assertEquals(time % 100 + 1, seatIds[0]);
+            lastTime.put(showId, time);
+            records.merge(showId, 1, Integer::sum);
+        });
+
+        assertEquals(THREADS * SHOWS_PER_THREAD, records.size());
+        records.forEach((showId, count) -> assertEquals(RECORDS_PER_SHOW, count, "records of show " + showId));
+    }
+}
@@ -0,0 +1,66 @@
+package com.loylty.moviebooking.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compaction while bookings are still outstanding must shrink the file and
+ * keep exactly the outstanding bookings, in order, with later appends intact.
+ */
+class BookingJournalTest {
+
+    private static final int BOOKINGS = 20_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compactKeepsOutstandingBookings() throws Exception {
+        BookingJournal journal = new BookingJournal(dir);
+        journal.recover();
+
+        List<String> outstanding = new ArrayList<>();
+        long position = 0;
+        for (int i = 0; i < BOOKINGS; i++) {
+            BookingWriteBehindService.PendingBooking booking = booking("ref-" + i);
+            position = journal.append(booking);
+            if (i % 100 == 0) {
+                outstanding.add(booking.reference());
+            } else {
+                journal.markDone(List.of(booking.reference()));
+            }
+        }
+        journal.sync(position);
+        Path file = dir.resolve("bookings.journal");
+        long before = Files.size(file);
+
+        journal.compact();
+        assertTrue(Files.size(file) < before / 10, "journal was not compacted");
+
+        BookingWriteBehindService.PendingBooking late = booking("ref-late");
+        journal.sync(journal.append(late));
+        outstanding.add(late.reference());
+        journal.close();
+
+        List<String> recovered = new BookingJournal(dir).recover().stream()
+                .map(BookingWriteBehindService.PendingBooking::reference)
+                .toList();
+        assertEquals(outstanding, recovered);
+    }
+
+    private static BookingWriteBehindService.PendingBooking booking(String reference) {
+        return new BookingWriteBehindService.PendingBooking(reference, 1L, List.of(1L, 2L), "user-1",
+                "Guest", "guest@example.com", List.of(new BigDecimal("250.00"), new BigDecimal("250.00")),
+                LocalDateTime.now(), null);
+    }
+}
@@ -0,0 +1,46 @@
+package com.loylty.moviebooking.benchmark;
+
+import com.loylty.moviebooking.cache.SeatLockService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seat inventory shared by the benchmarks: every show has its first third of
+ * seats booked, and optionally every tenth seat of the rest held by a
+ * resident user for an hour, roughly what a busy evening looks like.
+ * The seats after the booked third are left for the benchmark to work on.
+ */
+final class BenchmarkShows {
+    
+    static final int RESIDENT_HOLD_SECONDS = 3600;
+    
+    private BenchmarkShows() {
+    }
+    
+    /**
+     * @return seat ID of the first seat that is not booked
+     */
+    static int firstOpenSeat(int seatsPerShow) {
+        return seatsPerShow / 3 + 1;
+    }
+    
+    static void populate(SeatLockService seatLockService, int shows, int seatsPerShow, boolean residentHolds) {
+        // Every show gets the same seat IDs, so the lists are built once
+        List<Long> booked = new ArrayList<>();
+        for (long seatId = 1; seatId < firstOpenSeat(seatsPerShow); seatId++) {
+            booked.add(seatId);
+        }
+        List<Long> held = new ArrayList<>();
+        for (long seatId = firstOpenSeat(seatsPerShow); seatId <= seatsPerShow; seatId += 10) {
+            held.add(seatId);
+        }
+        
+        for (long showId = 1; showId <= shows; showId++) {
+            seatLockService.markSeatsBooked(showId, booked);
+            if (residentHolds) {
+                seatLockService.lockSeats(showId, held, "resident-" + showId, RESIDENT_HOLD_SECONDS);
+            }
+        }
+    }
+}
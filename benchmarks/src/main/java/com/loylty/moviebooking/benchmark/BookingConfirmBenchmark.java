@@ -0,0 +1,126 @@
+package com.loylty.moviebooking.benchmark;
+
+import com.loylty.moviebooking.cache.CachedSeatLockClock;
+import com.loylty.moviebooking.cache.InMemorySeatLockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * confirmBooking of seats the user has locked. A booking uses its seats up,
+ * so this runs in single-shot mode: before every iteration the inventory is
+ * rebuilt and each thread locks BATCH blocks, then the iteration confirms all
+ * of them. The score is the time for one batch of BATCH confirmations.
+ *
+ * The k-th blocks of all threads land in the same show, so with several
+ * threads (-t) the confirmations meet on one show monitor at a time.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar BookingConfirmBenchmark -t 16
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = BookingConfirmBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = BookingConfirmBenchmark.BATCH)
+@Fork(1)
+public class BookingConfirmBenchmark {
+    
+    static final int BATCH = 256;
+    private static final int SEATS_PER_BOOKING = 2;
+    
+    @State(Scope.Benchmark)
+    public static class Inventory {
+        
+        @Param({"1000", "10000", "100000"})
+        public int shows;
+        
+        @Param({"100", "1000"})
+        public int seatsPerShow;
+        
+        CachedSeatLockClock clock;
+        InMemorySeatLockService seatLockService;
+        
+        @Setup(Level.Trial)
+        public void startClock() {
+            clock = new CachedSeatLockClock(5);
+        }
+        
+        @Setup(Level.Iteration)
+        public void setUp() {
+            if (seatLockService != null) {
+                seatLockService.destroy();
+            }
+            seatLockService = new InMemorySeatLockService(clock);
+            seatLockService.init();
+            BenchmarkShows.populate(seatLockService, shows, seatsPerShow, false);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            seatLockService.destroy();
+            clock.close();
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Checkout {
+        
+        final long[] showIds = new long[BATCH];
+        final List<List<Long>> seatIds = new ArrayList<>(BATCH);
+        String userId;
+        int next;
+        
+        @Setup(Level.Iteration)
+        public void lockBatch(Inventory inventory, ThreadParams thread) {
+            userId = "bench-" + thread.getThreadIndex();
+            int firstOpenSeat = BenchmarkShows.firstOpenSeat(inventory.seatsPerShow);
+            int openBlocks = (inventory.seatsPerShow - firstOpenSeat + 1) / SEATS_PER_BOOKING;
+            // Threads share a show as far as its open seats allow, in groups otherwise
+            int groups = (thread.getThreadCount() + openBlocks - 1) / openBlocks;
+            int threadsPerShow = (thread.getThreadCount() + groups - 1) / groups;
+            int group = thread.getThreadIndex() / threadsPerShow;
+            int local = thread.getThreadIndex() % threadsPerShow;
+            
+            seatIds.clear();
+            for (int k = 0; k < BATCH; k++) {
+                int turn = k * groups + group;
+                showIds[k] = turn % inventory.shows + 1L;
+                int slot = (turn / inventory.shows) * threadsPerShow + local;
+                if (slot >= openBlocks) {
+                    throw new IllegalStateException("Not enough open seats for " + thread.getThreadCount()
+                            + " threads; add shows");
+                }
+                long first = firstOpenSeat + (long) slot * SEATS_PER_BOOKING;
+                List<Long> seats = new ArrayList<>(SEATS_PER_BOOKING);
+                for (int i = 0; i < SEATS_PER_BOOKING; i++) {
+                    seats.add(first + i);
+                }
+                if (!inventory.seatLockService.lockSeats(showIds[k], seats, userId, 3600)) {
+                    throw new IllegalStateException("Could not lock seats " + seats + " of show " + showIds[k]);
+                }
+                seatIds.add(seats);
+            }
+            next = 0;
+        }
+    }
+    
+    @Benchmark
+    public boolean confirmBooking(Inventory inventory, Checkout checkout) {
+        int k = checkout.next++;
+        return inventory.seatLockService.confirmBooking(checkout.showIds[k], checkout.seatIds.get(k), checkout.userId);
+    }
+}
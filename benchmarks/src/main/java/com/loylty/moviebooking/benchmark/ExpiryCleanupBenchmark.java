@@ -0,0 +1,85 @@
+package com.loylty.moviebooking.benchmark;
+
+import com.loylty.moviebooking.cache.InMemorySeatLockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One run of cleanupExpiredLocks with expiringHolds seats falling due,
+ * scattered over the shows. The engine runs on a clock driven by the
+ * benchmark: before each call the seats are locked for one second, and the
+ * call itself moves the clock past their deadline. Cleanup is done by a single
+ * thread in the service, so this benchmark is single threaded too.
+ *
+ * The service is not started, so its own cleanup thread does not compete
+ * for the due holds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class ExpiryCleanupBenchmark {
+    
+    // Past the one second hold plus a tick of the expiry wheel
+    private static final long STEP_MILLIS = 1500;
+    
+    @Param({"1000", "100000"})
+    public int shows;
+    
+    @Param({"100", "1000"})
+    public int seatsPerShow;
+    
+    @Param({"100", "10000"})
+    public int expiringHolds;
+    
+    private volatile long now = System.currentTimeMillis();
+    private InMemorySeatLockService seatLockService;
+    private int firstOpenSeat;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        seatLockService = new InMemorySeatLockService(() -> now);
+        BenchmarkShows.populate(seatLockService, shows, seatsPerShow, false);
+        firstOpenSeat = BenchmarkShows.firstOpenSeat(seatsPerShow);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        seatLockService.destroy();
+    }
+    
+    @Setup(Level.Invocation)
+    public void lockExpiringSeats() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < expiringHolds; i++) {
+            long showId = random.nextInt(shows) + 1L;
+            long seatId = firstOpenSeat + random.nextInt(seatsPerShow - firstOpenSeat + 1);
+            seatLockService.lockSeats(showId, List.of(seatId), "bench-" + (i & 63), 1);
+        }
+    }
+    
+    @Benchmark
+    public void cleanupExpiredLocks() {
+        now += STEP_MILLIS;
+        seatLockService.cleanupExpiredLocks();
+    }
+}
@@ -0,0 +1,80 @@
+package com.loylty.moviebooking.benchmark;
+
+import com.loylty.moviebooking.cache.CachedSeatLockClock;
+import com.loylty.moviebooking.cache.InMemorySeatLockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking seat availability on the in-memory engine, where about a
+ * third of the seats are locked and a third booked. Run with -prof gc: the
+ * single-seat check should report gc.alloc.rate.norm of zero bytes per op.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar SeatAvailabilityBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeatAvailabilityBenchmark {
+    
+    private static final int SEATS_PER_SHOW = 120;
+    
+    private CachedSeatLockClock clock;
+    private InMemorySeatLockService seatLockService;
+    private final Long showId = 1L;
+    private final Long[] seatIds = new Long[SEATS_PER_SHOW];
+    private final List<Long> allSeats = new ArrayList<>();
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        clock = new CachedSeatLockClock(5);
+        seatLockService = new InMemorySeatLockService(clock);
+        seatLockService.init();
+        
+        for (int i = 0; i < SEATS_PER_SHOW; i++) {
+            seatIds[i] = (long) (i + 1);
+            allSeats.add(seatIds[i]);
+            if (i % 3 == 1) {
+                seatLockService.lockSeats(showId, List.of(seatIds[i]), "user-" + i, 3600);
+            } else if (i % 3 == 2) {
+                seatLockService.markSeatsBooked(showId, List.of(seatIds[i]));
+            }
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        seatLockService.destroy();
+        clock.close();
+    }
+    
+    @Benchmark
+    public boolean isSeatAvailable() {
+        Long seatId = seatIds[next];
+        next = next + 1 == SEATS_PER_SHOW ? 0 : next + 1;
+        return seatLockService.isSeatAvailable(showId, seatId);
+    }
+    
+    @Benchmark
+    public int getAvailableSeats() {
+        return seatLockService.getAvailableSeats(showId, allSeats).size();
+    }
+}
@@ -0,0 +1,113 @@
+package com.loylty.moviebooking.benchmark;
+
+import com.loylty.moviebooking.cache.CachedSeatLockClock;
+import com.loylty.moviebooking.cache.InMemorySeatLockService;
+import com.loylty.moviebooking.cache.SeatLockMetrics;
+import com.loylty.moviebooking.entity.Screen;
+import com.loylty.moviebooking.entity.Show;
+import com.loylty.moviebooking.repository.ScreenRepository;
+import com.loylty.moviebooking.repository.SeatRepository;
+import com.loylty.moviebooking.repository.ShowRepository;
+import com.loylty.moviebooking.service.SeatService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SeatService.getSeatLayout, the call behind every seat map refresh, on top
+ * of the in-memory engine. The repositories are stubbed, and every show is
+ * on one 10 x 12 screen without seats rows, whose seat map is built on the
+ * first call and cached like in production. The score is the CPU and
+ * allocation cost of combining the cached seat map with the show's lock state,
+ * against packing only the show's statuses into the binary status vector.
+ *
+ * The service logs to System.out; that output is discarded during the run,
+ * but the cost of building it is still measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeatLayoutBenchmark {
+    
+    // The layout is the rectangular 10 x 12 grid
+    private static final int SEATS_PER_SHOW = 120;
+    
+    @Param({"1000", "100000"})
+    public int shows;
+    
+    private CachedSeatLockClock clock;
+    private InMemorySeatLockService seatLockService;
+    private SeatService seatService;
+    private PrintStream systemOut;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        clock = new CachedSeatLockClock(5);
+        seatLockService = new InMemorySeatLockService(clock);
+        seatLockService.init();
+        BenchmarkShows.populate(seatLockService, shows, SEATS_PER_SHOW, true);
+        
+        Screen screen = new Screen();
+        screen.setId(1L);
+        screen.setTotalRows(10);
+        screen.setSeatsPerRow(12);
+        Show show = new Show();
+        show.setScreen(screen);
+        ShowRepository showRepository = stub(ShowRepository.class, "findWithScreenById", Optional.of(show));
+        ScreenRepository screenRepository = stub(ScreenRepository.class, "findById", Optional.of(screen));
+        SeatRepository seatRepository = stub(SeatRepository.class, "findLayoutByScreenId", List.of());
+        seatService = new SeatService(seatRepository, showRepository, screenRepository, seatLockService,
+                SeatLockMetrics.noop());
+        
+        systemOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(systemOut);
+        seatLockService.destroy();
+        clock.close();
+    }
+    
+    @Benchmark
+    public int getSeatLayout() {
+        long showId = ThreadLocalRandom.current().nextInt(shows) + 1L;
+        return seatService.getSeatLayout(showId, null).size();
+    }
+    
+    @Benchmark
+    public int getSeatStatuses() {
+        long showId = ThreadLocalRandom.current().nextInt(shows) + 1L;
+        return SeatService.encode(seatService.getSeatStatusVector(showId, null)).length;
+    }
+    
+    /**
+     * Repository whose only working method returns the given value
+     */
+    private static <T> T stub(Class<T> type, String method, Object result) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, m, args) -> m.getName().equals(method) ? result : null));
+    }
+}
@@ -0,0 +1,163 @@
+package com.loylty.moviebooking.benchmark;
+
+import com.loylty.moviebooking.cache.InMemorySeatLockService;
+import com.loylty.moviebooking.cache.PostgresSeatLockService;
+import com.loylty.moviebooking.cache.SeatLockService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of lock + unlock round trips when many users fight over the
+ * seats of a few shows, for the in-memory engine and the show_seats store.
+ *
+ * The postgres store needs a scratch database seeded by the Flyway
+ * migrations; its seat states are reset before every iteration:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar SeatLockContentionBenchmark -p store=postgres \
+ *       -jvmArgs "-Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/movie_booking_bench \
+ *                 -Dbenchmark.jdbc.username=postgres -Dbenchmark.jdbc.password=password"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(16)
+public class SeatLockContentionBenchmark {
+    
+    private static final int SEATS_PER_SHOW = 120;
+    
+    @State(Scope.Benchmark)
+    public static class Store {
+        
+        @Param({"memory", "postgres"})
+        public String store;
+        
+        // Fewer shows means more users per show and more conflicts
+        @Param({"1", "16"})
+        public int shows;
+        
+        @Param({"4"})
+        public int seatsPerLock;
+        
+        SeatLockService seatLockService;
+        long[] showIds;
+        
+        private HikariDataSource dataSource;
+        private NamedParameterJdbcTemplate jdbc;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            if ("memory".equals(store)) {
+                InMemorySeatLockService memory = new InMemorySeatLockService();
+                memory.init();
+                seatLockService = memory;
+                showIds = new long[shows];
+                for (int i = 0; i < shows; i++) {
+                    showIds[i] = i + 1;
+                }
+                return;
+            }
+            
+            String url = System.getProperty("benchmark.jdbc.url");
+            if (url == null) {
+                throw new IllegalStateException("Set -Dbenchmark.jdbc.url to run the postgres store");
+            }
+            dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(url);
+            dataSource.setUsername(System.getProperty("benchmark.jdbc.username", "postgres"));
+            dataSource.setPassword(System.getProperty("benchmark.jdbc.password", "password"));
+            dataSource.setMaximumPoolSize(Integer.getInteger("benchmark.jdbc.pool-size", 64));
+            jdbc = new NamedParameterJdbcTemplate(dataSource);
+            seatLockService = new PostgresSeatLockService(jdbc, new DataSourceTransactionManager(dataSource));
+            
+            showIds = jdbc.queryForList("SELECT DISTINCT show_id FROM show_seats ORDER BY show_id LIMIT :shows",
+                    new MapSqlParameterSource("shows", shows), Long.class)
+                    .stream().mapToLong(Long::longValue).toArray();
+            if (showIds.length < shows) {
+                throw new IllegalStateException("Database has only " + showIds.length + " shows with seats");
+            }
+        }
+        
+        @Setup(Level.Iteration)
+        public void resetSeats() {
+            if (jdbc != null) {
+                List<Long> ids = new ArrayList<>();
+                for (long showId : showIds) {
+                    ids.add(showId);
+                }
+                jdbc.update("UPDATE show_seats SET status = 'AVAILABLE', lock_user_id = NULL, lock_expiry_time = NULL " +
+                        "WHERE show_id IN (:showIds)", new MapSqlParameterSource("showIds", ids));
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (seatLockService instanceof InMemorySeatLockService memory) {
+                memory.destroy();
+            }
+            if (dataSource != null) {
+                dataSource.close();
+            }
+        }
+    }
+    
+    /**
+     * Per-thread user and outcome counters, reported next to the throughput
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class User {
+        
+        public long granted;
+        public long rejected;
+        
+        String userId;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            userId = "bench-" + Thread.currentThread().getId();
+        }
+    }
+    
+    @Benchmark
+    public boolean lockAndRelease(Store store, User user) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long showId = store.showIds[random.nextInt(store.showIds.length)];
+        int first = random.nextInt(SEATS_PER_SHOW - store.seatsPerLock + 1) + 1;
+        List<Long> seatIds = new ArrayList<>(store.seatsPerLock);
+        for (int i = 0; i < store.seatsPerLock; i++) {
+            seatIds.add((long) (first + i));
+        }
+        
+        if (!store.seatLockService.lockSeats(showId, seatIds, user.userId, 300)) {
+            user.rejected++;
+            return false;
+        }
+        user.granted++;
+        store.seatLockService.unlockSeats(showId, seatIds, user.userId);
+        return true;
+    }
+}
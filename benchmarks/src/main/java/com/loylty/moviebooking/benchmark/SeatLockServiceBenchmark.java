@@ -0,0 +1,132 @@
+package com.loylty.moviebooking.benchmark;
+
+import com.loylty.moviebooking.cache.CachedSeatLockClock;
+import com.loylty.moviebooking.cache.InMemorySeatLockService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the in-memory seat lock engine at production scale: up to
+ * 100k shows of up to 1000 seats, a third of them booked and every tenth of
+ * the rest held. Requests go to the first hotShows shows only (0 for all of
+ * them), so a small value piles every thread onto a few show monitors.
+ *
+ * Threads are set on the command line; run the same parameters at several
+ * counts to see how a path scales:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar SeatLockServiceBenchmark -t 1
+ *   java -jar benchmarks/target/benchmarks.jar SeatLockServiceBenchmark -t 64 -p hotShows=1
+ *
+ * 100k shows of 1000 seats take about 3 GB of heap: add -jvmArgsAppend -Xmx6g.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeatLockServiceBenchmark {
+    
+    private static final int SEATS_PER_LOCK = 4;
+    
+    @State(Scope.Benchmark)
+    public static class Inventory {
+        
+        @Param({"1000", "10000", "100000"})
+        public int shows;
+        
+        @Param({"100", "1000"})
+        public int seatsPerShow;
+        
+        @Param({"0", "64", "1"})
+        public int hotShows;
+        
+        CachedSeatLockClock clock;
+        InMemorySeatLockService seatLockService;
+        int targetShows;
+        int firstOpenSeat;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            clock = new CachedSeatLockClock(5);
+            seatLockService = new InMemorySeatLockService(clock);
+            seatLockService.init();
+            BenchmarkShows.populate(seatLockService, shows, seatsPerShow, true);
+            targetShows = hotShows == 0 ? shows : Math.min(hotShows, shows);
+            firstOpenSeat = BenchmarkShows.firstOpenSeat(seatsPerShow);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            seatLockService.destroy();
+            clock.close();
+        }
+        
+        long randomShow() {
+            return ThreadLocalRandom.current().nextInt(targetShows) + 1L;
+        }
+    }
+    
+    /**
+     * Per-thread user and lock outcome counters, reported next to the score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class User {
+        
+        public long granted;
+        public long rejected;
+        
+        String userId;
+        final List<Long> seatIds = new ArrayList<>(SEATS_PER_LOCK);
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            userId = "bench-" + Thread.currentThread().getId();
+        }
+    }
+    
+    /**
+     * lockSeats of a random block of open seats, released again when granted
+     * so the inventory stays the same for the whole run
+     */
+    @Benchmark
+    public boolean lockSeats(Inventory inventory, User user) {
+        long showId = inventory.randomShow();
+        int first = inventory.firstOpenSeat
+                + ThreadLocalRandom.current().nextInt(inventory.seatsPerShow - inventory.firstOpenSeat - SEATS_PER_LOCK + 2);
+        user.seatIds.clear();
+        for (int i = 0; i < SEATS_PER_LOCK; i++) {
+            user.seatIds.add((long) (first + i));
+        }
+        
+        if (!inventory.seatLockService.lockSeats(showId, user.seatIds, user.userId, 300)) {
+            user.rejected++;
+            return false;
+        }
+        user.granted++;
+        inventory.seatLockService.unlockSeats(showId, user.seatIds, user.userId);
+        return true;
+    }
+    
+    @Benchmark
+    public int getLockedSeats(Inventory inventory) {
+        return inventory.seatLockService.getLockedSeats(inventory.randomShow()).size();
+    }
+}
@@ -71,18 +71,30 @@ export const API_ENDPOINTS = {
   
   // Shows
   SHOWS_BY_MOVIE_CITY: (movieId, cityId) => `${API_BASE_URL}/shows/movie/${movieId}/city/${cityId}`,
-  SHOWS_GROUPED: (movieId, cityId) => `${API_BASE_URL}/shows/movie/${movieId}/city/${cityId}/grouped`,
+  SHOWTIMES: (movieId, cityId, date) =>
+    `${API_BASE_URL}/shows/movie/${movieId}/city/${cityId}/showtimes${date ? `?date=${date}` : ''}`,
   SHOW_BY_ID: (showId) => `${API_BASE_URL}/shows/${showId}`,
   
   // Seats
   SEAT_LAYOUT: (showId) => `${API_BASE_URL}/seats/show/${showId}/layout`,
   SEAT_STATUS: (showId) => `${API_BASE_URL}/seats/show/${showId}/status`,
+  SEAT_CHANGES: (showId, epoch, since, userId) =>
+    `${API_BASE_URL}/seats/show/${showId}/changes?epoch=${epoch}&since=${since}` +
+    (userId ? `&userId=${encodeURIComponent(userId)}` : ''),
+  SEAT_PUSH: `${API_BASE_URL.replace(/^http/, 'ws')}/ws`,
   
   // Bookings
   LOCK_SEATS: `${API_BASE_URL}/bookings/lock-seats`,
   UNLOCK_SEATS: `${API_BASE_URL}/bookings/unlock-seats`,
+  LOCK_BEST_AVAILABLE: `${API_BASE_URL}/bookings/lock-best-available`,
+  RENEW_HOLD: `${API_BASE_URL}/bookings/renew-hold`,
   CONFIRM_BOOKING: `${API_BASE_URL}/bookings/confirm`,
   CREATE_BOOKING: `${API_BASE_URL}/bookings/create`,
+  BOOKING_STATUS: (reference) => `${API_BASE_URL}/bookings/status/${reference}`,
+  
+  // Waiting room
+  QUEUE_JOIN: (showId) => `${API_BASE_URL}/waiting-room/show/${showId}/join`,
+  QUEUE_STATUS: (showId, token) => `${API_BASE_URL}/waiting-room/show/${showId}/status?token=${encodeURIComponent(token)}`,
   
   // Health
   HEALTH: `${API_BASE_URL}/health`
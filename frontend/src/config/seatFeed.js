@@ -0,0 +1,70 @@
+import axios from 'axios';
+import { API_ENDPOINTS } from './api';
+
+// Follow a show's seat map: load the current state, then apply the batches the server pushes
+// over STOMP. onChanges gets every batch that moves the client forward; in a snapshot
+// (batch.snapshot) every seat not listed is AVAILABLE. Returns a function that stops watching.
+export const watchSeatChanges = (showId, onChanges) => {
+  let cursor = { epoch: 0, version: -1 };
+  let socket = null;
+  let reconnect = null;
+  let stopped = false;
+
+  const apply = (batch) => {
+    if (stopped) return;
+    if (batch.snapshot) {
+      if (batch.epoch === cursor.epoch && batch.version < cursor.version) return;
+    } else if (batch.epoch !== cursor.epoch || batch.since > cursor.version) {
+      // Batches were missed, e.g. while reconnecting; catch up from our version
+      resync();
+      return;
+    } else if (batch.version <= cursor.version) {
+      return;
+    }
+    cursor = { epoch: batch.epoch, version: batch.version };
+    onChanges(batch);
+  };
+
+  const resync = async () => {
+    try {
+      const response = await axios.get(API_ENDPOINTS.SEAT_CHANGES(showId, cursor.epoch, cursor.version));
+      apply(response.data);
+    } catch (err) {
+      console.error('Failed to load seat changes:', err);
+    }
+  };
+
+  const send = (command, headers) => {
+    const lines = Object.entries(headers).map(([name, value]) => `${name}:${value}`);
+    socket.send(`${command}\n${lines.join('\n')}\n\n\0`);
+  };
+
+  const connect = () => {
+    socket = new WebSocket(API_ENDPOINTS.SEAT_PUSH);
+    socket.onopen = () => send('CONNECT', { 'accept-version': '1.2', host: window.location.hostname });
+    socket.onmessage = (event) => {
+      const frame = event.data;
+      const headerEnd = frame.indexOf('\n\n');
+      if (headerEnd < 0) return; // Heartbeat
+      const command = frame.slice(0, frame.indexOf('\n'));
+      if (command === 'CONNECTED') {
+        // Subscribe before loading the current state, so no change falls in between
+        send('SUBSCRIBE', { id: 'seats', destination: `/topic/shows/${showId}/seats` });
+        resync();
+      } else if (command === 'MESSAGE') {
+        apply(JSON.parse(frame.slice(headerEnd + 2, frame.lastIndexOf('\0'))));
+      }
+    };
+    socket.onclose = () => {
+      if (!stopped) reconnect = setTimeout(connect, 2000);
+    };
+  };
+
+  connect();
+
+  return () => {
+    stopped = true;
+    clearTimeout(reconnect);
+    if (socket) socket.close();
+  };
+};
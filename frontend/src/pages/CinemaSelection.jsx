@@ -4,7 +4,8 @@ import axios from 'axios';
 import { API_ENDPOINTS } from '../config/api';
 
 const CinemaSelection = () => {
-  const [shows, setShows] = useState([]);
+  const [showtimes, setShowtimes] = useState(null);
+  const [date, setDate] = useState(null);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState(null);
   const { cityId, movieId } = useParams();
@@ -12,12 +13,13 @@ const CinemaSelection = () => {
 
   useEffect(() => {
     fetchShows();
-  }, [cityId, movieId]);
+  }, [cityId, movieId, date]);
 
   const fetchShows = async () => {
     try {
-      const response = await axios.get(API_ENDPOINTS.SHOWS_GROUPED(movieId, cityId));
-      setShows(response.data);
+      // Without a date the response is for the first day with shows, and lists the other days
+      const response = await axios.get(API_ENDPOINTS.SHOWTIMES(movieId, cityId, date));
+      setShowtimes(response.data);
       setLoading(false);
     } catch (err) {
       setError('Failed to fetch showtimes');
@@ -38,6 +40,21 @@ const CinemaSelection = () => {
     });
   };
 
+  // Days come as YYYY-MM-DD; parse them as local dates, not UTC midnight
+  const formatDay = (day) => {
+    const [year, month, dayOfMonth] = day.split('-').map(Number);
+    return new Date(year, month - 1, dayOfMonth).toLocaleDateString('en-US', {
+      weekday: 'short',
+      month: 'short',
+      day: 'numeric'
+    });
+  };
+
+  const formatSeats = (showtime) => {
+    if (showtime.availableSeats === 0) return 'Sold out';
+    return `${showtime.availableSeats} of ${showtime.totalSeats} seats left`;
+  };
+
   const formatDate = (timeString) => {
     const date = new Date(timeString);
     return date.toLocaleDateString('en-US', { 
@@ -70,8 +87,23 @@ const CinemaSelection = () => {
       </button>
       <h1>Select Cinema & Showtime</h1>
       
-      {Object.entries(shows).map(([cinemaKey, cinemaShows]) => {
-        const cinema = JSON.parse(cinemaKey);
+      <div className="date-tabs">
+        {showtimes.dates.map((day) => (
+          <button
+            key={day}
+            className={`date-tab ${day === showtimes.date ? 'selected' : ''}`}
+            onClick={() => setDate(day)}
+          >
+            {formatDay(day)}
+          </button>
+        ))}
+      </div>
+
+      {showtimes.cinemas.length === 0 && (
+        <div className="loading">No showtimes for this day</div>
+      )}
+
+      {showtimes.cinemas.map(({ cinema, showtimes: cinemaShows }) => {
         return (
           <div key={cinema.id} className="cinema-section">
             <div className="cinema-header">
@@ -83,9 +115,9 @@ const CinemaSelection = () => {
             <div className="shows-grid">
               {cinemaShows.map((show) => (
                 <div
-                  key={show.id}
-                  className="show-card"
-                  onClick={() => handleShowSelect(show.id)}
+                  key={show.showId}
+                  className={`show-card ${show.availableSeats === 0 ? 'sold-out' : ''}`}
+                  onClick={() => show.availableSeats > 0 && handleShowSelect(show.showId)}
                 >
                   <div className="show-date">
                     {formatDate(show.showTime)}
@@ -96,6 +128,9 @@ const CinemaSelection = () => {
                   <div className="show-screen">
                     {show.screenName}
                   </div>
+                  <div className="show-seats">
+                    {formatSeats(show)}
+                  </div>
                   <div className="show-pricing">
                     <div className="price">
                       Regular: ₹{show.basePrice}
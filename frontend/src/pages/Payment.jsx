@@ -2,11 +2,12 @@ import React, { useState, useEffect } from 'react';
 import { useNavigate } from 'react-router-dom';
 import axios from 'axios';
 import { API_ENDPOINTS } from '../config/api';
+import { watchSeatChanges } from '../config/seatFeed';
 
 const Payment = () => {
   const [bookingData, setBookingData] = useState(null);
   const [guestInfo, setGuestInfo] = useState({ name: '', email: '' });
-  const [timeLeft, setTimeLeft] = useState(300); // Back to 300 seconds
+  const [timeLeft, setTimeLeft] = useState(120); // Initial hold, extended by the heartbeat below
   const [loading, setLoading] = useState(false);
   const [error, setError] = useState(null);
   const navigate = useNavigate();
@@ -50,33 +51,58 @@ const Payment = () => {
     return () => clearInterval(timer);
   }, [timeLeft]);
 
-  // Refresh seat status periodically to get real-time updates
+  // Watch the show's seat map and check our hold whenever one of our seats changes
+  const showId = bookingData?.showId;
+  const lockUserId = bookingData?.lockInfo?.lockUserId;
   useEffect(() => {
-    if (!bookingData || !bookingData.showId) return;
+    if (!showId || !lockUserId) return;
     
-    const refreshInterval = setInterval(async () => {
+    const ourSeats = bookingData.selectedSeats.map(seat => seat.id);
+    const checkHold = async () => {
       try {
-        const response = await axios.get(API_ENDPOINTS.SEAT_LAYOUT(bookingData.showId));
-        setBookingData(prev => ({ ...prev, seats: response.data }));
-        
-        // Check if our locked seats are still locked
-        const lockedSeats = response.data.filter(seat => 
-          bookingData.selectedSeats.some(selected => selected.id === seat.id) && 
-          seat.status === 'LOCKED' && 
-          seat.lockUserId === bookingData.lockInfo.lockUserId
-        );
+        // A snapshot lists every seat that is not available, with our own locks flagged
+        const response = await axios.get(API_ENDPOINTS.SEAT_CHANGES(showId, 0, -1, lockUserId));
+        const lost = ourSeats.some(id => {
+          const seat = response.data.seats.find(s => s.id === id);
+          return !seat || seat.status !== 'LOCKED' || !seat.heldByUser;
+        });
         
         // If our seats are no longer locked, the session has expired
-        if (lockedSeats.length !== bookingData.selectedSeats.length) {
+        if (lost) {
           setTimeLeft(0); // Just set timeLeft to 0, don't call handleTimeout directly
         }
       } catch (err) {
         console.error('Failed to refresh seat status:', err);
       }
-    }, 5000); // Refresh every 5 seconds
+    };
+
+    return watchSeatChanges(showId, (batch) => {
+      if (batch.snapshot || batch.seats.some(seat => ourSeats.includes(seat.id))) {
+        checkHold();
+      }
+    });
+  }, [showId, lockUserId]);
+
+  // Keep the seat hold alive while the user is on this page; the server caps the total hold time
+  useEffect(() => {
+    if (!showId || !lockUserId) return;
+    
+    const heartbeat = setInterval(async () => {
+      try {
+        const response = await axios.post(API_ENDPOINTS.RENEW_HOLD, { showId, userId: lockUserId });
+        if (response.data.success) {
+          const expiryTime = new Date(response.data.lockExpiryTime);
+          setTimeLeft(Math.max(0, Math.floor((expiryTime - new Date()) / 1000)));
+        } else {
+          setTimeLeft(0);
+        }
+      } catch (err) {
+        console.error('Failed to renew seat hold:', err);
+      }
+    }, 15000); // Renew every 15 seconds
 
-    return () => clearInterval(refreshInterval);
-  }, [bookingData]);
+    return () => clearInterval(heartbeat);
+  }, [showId, lockUserId]);
 
   const handleTimeout = () => {
     setError('Your session has expired. Please select seats again.');
@@ -136,6 +162,20 @@ const Payment = () => {
         guestEmail: guestInfo.email
       });
 
+      // Written behind: the booking is accepted but not saved yet, poll until it is
+      if (bookingResponse.data.status === 'PENDING' && bookingResponse.data.reference) {
+        let status = bookingResponse.data;
+        while (status.status === 'PENDING') {
+          await new Promise(resolve => setTimeout(resolve, 500));
+          status = (await axios.get(API_ENDPOINTS.BOOKING_STATUS(bookingResponse.data.reference))).data;
+        }
+        if (status.status !== 'PERSISTED') {
+          setError(status.message || 'Payment failed. Please try again.');
+          return;
+        }
+        bookingResponse.data = { ...bookingResponse.data, ...status, success: true };
+      }
+
       // Clear session storage
       sessionStorage.removeItem('bookingData');
 
@@ -2,6 +2,7 @@ import React, { useState, useEffect } from 'react';
 import { useParams, useNavigate } from 'react-router-dom';
 import axios from 'axios';
 import { API_ENDPOINTS } from '../config/api';
+import { watchSeatChanges } from '../config/seatFeed';
 
 const SeatSelection = () => {
   const [seats, setSeats] = useState([]);
@@ -10,6 +11,7 @@ const SeatSelection = () => {
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState(null);
   const [lockInfo, setLockInfo] = useState(null);
+  const [queue, setQueue] = useState(null);
   const { showId } = useParams();
   const navigate = useNavigate();
 
@@ -17,6 +19,46 @@ const SeatSelection = () => {
     fetchSeatLayout();
   }, [showId]);
 
+  // Keep the seat map live once it is loaded; seats taken by others drop out of the selection
+  const layoutLoaded = seats.length > 0;
+  useEffect(() => {
+    if (!layoutLoaded) return;
+
+    return watchSeatChanges(showId, (batch) => {
+      const statuses = new Map(batch.seats.map(seat => [seat.id, seat.status]));
+      const statusOf = (seat) => statuses.get(seat.id) || (batch.snapshot ? 'AVAILABLE' : seat.status);
+      setSeats(prev => prev.map(seat => ({ ...seat, status: statusOf(seat) })));
+      setSelectedSeats(prev => prev.filter(seat => statusOf(seat) === 'AVAILABLE'));
+    });
+  }, [showId, layoutLoaded]);
+
+  // Join the show's waiting room; seats can only be locked once admitted
+  useEffect(() => {
+    let poll;
+    const joinQueue = async () => {
+      try {
+        const response = await axios.post(API_ENDPOINTS.QUEUE_JOIN(showId));
+        setQueue(response.data);
+        if (response.data.admitted) return;
+
+        poll = setInterval(async () => {
+          try {
+            const status = await axios.get(API_ENDPOINTS.QUEUE_STATUS(showId, response.data.token));
+            setQueue(status.data);
+            if (status.data.admitted) clearInterval(poll);
+          } catch (err) {
+            console.error('Failed to check queue position:', err);
+          }
+        }, 2000); // Check every 2 seconds
+      } catch (err) {
+        console.error('Failed to join waiting room:', err);
+      }
+    };
+    joinQueue();
+
+    return () => clearInterval(poll);
+  }, [showId]);
+
   const fetchSeatLayout = async () => {
     try {
       const response = await axios.get(API_ENDPOINTS.SEAT_LAYOUT(showId));
@@ -63,7 +105,8 @@ const SeatSelection = () => {
     try {
       const lockResponse = await axios.post(API_ENDPOINTS.LOCK_SEATS, {
         showId: parseInt(showId),
-        seatIds: selectedSeats.map(seat => seat.id)
+        seatIds: selectedSeats.map(seat => seat.id),
+        queueToken: queue?.token
       });
 
       if (lockResponse.data.success) {
@@ -95,6 +138,22 @@ const SeatSelection = () => {
     return className;
   };
 
+  // Staggered rows shift their seats by half-seat widths (a seat plus its spacing is 35px)
+  const getSeatStyle = (seat) => {
+    return seat.positionOffset ? { transform: `translateX(${seat.positionOffset * 17.5}px)` } : undefined;
+  };
+
+  // Seat numbers missing from a row are aisles or gaps; every row is padded to the widest one
+  const maxSeatNumber = seats.reduce((max, seat) => Math.max(max, seat.seatNumber), 0);
+  const withGaps = (rowSeats) => {
+    const byNumber = new Map(rowSeats.map(seat => [seat.seatNumber, seat]));
+    const cells = [];
+    for (let number = 1; number <= maxSeatNumber; number++) {
+      cells.push(byNumber.get(number) || { gap: true, key: `gap-${number}` });
+    }
+    return cells;
+  };
+
   const getRowLabel = (rowNumber) => {
     return String.fromCharCode(65 + rowNumber - 1); // A, B, C, etc.
   };
@@ -169,10 +228,13 @@ const SeatSelection = () => {
         {Object.entries(rows).map(([rowNumber, rowSeats]) => (
           <div key={rowNumber} className="seat-row">
             <div className="row-label">{getRowLabel(parseInt(rowNumber))}</div>
-            {rowSeats.map((seat) => (
+            {withGaps(rowSeats).map((seat) => seat.gap ? (
+              <div key={seat.key} className="seat-gap" />
+            ) : (
               <div
                 key={seat.id}
                 className={getSeatClassName(seat)}
+                style={getSeatStyle(seat)}
                 onClick={() => handleSeatClick(seat)}
                 title={`Row ${getRowLabel(seat.rowNumber)}, Seat ${seat.seatNumber} (${seat.category})`}
               >
@@ -214,10 +276,16 @@ const SeatSelection = () => {
           </div>
         </div>
 
+        {queue && !queue.admitted && (
+          <div className="queue-status">
+            You are in the waiting room: {queue.position} ahead of you (about {queue.estimatedWaitSeconds}s)
+          </div>
+        )}
+
         <button 
           className="proceed-button"
           onClick={handleProceedToPayment}
-          disabled={selectedSeats.length === 0}
+          disabled={selectedSeats.length === 0 || (queue && !queue.admitted)}
         >
           Proceed to Payment
         </button>
@@ -0,0 +1,38 @@
+package com.loylty.moviebooking.loadtest;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every seat the backend confirmed during the run and who it was confirmed
+ * for. The backend must never confirm a seat twice; a second confirmation of
+ * a seat is a double booking.
+ */
+final class BookingLedger {
+    
+    private final Map<Long, Map<Long, String>> seatsByShow = new ConcurrentHashMap<>();
+    
+    /**
+     * @return number of the seats that had already been confirmed for someone else
+     */
+    int record(long showId, Iterable<Long> seatIds, String userId) {
+        Map<Long, String> seats = seatsByShow.computeIfAbsent(showId, k -> new ConcurrentHashMap<>());
+        int doubleBooked = 0;
+        for (Long seatId : seatIds) {
+            String previous = seats.putIfAbsent(seatId, userId);
+            if (previous != null && !previous.equals(userId)) {
+                doubleBooked++;
+            }
+        }
+        return doubleBooked;
+    }
+    
+    Set<Long> shows() {
+        return seatsByShow.keySet();
+    }
+    
+    Set<Long> seatsOf(long showId) {
+        return seatsByShow.getOrDefault(showId, Map.of()).keySet();
+    }
+}
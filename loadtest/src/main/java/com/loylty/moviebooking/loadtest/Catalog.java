@@ -0,0 +1,75 @@
+package com.loylty.moviebooking.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Every upcoming show of every city, ranked by popularity at random (with a
+ * fixed seed), so the Zipf sampler sends most sessions to a few hot shows
+ * spread over the catalog rather than to the lowest IDs.
+ */
+final class Catalog {
+    
+    static final class ShowRef {
+        final long cityId;
+        final long movieId;
+        final long showId;
+        
+        ShowRef(long cityId, long movieId, long showId) {
+            this.cityId = cityId;
+            this.movieId = movieId;
+            this.showId = showId;
+        }
+    }
+    
+    private final List<ShowRef> shows;
+    private final ZipfSampler sampler;
+    
+    private Catalog(List<ShowRef> shows, double zipfExponent) {
+        this.shows = shows;
+        this.sampler = new ZipfSampler(shows.size(), zipfExponent);
+    }
+    
+    static Catalog load(HttpApi api, double zipfExponent, long seed) {
+        JsonNode cities = api.get("catalog", "/cities");
+        if (cities == null) {
+            throw new IllegalStateException("Cannot list cities; is the backend running?");
+        }
+        
+        List<ShowRef> shows = new ArrayList<>();
+        for (JsonNode city : cities) {
+            long cityId = city.get("id").asLong();
+            JsonNode cityShows = api.get("catalog", "/shows/city/" + cityId);
+            if (cityShows == null) {
+                continue;
+            }
+            for (JsonNode show : cityShows) {
+                shows.add(new ShowRef(cityId, show.path("movie").path("id").asLong(), show.get("id").asLong()));
+            }
+        }
+        if (shows.isEmpty()) {
+            throw new IllegalStateException("The backend has no upcoming shows to book");
+        }
+        Collections.shuffle(shows, new Random(seed));
+        return new Catalog(shows, zipfExponent);
+    }
+    
+    ShowRef pick() {
+        return shows.get(sampler.next());
+    }
+    
+    int size() {
+        return shows.size();
+    }
+    
+    /**
+     * @return share of sessions that go to the most popular show
+     */
+    double hottestShare() {
+        return sampler.share(0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.loylty.moviebooking.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome counters of a run. Virtual users record into
+ * HdrHistogram Recorders, which never block writers; the reporter thread
+ * drains them into one histogram per endpoint for progress lines and the
+ * final report.
+ */
+final class FunnelStats {
+    
+    // Latencies are recorded in microseconds, up to a minute at 3 significant digits
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    
+    static final String SESSIONS = "sessions";
+    static final String BROWSE_ABANDONED = "browseAbandoned";
+    static final String QUEUE_TIMEOUTS = "queueTimeouts";
+    static final String SOLD_OUT = "soldOut";
+    static final String LOCK_CONFLICTS = "lockConflicts";
+    static final String LOCK_FAILED = "lockFailed";
+    static final String CHECKOUT_ABANDONED = "checkoutAbandoned";
+    static final String HOLDS_RELEASED = "holdsReleased";
+    static final String BOOKINGS = "bookings";
+    static final String SEATS_BOOKED = "seatsBooked";
+    static final String CONFIRM_FAILED = "confirmFailed";
+    static final String DOUBLE_BOOKINGS = "doubleBookings";
+    static final String LOST_BOOKINGS = "lostBookings";
+    
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    
+    FunnelStats() {
+        for (String name : new String[]{SESSIONS, BROWSE_ABANDONED, QUEUE_TIMEOUTS, SOLD_OUT, LOCK_CONFLICTS,
+                LOCK_FAILED, CHECKOUT_ABANDONED, HOLDS_RELEASED, BOOKINGS, SEATS_BOOKED, CONFIRM_FAILED,
+                DOUBLE_BOOKINGS, LOST_BOOKINGS}) {
+            counters.put(name, new LongAdder());
+        }
+    }
+    
+    void recordLatency(String endpoint, long nanos) {
+        long micros = Math.min(MAX_LATENCY_MICROS, Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        endpoint(endpoint).recorder.recordValue(micros);
+    }
+    
+    void recordError(String endpoint) {
+        endpoint(endpoint).errors.increment();
+    }
+    
+    void increment(String counter) {
+        add(counter, 1);
+    }
+    
+    void add(String counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+    
+    long count(String counter) {
+        return counters.get(counter).sum();
+    }
+    
+    /**
+     * Move what the users recorded since the last call into the totals.
+     * Only called from the reporter thread.
+     * @return requests completed since the last call
+     */
+    long drain() {
+        long requests = 0;
+        for (Endpoint endpoint : endpoints.values()) {
+            endpoint.interval = endpoint.recorder.getIntervalHistogram(endpoint.interval);
+            endpoint.total.add(endpoint.interval);
+            requests += endpoint.interval.getTotalCount();
+        }
+        return requests;
+    }
+    
+    long totalErrors() {
+        long errors = 0;
+        for (Endpoint endpoint : endpoints.values()) {
+            errors += endpoint.errors.sum();
+        }
+        return errors;
+    }
+    
+    /**
+     * Per-endpoint summary: request count, errors, throughput and latency percentiles in milliseconds
+     */
+    Map<String, Map<String, Object>> endpointSummary(long elapsedMillis) {
+        Map<String, Map<String, Object>> summary = new LinkedHashMap<>();
+        endpoints.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> {
+            Histogram total = entry.getValue().total;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("requests", total.getTotalCount());
+            row.put("errors", entry.getValue().errors.sum());
+            row.put("throughputPerSecond", total.getTotalCount() * 1000.0 / Math.max(1, elapsedMillis));
+            row.put("p50Millis", millis(total.getValueAtPercentile(50)));
+            row.put("p99Millis", millis(total.getValueAtPercentile(99)));
+            row.put("p999Millis", millis(total.getValueAtPercentile(99.9)));
+            row.put("maxMillis", millis(total.getMaxValue()));
+            summary.put(entry.getKey(), row);
+        });
+        return summary;
+    }
+    
+    Map<String, Long> counterSummary() {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        for (String name : new String[]{SESSIONS, BROWSE_ABANDONED, QUEUE_TIMEOUTS, SOLD_OUT, LOCK_CONFLICTS,
+                LOCK_FAILED, CHECKOUT_ABANDONED, HOLDS_RELEASED, BOOKINGS, SEATS_BOOKED, CONFIRM_FAILED,
+                DOUBLE_BOOKINGS, LOST_BOOKINGS}) {
+            summary.put(name, count(name));
+        }
+        return summary;
+    }
+    
+    private Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, k -> new Endpoint());
+    }
+    
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+    
+    private static final class Endpoint {
+        final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+        final Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        final LongAdder errors = new LongAdder();
+        Histogram interval;
+    }
+}
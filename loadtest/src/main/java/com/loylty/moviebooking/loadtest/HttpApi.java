@@ -0,0 +1,74 @@
+package com.loylty.moviebooking.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Blocking JSON calls against the backend, timed per endpoint. A request
+ * that fails, times out or gets a non-2xx status counts as an error of its
+ * endpoint and returns null.
+ */
+final class HttpApi {
+    
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String baseUrl;
+    private final Duration timeout;
+    private final FunnelStats stats;
+    
+    HttpApi(String baseUrl, long timeoutMillis, FunnelStats stats) {
+        this.baseUrl = baseUrl;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.stats = stats;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+    
+    JsonNode get(String endpoint, String path) {
+        return send(endpoint, HttpRequest.newBuilder(URI.create(baseUrl + path)).GET());
+    }
+    
+    JsonNode post(String endpoint, String path, Object body) {
+        HttpRequest.BodyPublisher publisher;
+        try {
+            publisher = body == null
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot serialize request body", e);
+        }
+        return send(endpoint, HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(publisher));
+    }
+    
+    private JsonNode send(String endpoint, HttpRequest.Builder request) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = client.send(request.timeout(timeout).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            stats.recordLatency(endpoint, System.nanoTime() - start);
+            if (response.statusCode() / 100 != 2) {
+                stats.recordError(endpoint);
+                return null;
+            }
+            return mapper.readTree(response.body());
+        } catch (IOException e) {
+            stats.recordLatency(endpoint, System.nanoTime() - start);
+            stats.recordError(endpoint);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
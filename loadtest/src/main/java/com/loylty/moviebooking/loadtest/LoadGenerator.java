@@ -0,0 +1,159 @@
+package com.loylty.moviebooking.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the full booking funnel against a running backend with thousands
+ * of virtual users, then reports throughput and p50/p99/p99.9 latency per
+ * endpoint together with errors, lock conflicts and double bookings.
+ *
+ *   java -jar loadtest/target/loadtest.jar --users=2000 --duration-seconds=600 --zipf-exponent=1.2
+ *
+ * Users run in a closed loop with think times, so offered load follows the
+ * backend's speed; raise --users rather than lowering the think times to
+ * push harder. Each user is a thread, so thousands of users need a few
+ * hundred MB of stack at most. Afterwards every confirmed seat is checked to
+ * show up as booked on the seat map (--verify), which catches bookings the
+ * backend acknowledged but lost.
+ */
+public class LoadGenerator {
+    
+    private static final long PROGRESS_INTERVAL_MILLIS = 10_000;
+    private static final long USER_STACK_BYTES = 256 * 1024;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && (args[0].equals("--help") || args[0].equals("-h"))) {
+            System.out.print(LoadTestConfig.usage());
+            return;
+        }
+        LoadTestConfig config;
+        try {
+            config = LoadTestConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadTestConfig.usage());
+            System.exit(2);
+            return;
+        }
+        
+        FunnelStats stats = new FunnelStats();
+        HttpApi api = new HttpApi(config.baseUrl(), config.timeoutMillis(), stats);
+        Catalog catalog = Catalog.load(api, config.zipfExponent(), config.seed());
+        BookingLedger ledger = new BookingLedger();
+        System.out.printf("Loaded %d shows; the hottest gets %.1f%% of sessions%n",
+                catalog.size(), catalog.hottestShare() * 100);
+        
+        long start = System.currentTimeMillis();
+        long deadline = start + config.rampUpMillis() + config.durationMillis();
+        List<Thread> users = new ArrayList<>(config.users());
+        for (int i = 0; i < config.users(); i++) {
+            Thread user = new Thread(null, new VirtualUser(api, catalog, ledger, stats, config, deadline),
+                    "virtual-user-" + i, USER_STACK_BYTES);
+            user.setDaemon(true);
+            users.add(user);
+        }
+        
+        // Start users evenly over the ramp-up, printing progress as we go
+        stats.drain();
+        long nextProgress = start + PROGRESS_INTERVAL_MILLIS;
+        for (int i = 0; i < users.size(); i++) {
+            long startAt = start + config.rampUpMillis() * i / users.size();
+            nextProgress = waitUntil(startAt, nextProgress, start, stats);
+            users.get(i).start();
+        }
+        while (System.currentTimeMillis() < deadline) {
+            nextProgress = waitUntil(Math.min(deadline, nextProgress), nextProgress, start, stats);
+        }
+        for (Thread user : users) {
+            user.join(config.timeoutMillis() * 2);
+        }
+        stats.drain();
+        long elapsed = System.currentTimeMillis() - start;
+        
+        if (config.verify()) {
+            verify(api, ledger, stats);
+            stats.drain();
+        }
+        report(config, stats, elapsed);
+    }
+    
+    /**
+     * Sleep until the given time, printing progress lines when they fall due
+     * @return when the next progress line is due
+     */
+    private static long waitUntil(long time, long nextProgress, long start, FunnelStats stats)
+            throws InterruptedException {
+        long now;
+        while ((now = System.currentTimeMillis()) < time) {
+            if (now >= nextProgress) {
+                long requests = stats.drain();
+                System.out.printf("%5ds  %8.1f req/s  %7d bookings  %5d double  %6d errors%n",
+                        TimeUnit.MILLISECONDS.toSeconds(now - start),
+                        requests * 1000.0 / PROGRESS_INTERVAL_MILLIS,
+                        stats.count(FunnelStats.BOOKINGS),
+                        stats.count(FunnelStats.DOUBLE_BOOKINGS),
+                        stats.totalErrors());
+                nextProgress += PROGRESS_INTERVAL_MILLIS;
+            }
+            Thread.sleep(Math.min(time, nextProgress) - now);
+        }
+        return nextProgress;
+    }
+    
+    /**
+     * Check that every confirmed seat is booked on the seat map
+     */
+    private static void verify(HttpApi api, BookingLedger ledger, FunnelStats stats) {
+        for (Long showId : ledger.shows()) {
+            JsonNode layout = api.get("verify", "/seats/show/" + showId + "/layout");
+            if (layout == null) {
+                continue;
+            }
+            Set<Long> confirmed = ledger.seatsOf(showId);
+            long booked = 0;
+            for (JsonNode seat : layout) {
+                if (confirmed.contains(seat.path("id").asLong()) && "BOOKED".equals(seat.path("status").asText())) {
+                    booked++;
+                }
+            }
+            stats.add(FunnelStats.LOST_BOOKINGS, confirmed.size() - booked);
+        }
+    }
+    
+    private static void report(LoadTestConfig config, FunnelStats stats, long elapsedMillis) throws IOException {
+        Map<String, Map<String, Object>> endpoints = stats.endpointSummary(elapsedMillis);
+        Map<String, Long> counters = stats.counterSummary();
+        
+        System.out.printf("%n%-16s %10s %8s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        endpoints.forEach((name, row) -> System.out.printf("%-16s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                name, row.get("requests"), row.get("errors"), row.get("throughputPerSecond"),
+                row.get("p50Millis"), row.get("p99Millis"), row.get("p999Millis"), row.get("maxMillis")));
+        System.out.println();
+        counters.forEach((name, value) -> System.out.printf("%-18s %d%n", name, value));
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config.asMap());
+        report.put("elapsedMillis", elapsedMillis);
+        report.put("endpoints", endpoints);
+        report.put("funnel", counters);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(config.reportFile()), report);
+        System.out.println("\nReport written to " + config.reportFile());
+        
+        if (counters.get(FunnelStats.DOUBLE_BOOKINGS) > 0 || counters.get(FunnelStats.LOST_BOOKINGS) > 0) {
+            System.out.println("FAILED: seats were double booked or lost");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.loylty.moviebooking.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from --name=value arguments
+ */
+final class LoadTestConfig {
+    
+    // Name, default and meaning of every option, in the order --help prints them
+    private static final String[][] OPTIONS = {
+            {"base-url", "http://localhost:8080/api", "API root of the backend under test"},
+            {"users", "1000", "virtual users running booking sessions in a closed loop"},
+            {"duration-seconds", "300", "length of the measured run"},
+            {"ramp-up-seconds", "30", "time over which the users are started"},
+            {"think-millis", "2000", "mean pause between page views (exponential)"},
+            {"checkout-millis", "30000", "mean time spent on the payment page"},
+            {"heartbeat-millis", "15000", "hold renewal interval on the payment page"},
+            {"zipf-exponent", "1.1", "skew of show popularity; 0 spreads load evenly"},
+            {"browse-abandon", "0.5", "share of sessions that leave before locking seats"},
+            {"checkout-abandon", "0.2", "share of locked sessions that never pay"},
+            {"release-on-abandon", "0.5", "share of abandoned checkouts that release their seats"},
+            {"min-seats", "1", "smallest group size"},
+            {"max-seats", "6", "largest group size"},
+            {"lock-retries", "2", "new seat picks after a lock conflict"},
+            {"timeout-millis", "10000", "HTTP request timeout"},
+            {"verify", "true", "check every confirmed seat shows as booked after the run"},
+            {"report", "loadtest-result.json", "JSON report file"},
+            {"seed", "42", "seed of the show popularity ranking"}
+    };
+    
+    private final Map<String, String> values = new LinkedHashMap<>();
+    
+    private LoadTestConfig() {
+        for (String[] option : OPTIONS) {
+            values.put(option[0], option[1]);
+        }
+    }
+    
+    static LoadTestConfig parse(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            if (!config.values.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+            config.values.put(name, arg.substring(eq + 1));
+        }
+        if (config.minSeats() < 1 || config.maxSeats() < config.minSeats()) {
+            throw new IllegalArgumentException("Need 1 <= min-seats <= max-seats");
+        }
+        return config;
+    }
+    
+    static String usage() {
+        StringBuilder usage = new StringBuilder("Usage: java -jar loadtest.jar [--name=value ...]\n\n");
+        for (String[] option : OPTIONS) {
+            usage.append(String.format("  --%-20s %s (default %s)%n", option[0], option[2], option[1]));
+        }
+        return usage.toString();
+    }
+    
+    String baseUrl() {
+        String url = values.get("base-url");
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+    
+    int users() {
+        return intValue("users");
+    }
+    
+    long durationMillis() {
+        return longValue("duration-seconds") * 1000;
+    }
+    
+    long rampUpMillis() {
+        return longValue("ramp-up-seconds") * 1000;
+    }
+    
+    long thinkMillis() {
+        return longValue("think-millis");
+    }
+    
+    long checkoutMillis() {
+        return longValue("checkout-millis");
+    }
+    
+    long heartbeatMillis() {
+        return longValue("heartbeat-millis");
+    }
+    
+    double zipfExponent() {
+        return doubleValue("zipf-exponent");
+    }
+    
+    double browseAbandon() {
+        return doubleValue("browse-abandon");
+    }
+    
+    double checkoutAbandon() {
+        return doubleValue("checkout-abandon");
+    }
+    
+    double releaseOnAbandon() {
+        return doubleValue("release-on-abandon");
+    }
+    
+    int minSeats() {
+        return intValue("min-seats");
+    }
+    
+    int maxSeats() {
+        return intValue("max-seats");
+    }
+    
+    int lockRetries() {
+        return intValue("lock-retries");
+    }
+    
+    long timeoutMillis() {
+        return longValue("timeout-millis");
+    }
+    
+    boolean verify() {
+        return Boolean.parseBoolean(values.get("verify"));
+    }
+    
+    String reportFile() {
+        return values.get("report");
+    }
+    
+    long seed() {
+        return longValue("seed");
+    }
+    
+    Map<String, String> asMap() {
+        return values;
+    }
+    
+    private int intValue(String name) {
+        return Integer.parseInt(values.get(name));
+    }
+    
+    private long longValue(String name) {
+        return Long.parseLong(values.get(name));
+    }
+    
+    private double doubleValue(String name) {
+        return Double.parseDouble(values.get(name));
+    }
+}
@@ -0,0 +1,249 @@
+package com.loylty.moviebooking.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One simulated customer, running booking sessions back to back until the
+ * run ends. A session walks the same calls as the web app: cities, movies of
+ * the city, showtimes grouped by cinema, then the seat map, the waiting room,
+ * a seat lock, hold renewals while paying and finally the confirmation. Users
+ * pause between pages and may leave before locking or before paying.
+ */
+final class VirtualUser implements Runnable {
+    
+    // How often a queued user asks for its position, as the seat page does
+    private static final long QUEUE_POLL_MILLIS = 2000;
+    
+    private final HttpApi api;
+    private final Catalog catalog;
+    private final BookingLedger ledger;
+    private final FunnelStats stats;
+    private final LoadTestConfig config;
+    private final long deadline;
+    
+    VirtualUser(HttpApi api, Catalog catalog, BookingLedger ledger, FunnelStats stats, LoadTestConfig config,
+                long deadline) {
+        this.api = api;
+        this.catalog = catalog;
+        this.ledger = ledger;
+        this.stats = stats;
+        this.config = config;
+        this.deadline = deadline;
+    }
+    
+    @Override
+    public void run() {
+        while (System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted()) {
+            stats.increment(FunnelStats.SESSIONS);
+            runSession();
+        }
+    }
+    
+    private void runSession() {
+        Catalog.ShowRef show = catalog.pick();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        
+        // Browse down to the show; a failed page ends the session like a user giving up
+        if (api.get("cities", "/cities") == null || !think()) {
+            return;
+        }
+        if (api.get("movies-by-city", "/movies/city/" + show.cityId) == null || !think()) {
+            return;
+        }
+        if (api.get("shows-grouped", "/shows/movie/" + show.movieId + "/city/" + show.cityId + "/grouped") == null
+                || !think()) {
+            return;
+        }
+        if (random.nextDouble() < config.browseAbandon()) {
+            stats.increment(FunnelStats.BROWSE_ABANDONED);
+            return;
+        }
+        
+        String queueToken = waitForAdmission(show.showId);
+        if (queueToken == null) {
+            return;
+        }
+        
+        String userId = "lt-" + UUID.randomUUID();
+        List<Long> seatIds = lockSeats(show.showId, userId, queueToken);
+        if (seatIds == null) {
+            return;
+        }
+        
+        if (random.nextDouble() < config.checkoutAbandon()) {
+            stats.increment(FunnelStats.CHECKOUT_ABANDONED);
+            // Some close the tab and let the hold expire, others press cancel
+            if (random.nextDouble() < config.releaseOnAbandon()
+                    && api.post("release-holds", "/bookings/holds/" + userId + "/release", null) != null) {
+                stats.increment(FunnelStats.HOLDS_RELEASED);
+            }
+            return;
+        }
+        
+        if (!pay(show.showId, userId)) {
+            return;
+        }
+        
+        Map<String, Object> confirm = new LinkedHashMap<>();
+        confirm.put("showId", show.showId);
+        confirm.put("seatIds", seatIds);
+        confirm.put("userId", userId);
+        confirm.put("guestName", "Load Test");
+        confirm.put("guestEmail", "loadtest@example.com");
+        JsonNode confirmed = api.post("confirm", "/bookings/confirm", confirm);
+        if (confirmed == null) {
+            return;
+        }
+        if (!confirmed.path("success").asBoolean()) {
+            stats.increment(FunnelStats.CONFIRM_FAILED);
+            return;
+        }
+        stats.increment(FunnelStats.BOOKINGS);
+        stats.add(FunnelStats.SEATS_BOOKED, seatIds.size());
+        stats.add(FunnelStats.DOUBLE_BOOKINGS, ledger.record(show.showId, seatIds, userId));
+    }
+    
+    /**
+     * Join the show's waiting room and poll until admitted
+     * @return the queue token ("" when the waiting room is off), or null if the session ended
+     */
+    private String waitForAdmission(long showId) {
+        JsonNode status = api.post("queue-join", "/waiting-room/show/" + showId + "/join", null);
+        while (status != null && !status.path("admitted").asBoolean()) {
+            if (!sleep(QUEUE_POLL_MILLIS)) {
+                stats.increment(FunnelStats.QUEUE_TIMEOUTS);
+                return null;
+            }
+            String token = URLEncoder.encode(status.path("token").asText(), StandardCharsets.UTF_8);
+            status = api.get("queue-status", "/waiting-room/show/" + showId + "/status?token=" + token);
+        }
+        return status == null ? null : status.path("token").asText("");
+    }
+    
+    /**
+     * Load the seat map, pick a group of adjacent free seats and lock them,
+     * picking again after a conflict up to lock-retries times
+     * @return the locked seats, or null if the session ended
+     */
+    private List<Long> lockSeats(long showId, String userId, String queueToken) {
+        int groupSize = ThreadLocalRandom.current().nextInt(config.minSeats(), config.maxSeats() + 1);
+        for (int attempt = 0; attempt <= config.lockRetries(); attempt++) {
+            JsonNode layout = api.get("seat-layout", "/seats/show/" + showId + "/layout");
+            if (layout == null || api.get("show", "/shows/" + showId) == null) {
+                return null;
+            }
+            List<Long> seatIds = pickAdjacent(layout, groupSize);
+            if (seatIds == null) {
+                stats.increment(FunnelStats.SOLD_OUT);
+                return null;
+            }
+            if (!think()) {
+                return null;
+            }
+            
+            Map<String, Object> lock = new LinkedHashMap<>();
+            lock.put("showId", showId);
+            lock.put("seatIds", seatIds);
+            lock.put("userId", userId);
+            lock.put("queueToken", queueToken.isEmpty() ? null : queueToken);
+            JsonNode locked = api.post("lock-seats", "/bookings/lock-seats", lock);
+            if (locked == null) {
+                return null;
+            }
+            if (locked.path("success").asBoolean()) {
+                return seatIds;
+            }
+            stats.increment(FunnelStats.LOCK_CONFLICTS);
+        }
+        stats.increment(FunnelStats.LOCK_FAILED);
+        return null;
+    }
+    
+    /**
+     * Spend the checkout time on the payment page, renewing the hold as the page does
+     * @return false if the run ended first
+     */
+    private boolean pay(long showId, String userId) {
+        long paymentEnds = System.currentTimeMillis() + exponential(config.checkoutMillis());
+        Map<String, Object> renew = Map.of("showId", showId, "userId", userId);
+        while (true) {
+            long left = paymentEnds - System.currentTimeMillis();
+            if (left <= 0) {
+                return true;
+            }
+            if (!sleep(Math.min(left, config.heartbeatMillis()))) {
+                return false;
+            }
+            if (left > config.heartbeatMillis()) {
+                api.post("renew-hold", "/bookings/renew-hold", renew);
+            }
+        }
+    }
+    
+    /**
+     * Pick groupSize adjacent available seats of one row, starting from a random seat
+     * @return the seat IDs, or null if no row has room for the group
+     */
+    private static List<Long> pickAdjacent(JsonNode layout, int groupSize) {
+        int seats = layout.size();
+        if (seats == 0) {
+            return null;
+        }
+        int start = ThreadLocalRandom.current().nextInt(seats);
+        for (int i = 0; i < seats; i++) {
+            int first = (start + i) % seats;
+            if (first + groupSize > seats) {
+                continue;
+            }
+            List<Long> group = new ArrayList<>(groupSize);
+            int row = layout.get(first).path("rowNumber").asInt();
+            for (int j = first; j < first + groupSize; j++) {
+                JsonNode seat = layout.get(j);
+                if (seat.path("rowNumber").asInt() != row || !"AVAILABLE".equals(seat.path("status").asText())) {
+                    break;
+                }
+                group.add(seat.path("id").asLong());
+            }
+            if (group.size() == groupSize) {
+                return group;
+            }
+        }
+        return null;
+    }
+    
+    private boolean think() {
+        return sleep(exponential(config.thinkMillis()));
+    }
+    
+    private static long exponential(long mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        return (long) (-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+    
+    /**
+     * @return false if the run ends before the pause is over
+     */
+    private boolean sleep(long millis) {
+        if (System.currentTimeMillis() + millis >= deadline) {
+            return false;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}